@@ -0,0 +1,66 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import io.github.majusko.grpc.jwt.audit.AuditLog;
+import io.github.majusko.grpc.jwt.metrics.AuthOutcome;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording an auth decision on the calling thread. The writer drains to a sink which discards the
+ * records, so the producers measure the ring buffer and are not slowed down by IO. The blocking queue is the
+ * reference for a bounded queue with a lock and a record allocated per call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class AuditLogBenchmark {
+
+    private static final String METHOD = "benchmark.Service/Method";
+    private static final int BUFFER_SIZE = 8192;
+
+    private AuditLog auditLog;
+    private ArrayBlockingQueue<Object[]> queue;
+    private Thread queueWriter;
+
+    @Setup
+    public void setup() {
+        auditLog = new AuditLog(record -> {
+        }, BUFFER_SIZE, 1.0);
+        queue = new ArrayBlockingQueue<>(BUFFER_SIZE);
+        queueWriter = new Thread(() -> {
+            try {
+                while(true) queue.take();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        queueWriter.setDaemon(true);
+        queueWriter.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        auditLog.shutdown();
+        queueWriter.interrupt();
+    }
+
+    @Benchmark
+    public boolean ringBuffer() {
+        return auditLog.record(METHOD, BenchmarkService.ADMIN, AuthOutcome.SUCCESS, null, 1000);
+    }
+
+    @Benchmark
+    public boolean blockingQueue() {
+        return queue.offer(new Object[]{System.currentTimeMillis(), METHOD, BenchmarkService.ADMIN,
+            AuthOutcome.SUCCESS, null, 1000L});
+    }
+
+    @Benchmark
+    public boolean disabled() {
+        return AuditLog.DISABLED.record(METHOD, BenchmarkService.ADMIN, AuthOutcome.SUCCESS, null, 1000);
+    }
+}
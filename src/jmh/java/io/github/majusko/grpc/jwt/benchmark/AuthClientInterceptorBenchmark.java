@@ -0,0 +1,82 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import com.google.protobuf.Empty;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.interceptor.AuthClientInterceptor;
+import io.github.majusko.grpc.jwt.interceptor.proto.ExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.grpc.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of {@link AuthClientInterceptor}: wrapping the call and injecting the internal token on start.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class AuthClientInterceptorBenchmark {
+
+    private static final ClientCall.Listener<Empty> RESPONSE_LISTENER = new ClientCall.Listener<Empty>() {
+    };
+
+    private AuthClientInterceptor interceptor;
+    private Channel channel;
+
+    @Setup
+    public void setup() {
+        final StandardEnvironment environment = new StandardEnvironment();
+
+        interceptor = new AuthClientInterceptor(new JwtService(environment, new GrpcJwtProperties()));
+        channel = new Channel() {
+            @Override
+            public <RequestT, ResponseT> ClientCall<RequestT, ResponseT> newCall(
+                MethodDescriptor<RequestT, ResponseT> methodDescriptor, CallOptions callOptions
+            ) {
+                return new NoopClientCall<>();
+            }
+
+            @Override
+            public String authority() {
+                return "benchmark";
+            }
+        };
+    }
+
+    @Benchmark
+    public Metadata interceptCall() {
+        final Metadata metadata = new Metadata();
+
+        interceptor.interceptCall(ExampleServiceGrpc.METHOD_GET_EXAMPLE, CallOptions.DEFAULT, channel)
+            .start(RESPONSE_LISTENER, metadata);
+
+        return metadata;
+    }
+
+    private static class NoopClientCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+        }
+
+        @Override
+        public void request(int numMessages) {
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+        }
+
+        @Override
+        public void halfClose() {
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+        }
+    }
+}
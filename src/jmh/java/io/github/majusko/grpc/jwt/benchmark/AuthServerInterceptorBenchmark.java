@@ -0,0 +1,149 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import com.google.protobuf.Empty;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.data.GrpcHeader;
+import io.github.majusko.grpc.jwt.interceptor.AllowedCollector;
+import io.github.majusko.grpc.jwt.interceptor.AuthServerInterceptor;
+import io.github.majusko.grpc.jwt.interceptor.proto.Example;
+import io.github.majusko.grpc.jwt.interceptor.proto.ExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.metrics.AuthMetrics;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.VerifiedTokenCache;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of {@link AuthServerInterceptor}: header stage ({@code interceptCall}) followed by the first
+ * {@code onMessage} for the typical kinds of methods.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class AuthServerInterceptorBenchmark {
+
+    private static final String OWNER = "benchmark-owner";
+
+    private static final ServerCall.Listener<Object> APPLICATION_LISTENER = new ServerCall.Listener<Object>() {
+    };
+
+    @Param({"false", "true"})
+    public boolean tokenCache;
+
+    private AuthServerInterceptor interceptor;
+    private Metadata noToken;
+    private Metadata adminToken;
+    private Metadata ownerToken;
+    private Metadata internalToken;
+    private Example.GetExampleRequest ownedRequest;
+
+    @Setup
+    public void setup() {
+        final StandardEnvironment environment = new StandardEnvironment();
+        environment.setActiveProfiles(BenchmarkService.PROFILE);
+
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        final JwtService jwtService = new JwtService(environment, properties);
+        final AllowedCollector allowedCollector = new AllowedCollector(environment, properties);
+
+        allowedCollector.postProcessBeforeInitialization(new BenchmarkService(), "benchmarkService");
+
+        interceptor = new AuthServerInterceptor(
+            allowedCollector, jwtService, new VerifiedTokenCache(tokenCache, 10_000), AuthMetrics.NOOP,
+            properties
+        );
+        noToken = new Metadata();
+        adminToken = header(jwtService.generate(new JwtData("benchmark-admin", BenchmarkService.ADMIN)));
+        ownerToken = header(jwtService.generate(new JwtData(OWNER, "customer")));
+        internalToken = header(jwtService.getInternal());
+        ownedRequest = Example.GetExampleRequest.newBuilder().setUserId(OWNER).build();
+
+        verifyGranted(noTokenCall(new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_SAVE_EXAMPLE)));
+        verifyGranted(roleOnlyCall(new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_SOME_ACTION)));
+        verifyGranted(ownerFieldCall(new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_GET_EXAMPLE)));
+        verifyGranted(exposedCall(new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_LIST_EXAMPLE)));
+    }
+
+    @State(Scope.Thread)
+    public static class Calls {
+        final BenchmarkServerCall<Empty, Empty> noToken =
+            new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_SAVE_EXAMPLE);
+        final BenchmarkServerCall<Example.GetExampleRequest, Empty> roleOnly =
+            new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_SOME_ACTION);
+        final BenchmarkServerCall<Example.GetExampleRequest, Empty> ownerField =
+            new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_GET_EXAMPLE);
+        final BenchmarkServerCall<Example.GetExampleRequest, Empty> exposed =
+            new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_LIST_EXAMPLE);
+    }
+
+    @Benchmark
+    public Object noToken(Calls calls) {
+        return noTokenCall(calls.noToken);
+    }
+
+    @Benchmark
+    public Object roleOnly(Calls calls) {
+        return roleOnlyCall(calls.roleOnly);
+    }
+
+    @Benchmark
+    public Object ownerField(Calls calls) {
+        return ownerFieldCall(calls.ownerField);
+    }
+
+    @Benchmark
+    public Object exposed(Calls calls) {
+        return exposedCall(calls.exposed);
+    }
+
+    private BenchmarkServerCall<Empty, Empty> noTokenCall(BenchmarkServerCall<Empty, Empty> call) {
+        interceptor.interceptCall(call, noToken, handler()).onMessage(Empty.getDefaultInstance());
+        return call;
+    }
+
+    private BenchmarkServerCall<Example.GetExampleRequest, Empty> roleOnlyCall(
+        BenchmarkServerCall<Example.GetExampleRequest, Empty> call
+    ) {
+        interceptor.interceptCall(call, adminToken, handler()).onMessage(ownedRequest);
+        return call;
+    }
+
+    private BenchmarkServerCall<Example.GetExampleRequest, Empty> ownerFieldCall(
+        BenchmarkServerCall<Example.GetExampleRequest, Empty> call
+    ) {
+        interceptor.interceptCall(call, ownerToken, handler()).onMessage(ownedRequest);
+        return call;
+    }
+
+    private BenchmarkServerCall<Example.GetExampleRequest, Empty> exposedCall(
+        BenchmarkServerCall<Example.GetExampleRequest, Empty> call
+    ) {
+        interceptor.interceptCall(call, internalToken, handler()).onMessage(ownedRequest);
+        return call;
+    }
+
+    private static Metadata header(String token) {
+        final Metadata metadata = new Metadata();
+        metadata.put(GrpcHeader.AUTHORIZATION, token);
+        return metadata;
+    }
+
+    private static void verifyGranted(BenchmarkServerCall<?, ?> call) {
+        if(call.getStatus() != null) {
+            throw new IllegalStateException(call.getMethodDescriptor().getFullMethodName() + ": " + call.getStatus());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <ReqT, RespT> ServerCallHandler<ReqT, RespT> handler() {
+        return (call, headers) -> (ServerCall.Listener<ReqT>) APPLICATION_LISTENER;
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import com.google.common.collect.Sets;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Minting a whole batch of tokens one by one with {@link JwtService#generate} compared to
+ * {@link JwtService#generateAll}. Scores are the time of the whole batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class BatchIssuanceBenchmark {
+
+    @Param({"16", "1024"})
+    public int batchSize;
+
+    private JwtService jwtService;
+    private List<JwtData> batch;
+
+    @Setup
+    public void setup() {
+        final StandardEnvironment environment = new StandardEnvironment();
+        environment.setActiveProfiles(BenchmarkService.PROFILE);
+
+        jwtService = new JwtService(environment, new GrpcJwtProperties());
+        batch = IntStream.range(0, batchSize)
+            .mapToObj(i -> new JwtData("tenant-" + i, Sets.newHashSet(BenchmarkService.ADMIN, "customer")))
+            .collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        jwtService.shutdown();
+    }
+
+    @Benchmark
+    public List<String> generateEach() {
+        final List<String> tokens = new ArrayList<>(batch.size());
+
+        for(JwtData data : batch) {
+            tokens.add(jwtService.generate(data));
+        }
+
+        return tokens;
+    }
+
+    @Benchmark
+    public List<String> generateAll() {
+        return jwtService.generateAll(batch);
+    }
+
+    @Benchmark
+    public List<String> generateAllStream() {
+        return jwtService.generateAll(batch.stream()).collect(Collectors.toList());
+    }
+}
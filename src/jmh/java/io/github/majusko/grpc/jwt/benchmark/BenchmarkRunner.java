@@ -0,0 +1,54 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the benchmarks once per configured thread count with the GC profiler, so every result reports both
+ * throughput and allocation per operation. Regular JMH command line options are passed through.
+ * <p>
+ * System properties: {@code benchmark.threads} (e.g. {@code 1,4,max}) and {@code benchmark.results}
+ * (directory for the text results, one file per thread count).
+ */
+public class BenchmarkRunner {
+
+    private static final String MAX_THREADS = "max";
+
+    public static void main(String[] args) throws Exception {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final File resultDirectory = new File(System.getProperty("benchmark.results", "target/jmh"));
+
+        if(!resultDirectory.isDirectory() && !resultDirectory.mkdirs()) {
+            throw new IllegalStateException("Can not create " + resultDirectory);
+        }
+
+        for(int threads : threadCounts(System.getProperty("benchmark.threads", "1,4,max"))) {
+            final Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.TEXT)
+                .result(new File(resultDirectory, "threads-" + threads + ".txt").getPath())
+                .build();
+
+            new Runner(options).run();
+        }
+    }
+
+    private static Set<Integer> threadCounts(String value) {
+        return Arrays.stream(value.split(","))
+            .map(String::trim)
+            .map(count -> MAX_THREADS.equals(count) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(count))
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+}
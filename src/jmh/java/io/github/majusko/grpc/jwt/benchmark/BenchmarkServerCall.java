@@ -0,0 +1,58 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import io.grpc.Attributes;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.Status;
+
+/**
+ * Server call without transport. Remembers the status it was closed with so the benchmarks can verify the
+ * measured path before they start.
+ */
+public class BenchmarkServerCall<ReqT, RespT> extends ServerCall<ReqT, RespT> {
+
+    private final MethodDescriptor<ReqT, RespT> methodDescriptor;
+
+    private Status status;
+
+    public BenchmarkServerCall(MethodDescriptor<ReqT, RespT> methodDescriptor) {
+        this.methodDescriptor = methodDescriptor;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public void request(int numMessages) {
+    }
+
+    @Override
+    public void sendHeaders(Metadata headers) {
+    }
+
+    @Override
+    public void sendMessage(RespT message) {
+    }
+
+    @Override
+    public void close(Status status, Metadata trailers) {
+        this.status = status;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public Attributes getAttributes() {
+        return Attributes.EMPTY;
+    }
+
+    @Override
+    public MethodDescriptor<ReqT, RespT> getMethodDescriptor() {
+        return methodDescriptor;
+    }
+}
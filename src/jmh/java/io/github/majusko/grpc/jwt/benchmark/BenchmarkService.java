@@ -0,0 +1,45 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import com.google.protobuf.Empty;
+import io.github.majusko.grpc.jwt.annotation.Allow;
+import io.github.majusko.grpc.jwt.annotation.Exposed;
+import io.github.majusko.grpc.jwt.interceptor.proto.Example;
+import io.github.majusko.grpc.jwt.interceptor.proto.ExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.service.GrpcRole;
+import io.grpc.stub.StreamObserver;
+import org.lognet.springboot.grpc.GRpcService;
+
+@GRpcService
+public class BenchmarkService extends ExampleServiceGrpc.ExampleServiceImplBase {
+
+    public static final String ADMIN = "admin";
+    public static final String PROFILE = "benchmark";
+
+    @Override
+    @Allow(ownerField = "userId", roles = {GrpcRole.INTERNAL, ADMIN})
+    public void getExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+        complete(response);
+    }
+
+    @Override
+    @Exposed(environments = PROFILE)
+    public void listExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+        complete(response);
+    }
+
+    @Override
+    public void saveExample(Empty request, StreamObserver<Empty> response) {
+        complete(response);
+    }
+
+    @Override
+    @Allow(roles = {ADMIN})
+    public void someAction(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+        complete(response);
+    }
+
+    private static void complete(StreamObserver<Empty> response) {
+        response.onNext(Empty.getDefaultInstance());
+        response.onCompleted();
+    }
+}
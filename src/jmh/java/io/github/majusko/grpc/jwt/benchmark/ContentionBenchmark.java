@@ -0,0 +1,146 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import com.google.protobuf.Empty;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.data.GrpcHeader;
+import io.github.majusko.grpc.jwt.interceptor.AllowedCollector;
+import io.github.majusko.grpc.jwt.interceptor.AuthServerInterceptor;
+import io.github.majusko.grpc.jwt.interceptor.proto.Example;
+import io.github.majusko.grpc.jwt.interceptor.proto.ExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.metrics.AuthMetrics;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.VerifiedTokenCache;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Auth state shared by all calls under contention: the internal token refreshed in the background about every
+ * two seconds, the verified token cache and the policies of {@link AllowedCollector}. Run with a thread sweep,
+ * e.g. {@code -Dbenchmark.threads=1,2,4,max}, the auth path scales with the cores when the score grows with the
+ * threads up to the core count. In the {@code registration} group one thread keeps registering services while
+ * the others call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+    private static final String OWNER = "benchmark-owner";
+
+    private static final ServerCall.Listener<Object> APPLICATION_LISTENER = new ServerCall.Listener<Object>() {
+    };
+
+    private JwtService jwtService;
+    private AllowedCollector allowedCollector;
+    private AuthServerInterceptor interceptor;
+    private Metadata ownerToken;
+    private Example.GetExampleRequest ownedRequest;
+
+    @Setup
+    public void setup() {
+        final StandardEnvironment environment = new StandardEnvironment();
+        environment.setActiveProfiles(BenchmarkService.PROFILE);
+
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setExpirationSec(2L);
+
+        jwtService = new JwtService(environment, properties);
+        allowedCollector = new AllowedCollector(environment, properties);
+        allowedCollector.postProcessBeforeInitialization(new BenchmarkService(), "benchmarkService");
+        interceptor = new AuthServerInterceptor(
+            allowedCollector, jwtService, new VerifiedTokenCache(true, 10_000), AuthMetrics.NOOP, properties
+        );
+        ownerToken = header(jwtService.generate(new JwtData(OWNER, "customer")));
+        ownedRequest = Example.GetExampleRequest.newBuilder().setUserId(OWNER).build();
+
+        final Calls calls = new Calls();
+
+        verifyGranted(ownerField(calls));
+        verifyGranted(internalCall(calls));
+    }
+
+    @TearDown
+    public void tearDown() {
+        jwtService.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Calls {
+        final BenchmarkServerCall<Example.GetExampleRequest, Empty> ownerField =
+            new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_GET_EXAMPLE);
+        final BenchmarkServerCall<Example.GetExampleRequest, Empty> internal =
+            new BenchmarkServerCall<>(ExampleServiceGrpc.METHOD_LIST_EXAMPLE);
+
+        String internalToken;
+        Metadata internalHeader;
+    }
+
+    @Benchmark
+    public String internalToken() {
+        return jwtService.getInternal();
+    }
+
+    @Benchmark
+    public Status ownerField(Calls calls) {
+        return ownerFieldCall(calls.ownerField);
+    }
+
+    /**
+     * Every refresh of the internal token is a miss of the verified token cache for all threads at once.
+     */
+    @Benchmark
+    public Status internalCall(Calls calls) {
+        final String token = jwtService.getInternal();
+
+        if(token != calls.internalToken) {
+            calls.internalToken = token;
+            calls.internalHeader = header(token);
+        }
+
+        interceptor.interceptCall(calls.internal, calls.internalHeader, handler()).onMessage(ownedRequest);
+        return calls.internal.getStatus();
+    }
+
+    @Benchmark
+    @Group("registration")
+    @GroupThreads(3)
+    public Status registrationCall(Calls calls) {
+        return ownerFieldCall(calls.ownerField);
+    }
+
+    @Benchmark
+    @Group("registration")
+    @GroupThreads(1)
+    public Object register() {
+        return allowedCollector.postProcessBeforeInitialization(new BenchmarkService(), "benchmarkService");
+    }
+
+    private Status ownerFieldCall(BenchmarkServerCall<Example.GetExampleRequest, Empty> call) {
+        interceptor.interceptCall(call, ownerToken, handler()).onMessage(ownedRequest);
+        return call.getStatus();
+    }
+
+    private static Metadata header(String token) {
+        final Metadata metadata = new Metadata();
+        metadata.put(GrpcHeader.AUTHORIZATION, token);
+        return metadata;
+    }
+
+    private static void verifyGranted(Status status) {
+        if(status != null) throw new IllegalStateException("Measured call is denied: " + status);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <ReqT, RespT> ServerCallHandler<ReqT, RespT> handler() {
+        return (call, headers) -> (ServerCall.Listener<ReqT>) APPLICATION_LISTENER;
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import com.google.common.collect.Sets;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.jsonwebtoken.JwtException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issuance and verification of {@link JwtService}: minting a user token, reading the internal token,
+ * verifying a valid token by jjwt, by the built-in HMAC verifier and in the compact binary form and refusing
+ * a forged one.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class JwtServiceBenchmark {
+
+    private JwtService jwtService;
+    private JwtService nativeJwtService;
+    private JwtData data;
+    private String token;
+    private String compactToken;
+    private String forgedToken;
+
+    @Setup
+    public void setup() {
+        final StandardEnvironment environment = new StandardEnvironment();
+        environment.setActiveProfiles(BenchmarkService.PROFILE);
+
+        final GrpcJwtProperties nativeProperties = new GrpcJwtProperties();
+        nativeProperties.setNativeVerification(true);
+
+        jwtService = new JwtService(environment, new GrpcJwtProperties());
+        nativeJwtService = new JwtService(environment, nativeProperties);
+        data = new JwtData("benchmark-user", Sets.newHashSet(BenchmarkService.ADMIN, "customer"));
+        token = jwtService.generate(data);
+        compactToken = Base64.getUrlEncoder().withoutPadding().encodeToString(jwtService.generateCompact(data));
+        forgedToken = token.substring(0, token.length() - 4) + "AAAA";
+    }
+
+    @Benchmark
+    public String generate() {
+        return jwtService.generate(data);
+    }
+
+    @Benchmark
+    public String getInternal() {
+        return jwtService.getInternal();
+    }
+
+    @Benchmark
+    public Object parseClaims() {
+        return jwtService.parseClaims(token);
+    }
+
+    @Benchmark
+    public Object verify() {
+        return jwtService.verify(token);
+    }
+
+    @Benchmark
+    public Object verifyNative() {
+        return nativeJwtService.verify(token);
+    }
+
+    @Benchmark
+    public Object verifyCompact() {
+        return jwtService.verify(compactToken);
+    }
+
+    @Benchmark
+    public Object rejectForged() {
+        try {
+            return jwtService.parseClaims(forgedToken);
+        } catch(JwtException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.data.GrpcHeader;
+import io.github.majusko.grpc.jwt.interceptor.AllowedCollector;
+import io.github.majusko.grpc.jwt.interceptor.AuthClientInterceptor;
+import io.github.majusko.grpc.jwt.interceptor.AuthServerInterceptor;
+import io.github.majusko.grpc.jwt.interceptor.proto.Example;
+import io.github.majusko.grpc.jwt.interceptor.proto.LoadExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.metrics.AuthMetrics;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.VerifiedTokenCache;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.grpc.*;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Closed-loop load test of an in-process server with and without {@link AuthServerInterceptor} and
+ * {@link AuthClientInterceptor} in the chain. Every worker thread issues one call at a time with a random token of
+ * the population, a configured share of the calls ask for a foreign owner and is denied. Latency of each call type
+ * is recorded by HdrHistogram.
+ * <p>
+ * System properties, which can be passed as {@code name=value} arguments as well:
+ * <ul>
+ *     <li>{@code load.concurrency} - worker threads, default {@code 8}</li>
+ *     <li>{@code load.tokens} - distinct user tokens, default {@code 1000}</li>
+ *     <li>{@code load.denied} - share of denied calls between 0 and 1, default {@code 0.1}</li>
+ *     <li>{@code load.messages} - messages per stream, default {@code 10}</li>
+ *     <li>{@code load.calls} - call types, default {@code unary,server,client,bidi}</li>
+ *     <li>{@code load.auth} - {@code both}, {@code on} or {@code off}, default {@code both}</li>
+ *     <li>{@code load.cache} - enable the verified token cache, default {@code true}</li>
+ *     <li>{@code load.warmup} and {@code load.duration} - seconds per run, default {@code 5} and {@code 10}</li>
+ *     <li>{@code load.log} - keep the error log of every denied call, default {@code false}</li>
+ * </ul>
+ */
+public class LoadHarness {
+
+    private static final String PROPERTY_PREFIX = "load.";
+    private static final String FOREIGN_OWNER = "foreign-owner";
+    private static final long MAX_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final int concurrency = Integer.getInteger("load.concurrency", 8);
+    private final int tokens = Integer.getInteger("load.tokens", 1000);
+    private final double denied = Double.parseDouble(System.getProperty("load.denied", "0.1"));
+    private final int messages = Integer.getInteger("load.messages", 10);
+    private final boolean cache = Boolean.parseBoolean(System.getProperty("load.cache", "true"));
+    private final long warmupSec = Long.getLong("load.warmup", 5);
+    private final long durationSec = Long.getLong("load.duration", 10);
+    private final List<CallType> callTypes = Arrays.stream(System.getProperty("load.calls", "unary,server,client,bidi")
+        .split(","))
+        .map(name -> CallType.valueOf(name.trim().toUpperCase(Locale.ROOT)))
+        .collect(Collectors.toList());
+
+    public static void main(String[] args) throws Exception {
+        for(String arg : args) {
+            final int separator = arg.indexOf('=');
+
+            if(!arg.startsWith(PROPERTY_PREFIX) || separator < 0) {
+                throw new IllegalArgumentException("Expected load.<name>=<value> but got " + arg);
+            }
+
+            System.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        final LoadHarness harness = new LoadHarness();
+        final String auth = System.getProperty("load.auth", "both");
+
+        if(!Boolean.getBoolean("load.log")) {
+            ((Logger) LoggerFactory.getLogger(GrpcJwtProperties.class.getPackage().getName())).setLevel(Level.OFF);
+        }
+
+        System.out.printf("concurrency=%d tokens=%d denied=%.2f messages=%d cache=%b%n", harness.concurrency,
+            harness.tokens, harness.denied, harness.messages, harness.cache);
+        System.out.printf("%-5s %-7s %10s %10s %10s %10s %10s %10s%n",
+            "auth", "call", "calls", "rpc/s", "p50 us", "p99 us", "p999 us", "denied");
+
+        if(!"on".equals(auth)) harness.run(false);
+        if(!"off".equals(auth)) harness.run(true);
+    }
+
+    private void run(boolean auth) throws Exception {
+        final String serverName = InProcessServerBuilder.generateName();
+        final StandardEnvironment environment = new StandardEnvironment();
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        final JwtService jwtService = new JwtService(environment, properties);
+        final AllowedCollector allowedCollector = new AllowedCollector(environment, properties);
+        final LoadService service = new LoadService(messages);
+
+        allowedCollector.postProcessBeforeInitialization(service, "loadService");
+
+        final AuthServerInterceptor serverInterceptor = new AuthServerInterceptor(
+            allowedCollector, jwtService, new VerifiedTokenCache(cache, properties.getCache().getMaxSize()),
+            AuthMetrics.NOOP, properties
+        );
+        final Server server = InProcessServerBuilder.forName(serverName)
+            .addService(auth ? ServerInterceptors.intercept(service, serverInterceptor) : service.bindService())
+            .build()
+            .start();
+        final ManagedChannel managedChannel = InProcessChannelBuilder.forName(serverName).build();
+        final Channel channel = auth ?
+            ClientInterceptors.intercept(managedChannel, new AuthClientInterceptor(jwtService)) : managedChannel;
+        final List<Caller> callers = callers(jwtService, channel);
+
+        try {
+            final Map<CallType, Recorder> recorders = new EnumMap<>(CallType.class);
+            final Map<CallType, LongAdder> deniedCalls = new EnumMap<>(CallType.class);
+
+            for(CallType callType : callTypes) {
+                recorders.put(callType, new Recorder(MAX_LATENCY_NANOS, 3));
+                deniedCalls.put(callType, new LongAdder());
+            }
+
+            drive(callers, recorders, deniedCalls, warmupSec);
+
+            for(CallType callType : callTypes) {
+                recorders.get(callType).reset();
+                deniedCalls.get(callType).reset();
+            }
+
+            drive(callers, recorders, deniedCalls, durationSec);
+
+            for(CallType callType : callTypes) {
+                report(auth, callType, recorders.get(callType).getIntervalHistogram(), deniedCalls.get(callType));
+            }
+        } finally {
+            managedChannel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            serverInterceptor.shutdown();
+            jwtService.shutdown();
+        }
+    }
+
+    private List<Caller> callers(JwtService jwtService, Channel channel) {
+        final List<JwtData> users = IntStream.range(0, tokens)
+            .mapToObj(i -> new JwtData("load-user-" + i, "customer"))
+            .collect(Collectors.toList());
+        final List<String> userTokens = jwtService.generateAll(users);
+        final List<Caller> callers = new ArrayList<>(tokens);
+
+        for(int i = 0; i < tokens; i++) {
+            final Metadata header = new Metadata();
+            header.put(GrpcHeader.AUTHORIZATION, userTokens.get(i));
+
+            callers.add(new Caller(
+                LoadExampleServiceGrpc.newBlockingStub(channel)
+                    .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(header)),
+                LoadExampleServiceGrpc.newStub(channel)
+                    .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(header)),
+                Example.GetExampleRequest.newBuilder().setUserId(users.get(i).getUserId()).build(),
+                Example.GetExampleRequest.newBuilder().setUserId(FOREIGN_OWNER).build()
+            ));
+        }
+
+        return callers;
+    }
+
+    private void drive(
+        List<Caller> callers,
+        Map<CallType, Recorder> recorders,
+        Map<CallType, LongAdder> deniedCalls,
+        long seconds
+    ) throws Exception {
+        final ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final List<Future<?>> results = new ArrayList<>(concurrency);
+
+        for(int worker = 0; worker < concurrency; worker++) {
+            final int offset = worker;
+
+            results.add(workers.submit(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                for(int i = offset; System.nanoTime() < deadline; i++) {
+                    final CallType callType = callTypes.get(i % callTypes.size());
+                    final Caller caller = callers.get(random.nextInt(callers.size()));
+                    final boolean foreign = random.nextDouble() < denied;
+                    final long start = System.nanoTime();
+                    final Status.Code code = callType.call(caller, foreign ? caller.foreign : caller.own, messages);
+
+                    recorders.get(callType).recordValue(Math.min(System.nanoTime() - start, MAX_LATENCY_NANOS));
+
+                    if(code == Status.Code.PERMISSION_DENIED) {
+                        deniedCalls.get(callType).increment();
+                    } else if(code != Status.Code.OK) {
+                        throw new IllegalStateException(callType + " call failed with " + code);
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        try {
+            for(Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void report(boolean auth, CallType callType, Histogram histogram, LongAdder deniedCalls) {
+        System.out.printf("%-5s %-7s %10d %10.0f %10.1f %10.1f %10.1f %10d%n",
+            auth ? "on" : "off",
+            callType.name().toLowerCase(Locale.ROOT),
+            histogram.getTotalCount(),
+            histogram.getTotalCount() / (double) durationSec,
+            histogram.getValueAtPercentile(50) / 1000.0,
+            histogram.getValueAtPercentile(99) / 1000.0,
+            histogram.getValueAtPercentile(99.9) / 1000.0,
+            deniedCalls.sum());
+    }
+
+    private static class Caller {
+        final LoadExampleServiceGrpc.LoadExampleServiceBlockingStub blockingStub;
+        final LoadExampleServiceGrpc.LoadExampleServiceStub asyncStub;
+        final Example.GetExampleRequest own;
+        final Example.GetExampleRequest foreign;
+
+        Caller(
+            LoadExampleServiceGrpc.LoadExampleServiceBlockingStub blockingStub,
+            LoadExampleServiceGrpc.LoadExampleServiceStub asyncStub,
+            Example.GetExampleRequest own,
+            Example.GetExampleRequest foreign
+        ) {
+            this.blockingStub = blockingStub;
+            this.asyncStub = asyncStub;
+            this.own = own;
+            this.foreign = foreign;
+        }
+    }
+
+    private enum CallType {
+        UNARY {
+            @Override
+            Status.Code call(Caller caller, Example.GetExampleRequest request, int messages) {
+                try {
+                    caller.blockingStub.unaryExample(request);
+                    return Status.Code.OK;
+                } catch(StatusRuntimeException e) {
+                    return e.getStatus().getCode();
+                }
+            }
+        },
+        SERVER {
+            @Override
+            Status.Code call(Caller caller, Example.GetExampleRequest request, int messages) {
+                try {
+                    caller.blockingStub.serverStreamExample(request).forEachRemaining(response -> {
+                    });
+                    return Status.Code.OK;
+                } catch(StatusRuntimeException e) {
+                    return e.getStatus().getCode();
+                }
+            }
+        },
+        CLIENT {
+            @Override
+            Status.Code call(Caller caller, Example.GetExampleRequest request, int messages) throws Exception {
+                final Completion completion = new Completion();
+
+                stream(caller.asyncStub.clientStreamExample(completion), request, messages);
+
+                return completion.await();
+            }
+        },
+        BIDI {
+            @Override
+            Status.Code call(Caller caller, Example.GetExampleRequest request, int messages) throws Exception {
+                final Completion completion = new Completion();
+
+                stream(caller.asyncStub.bidiStreamExample(completion), request, messages);
+
+                return completion.await();
+            }
+        };
+
+        abstract Status.Code call(Caller caller, Example.GetExampleRequest request, int messages) throws Exception;
+
+        private static void stream(
+            StreamObserver<Example.GetExampleRequest> requests,
+            Example.GetExampleRequest request,
+            int messages
+        ) {
+            for(int i = 0; i < messages; i++) {
+                requests.onNext(request);
+            }
+
+            requests.onCompleted();
+        }
+    }
+
+    private static class Completion implements StreamObserver<Example.GetExampleRequest> {
+        private final CompletableFuture<Status.Code> result = new CompletableFuture<>();
+
+        @Override
+        public void onNext(Example.GetExampleRequest response) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            result.complete(Status.fromThrowable(t).getCode());
+        }
+
+        @Override
+        public void onCompleted() {
+            result.complete(Status.Code.OK);
+        }
+
+        Status.Code await() throws Exception {
+            return result.get(MAX_LATENCY_NANOS, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import io.github.majusko.grpc.jwt.annotation.Allow;
+import io.github.majusko.grpc.jwt.interceptor.proto.Example;
+import io.github.majusko.grpc.jwt.interceptor.proto.LoadExampleServiceGrpc;
+import io.grpc.stub.StreamObserver;
+import org.lognet.springboot.grpc.GRpcService;
+
+/**
+ * Echo service of {@link LoadHarness} with one method of every call type, each checking the owner field.
+ */
+@GRpcService
+public class LoadService extends LoadExampleServiceGrpc.LoadExampleServiceImplBase {
+
+    private final int messages;
+
+    public LoadService(int messages) {
+        this.messages = messages;
+    }
+
+    @Override
+    @Allow(ownerField = "userId")
+    public void unaryExample(Example.GetExampleRequest request, StreamObserver<Example.GetExampleRequest> response) {
+        response.onNext(request);
+        response.onCompleted();
+    }
+
+    @Override
+    @Allow(ownerField = "userId")
+    public void serverStreamExample(
+        Example.GetExampleRequest request,
+        StreamObserver<Example.GetExampleRequest> response
+    ) {
+        for(int i = 0; i < messages; i++) {
+            response.onNext(request);
+        }
+
+        response.onCompleted();
+    }
+
+    @Override
+    @Allow(ownerField = "userId")
+    public StreamObserver<Example.GetExampleRequest> clientStreamExample(
+        StreamObserver<Example.GetExampleRequest> response
+    ) {
+        return new StreamObserver<Example.GetExampleRequest>() {
+            private Example.GetExampleRequest last = Example.GetExampleRequest.getDefaultInstance();
+
+            @Override
+            public void onNext(Example.GetExampleRequest request) {
+                last = request;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+                response.onNext(last);
+                response.onCompleted();
+            }
+        };
+    }
+
+    @Override
+    @Allow(ownerField = "userId")
+    public StreamObserver<Example.GetExampleRequest> bidiStreamExample(
+        StreamObserver<Example.GetExampleRequest> response
+    ) {
+        return new StreamObserver<Example.GetExampleRequest>() {
+            @Override
+            public void onNext(Example.GetExampleRequest request) {
+                response.onNext(request);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+                response.onCompleted();
+            }
+        };
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.interceptor.AllowedCollector;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of collecting the policies of one gRPC service from the build time index or by reflection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class PolicyCollectionBenchmark {
+
+    @Param({"true", "false"})
+    private boolean policyIndex;
+
+    private MockEnvironment environment;
+    private GrpcJwtProperties properties;
+
+    @Setup
+    public void setup() {
+        environment = new MockEnvironment();
+        environment.setActiveProfiles(BenchmarkService.PROFILE);
+        properties = new GrpcJwtProperties();
+        properties.setPolicyIndex(policyIndex);
+    }
+
+    @Benchmark
+    public Object collect() {
+        final AllowedCollector collector = new AllowedCollector(environment, properties);
+
+        return collector.postProcessBeforeInitialization(new BenchmarkService(), "benchmarkService");
+    }
+}
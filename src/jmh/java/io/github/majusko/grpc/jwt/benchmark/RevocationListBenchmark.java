@@ -0,0 +1,69 @@
+package io.github.majusko.grpc.jwt.benchmark;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.github.majusko.grpc.jwt.service.RevocationList;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Revocation check of a token which is not revoked, the common case on every call, against denylists of different
+ * sizes. The Bloom filter is the reference for putting one in front of the sets: hashing the string bytes on every
+ * probe costs more than a set miss on the cached {@link String#hashCode()}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class RevocationListBenchmark {
+
+    private static final int ACTIVE_TOKENS = 1024;
+
+    @Param({"0", "1000", "100000"})
+    public int revoked;
+
+    private RevocationList revocationList;
+    private BloomFilter<CharSequence> revokedFilter;
+    private String[] activeIds;
+
+    @Setup
+    public void setup() {
+        final List<String> ids = IntStream.range(0, revoked)
+            .mapToObj(i -> UUID.randomUUID().toString())
+            .collect(Collectors.toList());
+
+        revocationList = new RevocationList();
+        revocationList.update(ids, ids.subList(0, revoked / 10));
+        revokedFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(revoked, 1), 0.001);
+        ids.forEach(revokedFilter::put);
+        activeIds = IntStream.range(0, ACTIVE_TOKENS)
+            .mapToObj(i -> UUID.randomUUID().toString())
+            .toArray(String[]::new);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public boolean isRevoked(Cursor cursor) {
+        final String id = activeIds[cursor.next++ & (ACTIVE_TOKENS - 1)];
+
+        return revocationList.isRevoked(id, BenchmarkService.ADMIN);
+    }
+
+    @Benchmark
+    public boolean bloomFilter(Cursor cursor) {
+        final String id = activeIds[cursor.next++ & (ACTIVE_TOKENS - 1)];
+
+        return revokedFilter.mightContain(id) || revokedFilter.mightContain(BenchmarkService.ADMIN);
+    }
+}
@@ -1,18 +1,36 @@
 package io.github.majusko.grpc.jwt;
 
+import io.github.majusko.grpc.jwt.audit.AuditLog;
+import io.github.majusko.grpc.jwt.audit.AuditSink;
+import io.github.majusko.grpc.jwt.audit.RollingFileAuditSink;
 import io.github.majusko.grpc.jwt.interceptor.AuthClientInterceptor;
+import io.github.majusko.grpc.jwt.metrics.AuthMetrics;
+import io.github.majusko.grpc.jwt.metrics.MicrometerAuthMetrics;
+import io.github.majusko.grpc.jwt.service.IntrospectionTokenResolver;
 import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.VerifiedTokenCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
+import java.nio.file.Paths;
+
 @Configuration
 @ComponentScan
 @EnableConfigurationProperties(GrpcJwtProperties.class)
 public class GrpcJwtAutoConfiguration {
 
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
     private final Environment environment;
     private final GrpcJwtProperties grpcJwtProperties;
 
@@ -27,7 +45,60 @@ public class GrpcJwtAutoConfiguration {
     }
 
     @Bean
-    public AuthClientInterceptor authClientInterceptor() {
-        return new AuthClientInterceptor(jwtService());
+    public VerifiedTokenCache verifiedTokenCache() {
+        final GrpcJwtProperties.Cache cache = grpcJwtProperties.getCache();
+
+        return new VerifiedTokenCache(cache.isEnabled(), cache.getMaxSize());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "grpc.jwt.introspection", name = "url")
+    public IntrospectionTokenResolver introspectionTokenResolver() {
+        if(!grpcJwtProperties.getAsync().isEnabled()) {
+            logger.warn("Token introspection blocks gRPC threads, set grpc.jwt.async.enabled=true in production.");
+        }
+
+        return new IntrospectionTokenResolver(grpcJwtProperties.getIntrospection());
+    }
+
+    @Bean
+    public AuditLog auditLog(ObjectProvider<AuditSink> auditSink) {
+        final GrpcJwtProperties.Audit audit = grpcJwtProperties.getAudit();
+
+        if(!audit.isEnabled()) return AuditLog.DISABLED;
+
+        final AuditSink sink = auditSink.getIfAvailable(() ->
+            new RollingFileAuditSink(Paths.get(audit.getFile()), audit.getMaxFileSize(), audit.getMaxFiles()));
+
+        return new AuditLog(sink, audit.getBufferSize(), audit.getGrantSampleRate());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(AuthMetrics.class)
+    public AuthMetrics authMetrics() {
+        return AuthMetrics.NOOP;
+    }
+
+    @Bean
+    public AuthClientInterceptor authClientInterceptor(AuthMetrics authMetrics) {
+        return new AuthClientInterceptor(jwtService(), authMetrics);
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class MicrometerConfiguration {
+
+        @Bean
+        public AuthMetrics micrometerAuthMetrics(
+            ObjectProvider<MeterRegistry> meterRegistry,
+            JwtService jwtService,
+            GrpcJwtProperties grpcJwtProperties
+        ) {
+            final MeterRegistry registry = meterRegistry.getIfAvailable();
+
+            if(registry == null) return AuthMetrics.NOOP;
+
+            return new MicrometerAuthMetrics(registry, jwtService, grpcJwtProperties.getMetrics().getMaxMethods());
+        }
     }
 }
@@ -3,10 +3,176 @@ package io.github.majusko.grpc.jwt;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 @Data
 @ConfigurationProperties(prefix = "grpc.jwt")
 public class GrpcJwtProperties {
     private String secret = "default";
     private String algorithm = "HmacSHA256";
     private Long expirationSec = 3600L;
-}
\ No newline at end of file
+    /**
+     * Longer tokens are rejected before they are parsed.
+     */
+    private int maxTokenLength = 8192;
+    /**
+     * Verify HMAC signed tokens with the built-in verifier instead of jjwt. Compressed tokens and tokens with
+     * claims of unexpected types are still verified by jjwt.
+     */
+    private boolean nativeVerification = false;
+    /**
+     * Read {@code @Allow} and {@code @Exposed} of gRPC services from the index generated at build time
+     * instead of scanning the classes reflectively. Classes without the index are always scanned.
+     */
+    private boolean policyIndex = false;
+    private Cache cache = new Cache();
+    private RejectedCache rejectedCache = new RejectedCache();
+    private Keys keys = new Keys();
+    private Metrics metrics = new Metrics();
+    private Projection projection = new Projection();
+    /**
+     * Verify the token of methods without {@code @Allow} and {@code @Exposed} only when the application reads
+     * {@code GrpcJwtContext}. When disabled, such methods do not see the token in the context.
+     */
+    private boolean lazyContext = false;
+    private Async async = new Async();
+    private Compact compact = new Compact();
+    private Revocation revocation = new Revocation();
+    private Introspection introspection = new Introspection();
+    private Audit audit = new Audit();
+
+    @Data
+    public static class Cache {
+        private boolean enabled = false;
+        private long maxSize = 10_000L;
+    }
+
+    @Data
+    public static class RejectedCache {
+        private boolean enabled = true;
+        private long maxSize = 10_000L;
+        private long ttlSec = 60L;
+    }
+
+    @Data
+    public static class Keys {
+        /**
+         * PEM file with PKCS#8 private key (RSA or EC) used for signing. Leave empty on verify-only services.
+         */
+        private String signingKey;
+        private String signingKeyId;
+        /**
+         * JWS algorithm of the signing key, e.g. RS256 or ES256. Derived from the key when empty.
+         */
+        private String signingAlgorithm;
+        /**
+         * PEM files with public keys or certificates indexed by key id.
+         */
+        private Map<String, String> publicKeys = new HashMap<>();
+        private String jwks;
+        private long refreshSec = 0L;
+
+        public boolean isAsymmetric() {
+            return signingKey != null || jwks != null || !publicKeys.isEmpty();
+        }
+    }
+
+    @Data
+    public static class Metrics {
+        /**
+         * Number of gRPC methods tagged individually besides the methods with {@code @Allow} and {@code @Exposed},
+         * calls of other methods are tagged as {@code other}.
+         */
+        private int maxMethods = 500;
+    }
+
+    @Data
+    public static class Async {
+        /**
+         * Verify tokens which are not in the token cache on a dedicated executor instead of the gRPC thread.
+         */
+        private boolean enabled = false;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int queueSize = 10_000;
+    }
+
+    @Data
+    public static class Compact {
+        /**
+         * Send the internal token as a binary token in the {@code authorization-bin} header. Needs the shared secret.
+         */
+        private boolean enabled = false;
+        /**
+         * Roles and environments written as small integers. Must be the same list on every service.
+         */
+        private List<String> dictionary = new ArrayList<>();
+    }
+
+    @Data
+    public static class Revocation {
+        /**
+         * File with revoked {@code jti:<token id>} and {@code sub:<subject>} lines, reloaded when it changes.
+         */
+        private String file;
+    }
+
+    @Data
+    public static class Introspection {
+        /**
+         * Token introspection endpoint (RFC 7662). When set, tokens without a dot are resolved by it.
+         */
+        private String url;
+        private String clientId;
+        private String clientSecret;
+        private long maxSize = 10_000L;
+        /**
+         * Longest time a result is cached. Results of active tokens expire together with the token.
+         */
+        private long ttlSec = 300L;
+        /**
+         * Older results are introspected again in the background while the cached result is still used.
+         */
+        private long refreshSec = 60L;
+        /**
+         * Connect and read timeouts of the endpoint, both must be positive. The first introspection of a token
+         * blocks the calling thread up to their sum.
+         */
+        private int connectTimeoutMillis = 1_000;
+        private int readTimeoutMillis = 2_000;
+        private int threads = 2;
+    }
+
+    @Data
+    public static class Audit {
+        /**
+         * Record method, subject, decision, reason and latency of calls to {@code @Allow} and {@code @Exposed}
+         * methods. Records are written to the {@code AuditSink} bean or to the file.
+         */
+        private boolean enabled = false;
+        private String file = "grpc-jwt-audit.log";
+        private long maxFileSize = 10L * 1024 * 1024;
+        private int maxFiles = 5;
+        /**
+         * Records waiting for the writer, further records are dropped.
+         */
+        private int bufferSize = 8192;
+        /**
+         * Fraction of granted calls which are recorded. Denied calls are always recorded.
+         */
+        private double grantSampleRate = 1.0;
+    }
+
+    @Data
+    public static class Projection {
+        /**
+         * Keep only subject, roles, environments, expiration and the listed claims of verified tokens.
+         */
+        private boolean enabled = false;
+        private Set<String> claims = new HashSet<>();
+    }
+}
@@ -20,4 +20,12 @@ public @interface Allow {
      * specified roles will be checked then.
      */
     String ownerField() default "";
+
+    /**
+     * Optional condition over claims and request fields compiled at startup, e.g.
+     * {@code request.tenantId in claim.tenants && claim.tier != 'trial'}. It must hold in addition to the roles
+     * and owner field, when neither of them is specified the expression alone grants the access.
+     * See {@code AllowExpression} for the grammar.
+     */
+    String expression() default "";
 }
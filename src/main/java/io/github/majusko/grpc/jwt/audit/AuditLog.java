@@ -0,0 +1,254 @@
+package io.github.majusko.grpc.jwt.audit;
+
+import io.github.majusko.grpc.jwt.metrics.AuthOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit stream of auth decisions. Calling threads copy the decision to a preallocated slot of a bounded
+ * lock-free ring buffer and a single background thread drains the slots to the {@link AuditSink}. When the
+ * buffer is full, the record is dropped and counted instead of waiting for the writer.
+ * <p>
+ * Every slot carries a sequence number. A producer claims a position by CAS on the head when the sequence
+ * of its slot says the slot is free, fills the slot and publishes it by advancing the sequence. The writer
+ * reads published slots in order and hands them back by advancing the sequence by the capacity. On shutdown
+ * the writer drains the records of producers which passed the stop check, then moves the head a whole buffer
+ * ahead, so every later producer sees a full buffer and its record is counted as dropped.
+ */
+public class AuditLog {
+
+    public static final AuditLog DISABLED = new AuditLog();
+
+    private static final String WRITER_THREAD_NAME = "grpc-jwt-audit";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SEAL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final boolean enabled;
+    private final double grantSampleRate;
+    private final AuditSink sink;
+    private final AuditRecord[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Thread writer;
+
+    private long tail;
+    private volatile boolean running;
+
+    private AuditLog() {
+        this.enabled = false;
+        this.grantSampleRate = 0;
+        this.sink = null;
+        this.slots = new AuditRecord[0];
+        this.sequences = new AtomicLongArray(0);
+        this.mask = 0;
+        this.writer = null;
+    }
+
+    /**
+     * Allocate the buffer and start the writer thread.
+     * @param sink Destination of the records.
+     * @param bufferSize Number of slots, rounded up to a power of two.
+     * @param grantSampleRate Fraction of granted calls which are recorded, denied calls are always recorded.
+     */
+    public AuditLog(AuditSink sink, int bufferSize, double grantSampleRate) {
+        final int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+
+        this.enabled = true;
+        this.grantSampleRate = grantSampleRate;
+        this.sink = sink;
+        this.slots = new AuditRecord[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+
+        for(int i = 0; i < capacity; i++) {
+            slots[i] = new AuditRecord();
+            sequences.set(i, i);
+        }
+
+        this.running = true;
+        this.writer = new Thread(this::drainUntilStopped, WRITER_THREAD_NAME);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record the decision without blocking.
+     * @param method Full gRPC method name.
+     * @param subject Subject of the token or null.
+     * @param decision Outcome of the call.
+     * @param reason Why the call was refused or null.
+     * @param latencyNanos Time from the start of the call until the decision.
+     * @return False when the record was dropped because the buffer is full or the log is stopped.
+     */
+    public boolean record(String method, String subject, AuthOutcome decision, String reason, long latencyNanos) {
+        if(!enabled || !isSampled(decision)) return true;
+        if(!running) {
+            dropped.increment();
+            return false;
+        }
+
+        long position = head.get();
+
+        while(true) {
+            final int slot = (int) position & mask;
+            final long available = sequences.get(slot) - position;
+
+            if(available == 0) {
+                if(head.compareAndSet(position, position + 1)) break;
+
+                position = head.get();
+            } else if(available < 0) {
+                dropped.increment();
+                return false;
+            } else {
+                position = head.get();
+            }
+        }
+
+        final int slot = (int) position & mask;
+        slots[slot].set(System.currentTimeMillis(), method, subject, decision, reason, latencyNanos);
+        sequences.lazySet(slot, position + 1);
+
+        return true;
+    }
+
+    /**
+     * @return Records dropped because the buffer was full or the log was stopped.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return Records passed to the sink.
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * @return Records the sink failed to write.
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Stop the writer after it drains the records recorded so far and close the sink.
+     */
+    public void shutdown() {
+        if(!enabled || !running) return;
+
+        running = false;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isSampled(AuthOutcome decision) {
+        if(decision != AuthOutcome.SUCCESS && decision != AuthOutcome.EXPOSED) return true;
+        if(grantSampleRate >= 1) return true;
+
+        return grantSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < grantSampleRate;
+    }
+
+    private void drainUntilStopped() {
+        while(running) {
+            if(drain() == 0) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+
+        drainAndSeal();
+
+        try {
+            sink.close();
+        } catch(IOException | RuntimeException e) {
+            logger.warn("Closing of the audit sink failed.", e);
+        }
+    }
+
+    /**
+     * Drain until no producer holds a claimed slot and close the buffer for good. Records of producers which do
+     * not publish their claimed slot in time are counted as dropped.
+     */
+    private void drainAndSeal() {
+        final long deadline = System.nanoTime() + SEAL_TIMEOUT_NANOS;
+
+        while(true) {
+            drain();
+
+            final long claimed = head.get();
+
+            if(claimed == tail || System.nanoTime() - deadline > 0) {
+                if(head.compareAndSet(claimed, claimed + slots.length)) {
+                    dropped.add(claimed - tail);
+                    return;
+                }
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return Number of drained records.
+     */
+    private int drain() {
+        int count = 0;
+
+        while(true) {
+            final int slot = (int) tail & mask;
+
+            if(sequences.get(slot) != tail + 1) break;
+
+            final AuditRecord record = slots[slot];
+            write(record);
+            record.clear();
+            sequences.lazySet(slot, tail + slots.length);
+            tail++;
+            count++;
+        }
+
+        if(count > 0) {
+            try {
+                sink.flush();
+            } catch(IOException | RuntimeException e) {
+                logger.warn("Flushing of the audit sink failed.", e);
+            }
+        }
+
+        return count;
+    }
+
+    private void write(AuditRecord record) {
+        try {
+            sink.write(record);
+            written.increment();
+        } catch(IOException | RuntimeException e) {
+            if(failed.sum() == 0) logger.warn("Writing to the audit sink failed, failures are only counted now.", e);
+
+            failed.increment();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.majusko.grpc.jwt.audit;
+
+import io.github.majusko.grpc.jwt.metrics.AuthOutcome;
+
+/**
+ * Auth decision of a single call. Instances are slots of the ring buffer of {@link AuditLog} and are reused,
+ * so a sink must not keep the reference after {@link AuditSink#write(AuditRecord)} returns.
+ */
+public class AuditRecord {
+
+    private long timestampMillis;
+    private String method;
+    private String subject;
+    private AuthOutcome decision;
+    private String reason;
+    private long latencyNanos;
+
+    void set(
+        long timestampMillis,
+        String method,
+        String subject,
+        AuthOutcome decision,
+        String reason,
+        long latencyNanos
+    ) {
+        this.timestampMillis = timestampMillis;
+        this.method = method;
+        this.subject = subject;
+        this.decision = decision;
+        this.reason = reason;
+        this.latencyNanos = latencyNanos;
+    }
+
+    void clear() {
+        set(0, null, null, null, null, 0);
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return Full gRPC method name.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return Subject of the token or null when the call has no valid token.
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    public AuthOutcome getDecision() {
+        return decision;
+    }
+
+    /**
+     * @return Why the call was refused or null for granted calls.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return Time from the start of the call until the decision, including the token verification.
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+}
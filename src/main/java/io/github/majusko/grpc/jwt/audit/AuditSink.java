@@ -0,0 +1,24 @@
+package io.github.majusko.grpc.jwt.audit;
+
+import java.io.IOException;
+
+/**
+ * Destination of audit records. It is called only by the writer thread of {@link AuditLog}, so implementations
+ * do not need to be thread-safe and may block.
+ */
+public interface AuditSink {
+
+    /**
+     * @param record Record which is reused after the call returns.
+     */
+    void write(AuditRecord record) throws IOException;
+
+    /**
+     * Called after every drained batch of records.
+     */
+    default void flush() throws IOException {
+    }
+
+    default void close() throws IOException {
+    }
+}
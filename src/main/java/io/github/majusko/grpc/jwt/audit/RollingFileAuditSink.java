@@ -0,0 +1,123 @@
+package io.github.majusko.grpc.jwt.audit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Writes audit records as JSON lines to a local file. When the file grows over the maximum size, it is renamed
+ * to {@code <file>.1}, older files are shifted to {@code <file>.2} and so on and the oldest one is deleted.
+ */
+public class RollingFileAuditSink implements AuditSink {
+
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final StringBuilder line = new StringBuilder(256);
+
+    private Writer writer;
+    private long size;
+
+    /**
+     * @param file Current audit file, its directory is created when missing.
+     * @param maxFileSize Size in bytes after which the file is rolled.
+     * @param maxFiles Number of rolled files kept next to the current one.
+     */
+    public RollingFileAuditSink(Path file, long maxFileSize, int maxFiles) {
+        this.file = file.toAbsolutePath();
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+    }
+
+    @Override
+    public void write(AuditRecord record) throws IOException {
+        if(writer == null) open();
+
+        line.setLength(0);
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(record.getTimestampMillis())).append('"');
+        appendField("method", record.getMethod());
+        appendField("subject", record.getSubject());
+        appendField("decision", record.getDecision() == null ? null : record.getDecision().name());
+        appendField("reason", record.getReason());
+        line.append(",\"latencyMicros\":").append(record.getLatencyNanos() / 1000).append("}\n");
+
+        writer.append(line);
+        size += line.length();
+
+        if(size >= maxFileSize) roll();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(writer != null) writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if(file.getParent() != null) Files.createDirectories(file.getParent());
+
+        this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8));
+        this.size = Files.size(file);
+    }
+
+    private void roll() throws IOException {
+        close();
+
+        if(maxFiles <= 0) {
+            Files.delete(file);
+            return;
+        }
+
+        Files.deleteIfExists(rolled(maxFiles));
+
+        for(int i = maxFiles - 1; i >= 1; i--) {
+            if(Files.exists(rolled(i))) Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void appendField(String name, String value) {
+        line.append(",\"").append(name).append("\":");
+
+        if(value == null) {
+            line.append("null");
+            return;
+        }
+
+        line.append('"');
+
+        for(int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+
+            if(c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if(c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+
+        line.append('"');
+    }
+}
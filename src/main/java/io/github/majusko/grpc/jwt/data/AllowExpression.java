@@ -0,0 +1,340 @@
+package io.github.majusko.grpc.jwt.data;
+
+import com.google.protobuf.Descriptors;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.jsonwebtoken.Claims;
+
+import java.util.*;
+
+/**
+ * Condition of {@code @Allow(expression)} compiled once into a tree of closures. Claim names and request field
+ * paths are resolved at compile time, so an evaluation neither parses strings nor uses reflection.
+ * <p>
+ * Grammar:
+ * <pre>
+ * expression := and ('||' and)*
+ * and        := not ('&amp;&amp;' not)*
+ * not        := '!' not | '(' expression ')' | operand ('==' | '!=' | 'in') operand
+ * operand    := claim.NAME | request.FIELD.PATH | 'string' | number | true | false | '[' literal (',' literal)* ']'
+ * </pre>
+ * Every operand is a set of values, claims and repeated fields may hold more of them. {@code a in b} holds when
+ * {@code a} has a value and all of them are in {@code b}, {@code a == b} when both hold the same values.
+ */
+public class AllowExpression {
+
+    private static final String CLAIM_PREFIX = "claim.";
+    private static final String REQUEST_PREFIX = "request.";
+
+    private final String source;
+    private final Condition condition;
+    private final boolean usesRequest;
+
+    private AllowExpression(String source, Condition condition, boolean usesRequest) {
+        this.source = source;
+        this.condition = condition;
+        this.usesRequest = usesRequest;
+    }
+
+    /**
+     * Parse and compile the expression.
+     * @param source Expression of {@code @Allow}.
+     * @param requestDescriptor Descriptor of the request message or null when it is not known, request fields
+     *                          are then resolved on the first message.
+     * @return Compiled expression.
+     * @throws IllegalArgumentException when the expression is not valid or refers to a missing request field.
+     */
+    public static AllowExpression compile(String source, Descriptors.Descriptor requestDescriptor) {
+        final Parser parser = new Parser(source, requestDescriptor);
+        final Condition condition = parser.parse();
+
+        return new AllowExpression(source, condition, parser.usesRequest);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return True when the expression reads the request message, so it can be evaluated only on the first message.
+     */
+    public boolean usesRequest() {
+        return usesRequest;
+    }
+
+    /**
+     * @param contextData Verified token of the call.
+     * @param request First request message or null when the expression does not use it.
+     * @return True when the call satisfies the expression.
+     */
+    public boolean evaluate(JwtContextData contextData, Object request) {
+        return condition.test(contextData, request);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private interface Condition {
+        boolean test(JwtContextData contextData, Object request);
+    }
+
+    private interface Operand {
+        Collection<String> values(JwtContextData contextData, Object request);
+    }
+
+    private static boolean containsAll(Collection<String> container, Collection<String> values) {
+        if(values.isEmpty()) return false;
+
+        for(String value : values) {
+            if(!container.contains(value)) return false;
+        }
+
+        return true;
+    }
+
+    private static Operand claim(String name) {
+        switch(name) {
+            case Claims.SUBJECT:
+                return (data, request) -> single(data.getUserId());
+            case Claims.ID:
+                return (data, request) -> single(data.getTokenId());
+            case JwtService.JWT_ROLES:
+                return (data, request) -> data.getRoles();
+            case JwtService.TOKEN_ENV:
+                return (data, request) -> data.getEnvironments();
+            default:
+                return (data, request) -> strings(data.getClaim(name));
+        }
+    }
+
+    private static Collection<String> single(String value) {
+        return value == null ? Collections.emptyList() : Collections.singletonList(value);
+    }
+
+    private static Collection<String> strings(Object value) {
+        if(value == null) return Collections.emptyList();
+        if(!(value instanceof Collection)) return Collections.singletonList(String.valueOf(value));
+
+        final Collection<?> values = (Collection<?>) value;
+        final List<String> strings = new ArrayList<>(values.size());
+
+        for(Object item : values) {
+            if(item != null) strings.add(String.valueOf(item));
+        }
+
+        return strings;
+    }
+
+    private static class Parser {
+        private final String source;
+        private final Descriptors.Descriptor requestDescriptor;
+        private int position;
+        private boolean usesRequest;
+
+        Parser(String source, Descriptors.Descriptor requestDescriptor) {
+            this.source = source;
+            this.requestDescriptor = requestDescriptor;
+        }
+
+        Condition parse() {
+            final Condition condition = or();
+
+            skipWhitespace();
+
+            if(position < source.length()) throw error("Unexpected '" + source.charAt(position) + "'");
+
+            return condition;
+        }
+
+        private Condition or() {
+            Condition condition = and();
+
+            while(accept("||")) {
+                final Condition left = condition;
+                final Condition right = and();
+                condition = (data, request) -> left.test(data, request) || right.test(data, request);
+            }
+
+            return condition;
+        }
+
+        private Condition and() {
+            Condition condition = not();
+
+            while(accept("&&")) {
+                final Condition left = condition;
+                final Condition right = not();
+                condition = (data, request) -> left.test(data, request) && right.test(data, request);
+            }
+
+            return condition;
+        }
+
+        private Condition not() {
+            if(accept("!")) {
+                final Condition negated = not();
+                return (data, request) -> !negated.test(data, request);
+            }
+
+            if(accept("(")) {
+                final Condition nested = or();
+                expect(")");
+                return nested;
+            }
+
+            return comparison();
+        }
+
+        private Condition comparison() {
+            final Operand left = operand();
+
+            if(accept("==")) {
+                final Operand right = operand();
+                return (data, request) -> equal(left.values(data, request), right.values(data, request));
+            }
+
+            if(accept("!=")) {
+                final Operand right = operand();
+                return (data, request) -> !equal(left.values(data, request), right.values(data, request));
+            }
+
+            if(acceptWord("in")) {
+                final Operand right = operand();
+                return (data, request) -> containsAll(right.values(data, request), left.values(data, request));
+            }
+
+            throw error("Expected '==', '!=' or 'in'");
+        }
+
+        private static boolean equal(Collection<String> left, Collection<String> right) {
+            return containsAll(left, right) && containsAll(right, left);
+        }
+
+        private Operand operand() {
+            skipWhitespace();
+
+            if(accept("[")) {
+                final Set<String> values = new HashSet<>();
+
+                do {
+                    values.add(literal());
+                } while(accept(","));
+
+                expect("]");
+
+                final Set<String> constant = Collections.unmodifiableSet(values);
+                return (data, request) -> constant;
+            }
+
+            if(position < source.length() && !Character.isLetter(source.charAt(position))) {
+                final Collection<String> constant = Collections.singletonList(literal());
+                return (data, request) -> constant;
+            }
+
+            final String name = word();
+
+            if(name.equals("true") || name.equals("false")) {
+                final Collection<String> constant = Collections.singletonList(name);
+                return (data, request) -> constant;
+            }
+
+            if(name.startsWith(CLAIM_PREFIX) && name.length() > CLAIM_PREFIX.length()) {
+                return claim(name.substring(CLAIM_PREFIX.length()));
+            }
+
+            if(name.startsWith(REQUEST_PREFIX) && name.length() > REQUEST_PREFIX.length()) {
+                return requestField(name.substring(REQUEST_PREFIX.length()));
+            }
+
+            throw error("Unknown operand '" + name + "', expected claim.<name> or request.<field>");
+        }
+
+        private Operand requestField(String path) {
+            final OwnerFieldAccessor accessor = requestDescriptor == null ?
+                OwnerFieldAccessor.lazy(path) : OwnerFieldAccessor.of(path, requestDescriptor);
+
+            usesRequest = true;
+
+            return (data, request) -> accessor.getValues(request);
+        }
+
+        private String literal() {
+            skipWhitespace();
+
+            if(position >= source.length()) throw error("Missing literal");
+
+            final char quote = source.charAt(position);
+
+            if(quote == '\'' || quote == '"') {
+                final int end = source.indexOf(quote, position + 1);
+
+                if(end < 0) throw error("Unterminated string");
+
+                final String value = source.substring(position + 1, end);
+                position = end + 1;
+                return value;
+            }
+
+            final String value = word();
+
+            if(value.equals("true") || value.equals("false") || value.matches("-?\\d+(\\.\\d+)?")) return value;
+
+            throw error("Invalid literal '" + value + "'");
+        }
+
+        private String word() {
+            skipWhitespace();
+
+            final int start = position;
+
+            while(position < source.length() && isWordChar(source.charAt(position))) {
+                position++;
+            }
+
+            if(start == position) throw error("Expected operand");
+
+            return source.substring(start, position);
+        }
+
+        private static boolean isWordChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-';
+        }
+
+        private boolean accept(String token) {
+            skipWhitespace();
+
+            if(!source.startsWith(token, position)) return false;
+
+            position += token.length();
+            return true;
+        }
+
+        private boolean acceptWord(String word) {
+            skipWhitespace();
+
+            final int end = position + word.length();
+
+            if(!source.startsWith(word, position) || (end < source.length() && isWordChar(source.charAt(end)))) {
+                return false;
+            }
+
+            position = end;
+            return true;
+        }
+
+        private void expect(String token) {
+            if(!accept(token)) throw error("Expected '" + token + "'");
+        }
+
+        private void skipWhitespace() {
+            while(position < source.length() && Character.isWhitespace(source.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " of '" + source + "'.");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.majusko.grpc.jwt.data;
+
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
+import io.jsonwebtoken.Claims;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which claims of verified tokens are kept in {@link JwtContextData} for the lifetime of the call.
+ */
+public class ClaimProjection {
+
+    public static final ClaimProjection FULL = new ClaimProjection(false, Collections.emptySet());
+
+    private final boolean enabled;
+    private final Set<String> retainedClaims;
+
+    /**
+     * @param enabled Keep only the compact fields and the retained claims instead of the whole claims map.
+     * @param retainedClaims Names of additional claims kept when the projection is enabled.
+     */
+    public ClaimProjection(boolean enabled, Set<String> retainedClaims) {
+        this.enabled = enabled;
+        this.retainedClaims = Collections.unmodifiableSet(new HashSet<>(retainedClaims));
+    }
+
+    public JwtContextData contextData(String jwt, RoleSet roles, Claims claims) {
+        return enabled ?
+            JwtContextData.projected(jwt, roles, claims, retainedClaims) :
+            new JwtContextData(jwt, claims.getSubject(), roles, claims);
+    }
+
+    /**
+     * @param token Verified token.
+     * @param roles Interned roles of the token.
+     * @return Context data of the token. Tokens verified without claims decode them only when they are read.
+     * Compact binary tokens keep their few decoded claims, they cannot be decoded again as a JWT.
+     */
+    public JwtContextData contextData(VerifiedToken token, RoleSet roles) {
+        if(token.getClaims() == null) return JwtContextData.verified(token, roles);
+        if(isCompact(token.getToken())) {
+            return new JwtContextData(token.getToken(), token.getSubject(), roles, token.getClaims());
+        }
+
+        return contextData(token.getToken(), roles, token.getClaims());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Set<String> getRetainedClaims() {
+        return retainedClaims;
+    }
+
+    private static boolean isCompact(String token) {
+        return token.indexOf('.') < 0;
+    }
+}
@@ -3,13 +3,21 @@ package io.github.majusko.grpc.jwt.data;
 import io.grpc.Metadata;
 
 import static io.grpc.Metadata.ASCII_STRING_MARSHALLER;
+import static io.grpc.Metadata.BINARY_BYTE_MARSHALLER;
 
 public class GrpcHeader {
     private GrpcHeader() {
     }
 
     private static final String AUTHORIZATION_KEY = "Authorization";
+    private static final String AUTHORIZATION_BIN_KEY = "authorization-bin";
 
     public static final Metadata.Key<String> AUTHORIZATION =
         Metadata.Key.of(AUTHORIZATION_KEY, ASCII_STRING_MARSHALLER);
+
+    /**
+     * Compact binary token issued by {@code JwtService.generateCompact}.
+     */
+    public static final Metadata.Key<byte[]> AUTHORIZATION_BIN =
+        Metadata.Key.of(AUTHORIZATION_BIN_KEY, BINARY_BYTE_MARSHALLER);
 }
@@ -1,6 +1,7 @@
 package io.github.majusko.grpc.jwt.data;
 
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public class GrpcJwtContext {
 
@@ -8,10 +9,23 @@ public class GrpcJwtContext {
     }
 
     private static final String CONTEXT_DATA = "context_data";
+    private static final String LAZY_CONTEXT_DATA = "lazy_context_data";
 
     public static final io.grpc.Context.Key<JwtContextData> CONTEXT_DATA_KEY = io.grpc.Context.key(CONTEXT_DATA);
 
+    /**
+     * Token of unprotected method which is verified on first {@link #get()}.
+     */
+    public static final io.grpc.Context.Key<Supplier<JwtContextData>> LAZY_CONTEXT_DATA_KEY =
+        io.grpc.Context.key(LAZY_CONTEXT_DATA);
+
     public static Optional<JwtContextData> get() {
-        return Optional.ofNullable(CONTEXT_DATA_KEY.get());
+        final JwtContextData contextData = CONTEXT_DATA_KEY.get();
+
+        if(contextData != null) return Optional.of(contextData);
+
+        final Supplier<JwtContextData> lazyContextData = LAZY_CONTEXT_DATA_KEY.get();
+
+        return lazyContextData == null ? Optional.empty() : Optional.ofNullable(lazyContextData.get());
     }
 }
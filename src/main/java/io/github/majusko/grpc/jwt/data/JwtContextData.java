@@ -1,16 +1,94 @@
 package io.github.majusko.grpc.jwt.data;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
 import io.jsonwebtoken.*;
-import lombok.AllArgsConstructor;
 
-import java.util.Set;
+import java.io.IOException;
+import java.util.*;
 
-@AllArgsConstructor
 public class JwtContextData {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> CLAIMS_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
     private final String jwt;
     private final String userId;
-    private final Set<String> roles;
-    private final Claims jwtClaims;
+    private final String tokenId;
+    private final RoleSet roles;
+    private final Map<String, Object> retainedClaims;
+    private final long expiration;
+
+    private volatile List<String> environments;
+    private volatile Claims jwtClaims;
+
+    public JwtContextData(String jwt, String userId, Set<String> roles, Claims jwtClaims) {
+        this(jwt, userId, RoleSet.unresolved(roles), jwtClaims);
+    }
+
+    public JwtContextData(String jwt, String userId, RoleSet roles, Claims jwtClaims) {
+        this.jwt = jwt;
+        this.userId = userId;
+        this.tokenId = jwtClaims == null ? null : jwtClaims.getId();
+        this.roles = roles;
+        this.retainedClaims = Collections.emptyMap();
+        this.expiration = jwtClaims == null || jwtClaims.getExpiration() == null ?
+            0 : jwtClaims.getExpiration().getTime();
+        this.jwtClaims = jwtClaims;
+    }
+
+    private JwtContextData(String jwt, RoleSet roles, Claims jwtClaims, Set<String> retainedClaimNames) {
+        this.jwt = jwt;
+        this.userId = jwtClaims.getSubject();
+        this.tokenId = jwtClaims.getId();
+        this.roles = roles;
+        this.retainedClaims = retain(jwtClaims, retainedClaimNames);
+        this.expiration = jwtClaims.getExpiration() == null ? 0 : jwtClaims.getExpiration().getTime();
+        this.environments = readEnvironments(jwtClaims);
+    }
+
+    private JwtContextData(VerifiedToken token, RoleSet roles) {
+        this.jwt = token.getToken();
+        this.userId = token.getSubject();
+        this.tokenId = token.getTokenId();
+        this.roles = roles;
+        this.retainedClaims = Collections.emptyMap();
+        this.expiration = token.getExpiration();
+        this.environments = token.getEnvironments() == null ?
+            Collections.emptyList() : Collections.unmodifiableList(token.getEnvironments());
+    }
+
+    /**
+     * Create context data of a token verified without claims. The claims are decoded from the token when
+     * {@link #getJwtClaims()} or {@link #getClaim(String)} is called.
+     * @param token Verified token.
+     * @param roles Roles of the token.
+     * @return Context data without claims.
+     */
+    public static JwtContextData verified(VerifiedToken token, RoleSet roles) {
+        return new JwtContextData(token, roles);
+    }
+
+    /**
+     * Create context data which keeps only the subject, roles, environments, expiration and the listed claims.
+     * The other claims are decoded from the token again when {@link #getJwtClaims()} is called.
+     * @param jwt Verified JWT token.
+     * @param roles Roles of the token.
+     * @param jwtClaims Verified claims of the token. They are not referenced after the call.
+     * @param retainedClaimNames Names of claims to keep.
+     * @return Context data without reference to the claims.
+     */
+    public static JwtContextData projected(
+        String jwt,
+        RoleSet roles,
+        Claims jwtClaims,
+        Set<String> retainedClaimNames
+    ) {
+        return new JwtContextData(jwt, roles, jwtClaims, retainedClaimNames);
+    }
 
     public String getJwt() {
         return jwt;
@@ -20,11 +98,104 @@ public class JwtContextData {
         return userId;
     }
 
+    /**
+     * @return Value of the {@code jti} claim or null when the token does not have any.
+     */
+    public String getTokenId() {
+        return tokenId;
+    }
+
     public Set<String> getRoles() {
+        return roles.getNames();
+    }
+
+    public RoleSet getRoleSet() {
         return roles;
     }
 
+    /**
+     * @return Active profiles of the service which issued the token.
+     */
+    public List<String> getEnvironments() {
+        List<String> result = environments;
+
+        if(result == null) {
+            result = readEnvironments(getJwtClaims());
+            environments = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return Expiration of the token or null when the token does not expire.
+     */
+    public Date getExpiration() {
+        return expiration == 0 ? null : new Date(expiration);
+    }
+
+    /**
+     * Get a single claim without decoding the whole token when the claim is retained.
+     * @param name Name of the claim.
+     * @return Value of the claim or null.
+     */
+    public Object getClaim(String name) {
+        final Object retained = retainedClaims.get(name);
+
+        return retained != null ? retained : getJwtClaims().get(name);
+    }
+
     public Claims getJwtClaims() {
-        return jwtClaims;
+        Claims result = jwtClaims;
+
+        if(result == null) {
+            result = decodeClaims(jwt);
+            jwtClaims = result;
+        }
+
+        return result;
+    }
+
+    private static Map<String, Object> retain(Claims jwtClaims, Set<String> names) {
+        if(names.isEmpty()) return Collections.emptyMap();
+
+        final Map<String, Object> retained = new HashMap<>(names.size() * 2);
+
+        for(String name : names) {
+            final Object value = jwtClaims.get(name);
+
+            if(value != null) retained.put(name, value);
+        }
+
+        return retained.isEmpty() ? Collections.emptyMap() : retained;
+    }
+
+    private static List<String> readEnvironments(Claims jwtClaims) {
+        final List<?> values = jwtClaims.get(JwtService.TOKEN_ENV, List.class);
+
+        if(values == null || values.isEmpty()) return Collections.emptyList();
+
+        final String[] environments = new String[values.size()];
+
+        for(int i = 0; i < environments.length; i++) {
+            environments[i] = String.valueOf(values.get(i));
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(environments));
+    }
+
+    private static Claims decodeClaims(String jwt) {
+        final int payloadStart = jwt.indexOf('.') + 1;
+        final int payloadEnd = jwt.indexOf('.', payloadStart);
+
+        if(payloadStart == 0 || payloadEnd < 0) throw new MalformedJwtException("JWT token has no payload.");
+
+        try {
+            final byte[] payload = Base64.getUrlDecoder().decode(jwt.substring(payloadStart, payloadEnd));
+
+            return Jwts.claims(OBJECT_MAPPER.readValue(payload, CLAIMS_TYPE));
+        } catch(IOException | IllegalArgumentException e) {
+            throw new MalformedJwtException("Unable to decode JWT claims.", e);
+        }
     }
 }
@@ -0,0 +1,102 @@
+package io.github.majusko.grpc.jwt.data;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Authorization rules of a single gRPC method merged from its {@code @Allow} and {@code @Exposed} annotations.
+ */
+public class MethodPolicy {
+    private final String method;
+    private final boolean allowed;
+    private final OwnerFieldAccessor ownerAccessor;
+    private final AllowExpression expression;
+    private final RoleSet roles;
+    private final boolean exposed;
+    private final Set<String> exposedEnvironments;
+
+    public MethodPolicy(
+        String method,
+        boolean allowed,
+        OwnerFieldAccessor ownerAccessor,
+        RoleSet roles,
+        boolean exposed,
+        Set<String> exposedEnvironments
+    ) {
+        this(method, allowed, ownerAccessor, null, roles, exposed, exposedEnvironments);
+    }
+
+    public MethodPolicy(
+        String method,
+        boolean allowed,
+        OwnerFieldAccessor ownerAccessor,
+        AllowExpression expression,
+        RoleSet roles,
+        boolean exposed,
+        Set<String> exposedEnvironments
+    ) {
+        this.method = Objects.requireNonNull(method);
+        this.allowed = allowed;
+        this.ownerAccessor = ownerAccessor;
+        this.expression = expression;
+        this.roles = Objects.requireNonNull(roles);
+        this.exposed = exposed;
+        this.exposedEnvironments = Collections.unmodifiableSet(new HashSet<>(Objects.requireNonNull(exposedEnvironments)));
+    }
+
+    /**
+     * @return Full gRPC method name, e.g. {@code package.Service/Method}.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return True when the method is annotated with {@code @Allow}.
+     */
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    public String getOwnerField() {
+        return ownerAccessor == null ? "" : ownerAccessor.getPath();
+    }
+
+    /**
+     * @return Accessor of the owner field or null when {@code @Allow(ownerField)} is not specified.
+     */
+    public OwnerFieldAccessor getOwnerAccessor() {
+        return ownerAccessor;
+    }
+
+    /**
+     * @return Compiled {@code @Allow(expression)} or null when it is not specified.
+     */
+    public AllowExpression getExpression() {
+        return expression;
+    }
+
+    public Set<String> getRoles() {
+        return roles.getNames();
+    }
+
+    /**
+     * @return Roles of {@code @Allow} resolved to a bit mask, one of them must be present in JWT token.
+     */
+    public RoleSet getRoleSet() {
+        return roles;
+    }
+
+    /**
+     * @return True when the method is exposed to one of the profiles active in this application.
+     */
+    public boolean isExposed() {
+        return exposed;
+    }
+
+    public Set<String> getExposedEnvironments() {
+        return exposedEnvironments;
+    }
+}
@@ -0,0 +1,199 @@
+package io.github.majusko.grpc.jwt.data;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import io.github.majusko.grpc.jwt.exception.AuthException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads the owner field of {@code @Allow(ownerField)} from protobuf request messages. The path is resolved once
+ * against the message descriptor and supports nested ({@code order.customer.id}) and repeated fields.
+ */
+public class OwnerFieldAccessor {
+
+    private static final String PATH_DELIMITER = "\\.";
+
+    private final String path;
+
+    private volatile Resolved resolved;
+
+    private OwnerFieldAccessor(String path, Resolved resolved) {
+        this.path = Objects.requireNonNull(path);
+        this.resolved = resolved;
+    }
+
+    /**
+     * Create accessor resolved against the given request descriptor.
+     * @param path Owner field path, segments are proto or json field names delimited by dot.
+     * @param descriptor Descriptor of the request message.
+     * @return Resolved accessor.
+     * @throws IllegalArgumentException when the path does not exist in the message.
+     */
+    public static OwnerFieldAccessor of(String path, Descriptors.Descriptor descriptor) {
+        return new OwnerFieldAccessor(path, resolve(path, descriptor));
+    }
+
+    /**
+     * Create accessor resolved on the first request message. Used when the request type is unknown at startup.
+     * @param path Owner field path, segments are proto or json field names delimited by dot.
+     * @return Lazily resolved accessor.
+     */
+    public static OwnerFieldAccessor lazy(String path) {
+        return new OwnerFieldAccessor(path, null);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Check if the user owns the request. In case of repeated fields on the path, there must be at least one value
+     * and every value must equal the user id, so a request mixing ids of other users is not owned.
+     * @param request Request message.
+     * @param userId Id of the user from JWT token.
+     * @return True when every owner field value of the request equals the user id.
+     */
+    public boolean isOwnedBy(Object request, String userId) {
+        if(!(request instanceof Message)) throw new AuthException("Missing owner field.");
+
+        final Message message = (Message) request;
+
+        return countMatches(message, 0, resolvedFor(message.getDescriptorForType()).fields, userId) > 0;
+    }
+
+    /**
+     * Read every value of the field, repeated fields on the path contribute all their values.
+     * @param request Request message.
+     * @return Values of the field converted to strings.
+     */
+    public List<String> getValues(Object request) {
+        if(!(request instanceof Message)) throw new AuthException("Missing request field.");
+
+        final Message message = (Message) request;
+        final List<String> values = new ArrayList<>(1);
+
+        collect(message, 0, resolvedFor(message.getDescriptorForType()).fields, values);
+
+        return values;
+    }
+
+    private Resolved resolvedFor(Descriptors.Descriptor descriptor) {
+        final Resolved current = resolved;
+
+        if(current != null && current.descriptor == descriptor) return current;
+
+        try {
+            final Resolved fresh = resolve(path, descriptor);
+            this.resolved = fresh;
+            return fresh;
+        } catch(IllegalArgumentException e) {
+            throw new AuthException("Missing owner field.");
+        }
+    }
+
+    /**
+     * @return Number of values equal to the user id or -1 as soon as any value differs.
+     */
+    private static int countMatches(Object value, int depth, Descriptors.FieldDescriptor[] fields, String userId) {
+        if(depth == fields.length) {
+            final boolean matches = value instanceof String ?
+                userId.equals(value) : userId.equals(String.valueOf(value));
+
+            return matches ? 1 : -1;
+        }
+
+        final Message message = (Message) value;
+        final Descriptors.FieldDescriptor field = fields[depth];
+
+        if(field.isRepeated()) {
+            final int count = message.getRepeatedFieldCount(field);
+            int matched = 0;
+
+            for(int i = 0; i < count; i++) {
+                final int nested = countMatches(message.getRepeatedField(field, i), depth + 1, fields, userId);
+
+                if(nested < 0) return -1;
+
+                matched += nested;
+            }
+
+            return matched;
+        }
+
+        return countMatches(message.getField(field), depth + 1, fields, userId);
+    }
+
+    private static void collect(Object value, int depth, Descriptors.FieldDescriptor[] fields, List<String> values) {
+        if(depth == fields.length) {
+            values.add(value instanceof String ? (String) value : String.valueOf(value));
+            return;
+        }
+
+        final Message message = (Message) value;
+        final Descriptors.FieldDescriptor field = fields[depth];
+
+        if(field.isRepeated()) {
+            final int count = message.getRepeatedFieldCount(field);
+
+            for(int i = 0; i < count; i++) {
+                collect(message.getRepeatedField(field, i), depth + 1, fields, values);
+            }
+        } else {
+            collect(message.getField(field), depth + 1, fields, values);
+        }
+    }
+
+    private static Resolved resolve(String path, Descriptors.Descriptor descriptor) {
+        final String[] segments = path.split(PATH_DELIMITER);
+        final Descriptors.FieldDescriptor[] fields = new Descriptors.FieldDescriptor[segments.length];
+        Descriptors.Descriptor current = descriptor;
+
+        for(int i = 0; i < segments.length; i++) {
+            if(current == null) {
+                throw new IllegalArgumentException("Owner field '" + path + "' goes through non-message field.");
+            }
+
+            final Descriptors.FieldDescriptor field = findField(current, segments[i]);
+
+            if(field == null) {
+                throw new IllegalArgumentException(
+                    "Owner field '" + path + "' does not exist in message " + descriptor.getFullName() + "."
+                );
+            }
+
+            fields[i] = field;
+            current = field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE ?
+                field.getMessageType() : null;
+        }
+
+        if(current != null) {
+            throw new IllegalArgumentException("Owner field '" + path + "' must not be a message.");
+        }
+
+        return new Resolved(descriptor, fields);
+    }
+
+    private static Descriptors.FieldDescriptor findField(Descriptors.Descriptor descriptor, String name) {
+        final Descriptors.FieldDescriptor byName = descriptor.findFieldByName(name);
+
+        if(byName != null) return byName;
+
+        return descriptor.getFields().stream()
+            .filter(field -> field.getJsonName().equals(name))
+            .findFirst()
+            .orElse(null);
+    }
+
+    private static class Resolved {
+        private final Descriptors.Descriptor descriptor;
+        private final Descriptors.FieldDescriptor[] fields;
+
+        private Resolved(Descriptors.Descriptor descriptor, Descriptors.FieldDescriptor[] fields) {
+            this.descriptor = descriptor;
+            this.fields = fields;
+        }
+    }
+}
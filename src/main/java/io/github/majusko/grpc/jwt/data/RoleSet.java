@@ -0,0 +1,67 @@
+package io.github.majusko.grpc.jwt.data;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Immutable set of roles represented both by names and by a bit mask of role ids assigned at startup.
+ * Roles without id (not used by any {@code @Allow} annotation) are kept only by name.
+ */
+public class RoleSet {
+
+    private static final RoleSet EMPTY = new RoleSet(Collections.emptySet(), new long[0], -1);
+
+    private final Set<String> names;
+    private final long[] mask;
+    private final int generation;
+
+    public RoleSet(Set<String> names, long[] mask, int generation) {
+        this.names = Collections.unmodifiableSet(names);
+        this.mask = mask;
+        this.generation = generation;
+    }
+
+    public static RoleSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create role set which is not resolved against any role ids yet.
+     * @param names Role names.
+     * @return Role set with empty mask.
+     */
+    public static RoleSet unresolved(Set<String> names) {
+        return new RoleSet(names, new long[0], -1);
+    }
+
+    public Set<String> getNames() {
+        return names;
+    }
+
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    /**
+     * @return Version of role ids the mask was built with.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Check if at least one role is present in both sets.
+     * @param other Role set built with the same role ids.
+     * @return True when the sets share a role.
+     */
+    public boolean intersects(RoleSet other) {
+        final long[] otherMask = other.mask;
+        final int length = Math.min(mask.length, otherMask.length);
+
+        for(int i = 0; i < length; i++) {
+            if((mask[i] & otherMask[i]) != 0) return true;
+        }
+
+        return false;
+    }
+}
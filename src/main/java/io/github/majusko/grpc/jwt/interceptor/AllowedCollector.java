@@ -1,19 +1,25 @@
 package io.github.majusko.grpc.jwt.interceptor;
 
-import com.google.common.collect.Sets;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
 import io.github.majusko.grpc.jwt.annotation.Allow;
 import io.github.majusko.grpc.jwt.annotation.Exposed;
-import io.github.majusko.grpc.jwt.data.AllowedMethod;
+import io.github.majusko.grpc.jwt.data.AllowExpression;
+import io.github.majusko.grpc.jwt.data.MethodPolicy;
+import io.github.majusko.grpc.jwt.data.OwnerFieldAccessor;
+import io.grpc.BindableService;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
 import org.lognet.springboot.grpc.GRpcService;
 import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 
-import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Component
 public class AllowedCollector implements BeanPostProcessor {
@@ -22,13 +28,22 @@ public class AllowedCollector implements BeanPostProcessor {
     private static final String PACKAGE_CLASS_DELIMITER = ".";
     private static final String CLASS_METHOD_DELIMITER = "/";
     private static final String EMPTY_STRING = "";
+    private static final String WORD_DELIMITER = "_";
 
-    private Map<String, AllowedMethod> allowedMethods;
-    private Map<String, Set<String>> exposedMethods;
+    private final Environment environment;
+    private final boolean policyIndex;
+    private final RoleRegistry roleRegistry = new RoleRegistry();
+
+    private volatile Map<String, MethodPolicy> policies = Collections.emptyMap();
+
+    public AllowedCollector(Environment environment, GrpcJwtProperties properties) {
+        this.environment = environment;
+        this.policyIndex = properties.isPolicyIndex();
+    }
 
     @Override
     public Object postProcessBeforeInitialization(Object bean, String beanName) {
-        processGrpcServices(bean.getClass());
+        processGrpcServices(bean);
 
         return bean;
     }
@@ -38,53 +53,170 @@ public class AllowedCollector implements BeanPostProcessor {
         return bean;
     }
 
-    Optional<AllowedMethod> getAllowedAuth(String methodName) {
-        return Optional.ofNullable(allowedMethods.get(methodName));
+    /**
+     * Get the policy of the method collected from all registered gRPC services.
+     * @param fullMethodName Full gRPC method name, e.g. {@code package.Service/Method}.
+     * @return Policy of the method or null if the method is not annotated.
+     */
+    MethodPolicy getPolicy(String fullMethodName) {
+        return policies.get(fullMethodName);
     }
 
-    Optional<Set<String>> getExposedEnv(String methodName) {
-        return Optional.ofNullable(exposedMethods.get(methodName));
+    /**
+     * @return Full gRPC names of all methods with a policy collected so far.
+     */
+    Set<String> getMethods() {
+        return policies.keySet();
     }
 
-    private void processGrpcServices(Class<?> beanClass) {
-        if (beanClass.isAnnotationPresent(GRpcService.class)) {
-            this.allowedMethods = findAllowedMethods(beanClass);
-            this.exposedMethods = findExposedMethods(beanClass);
+    RoleRegistry getRoleRegistry() {
+        return roleRegistry;
+    }
+
+    private void processGrpcServices(Object bean) {
+        final Class<?> beanClass = ClassUtils.getUserClass(bean);
+
+        if(beanClass.isAnnotationPresent(GRpcService.class)) {
+            final Map<String, MethodDescriptor<?, ?>> methodDescriptors = findGrpcMethodDescriptors(bean);
+            final List<PolicyIndex.Entry> indexed = policyIndex ? PolicyIndex.read(beanClass) : null;
+            final Stream<PolicyIndex.Entry> entries = indexed != null ? indexed.stream() : scan(beanClass);
+            final Map<String, MethodPolicy> servicePolicies = entries
+                .map(entry -> buildPolicy(beanClass, entry, methodDescriptors))
+                .collect(Collectors.toMap(MethodPolicy::getMethod, policy -> policy, (first, second) -> second));
+
+            register(servicePolicies);
         }
     }
 
-    private Map<String, AllowedMethod> findAllowedMethods(Class<?> beanClass) {
+    /**
+     * Read the annotations reflectively when the class was not indexed at build time.
+     */
+    private static Stream<PolicyIndex.Entry> scan(Class<?> beanClass) {
         return Arrays.stream(beanClass.getMethods())
-            .filter(method -> method.isAnnotationPresent(Allow.class))
-            .map(method -> buildAllowed(beanClass, method))
-            .collect(Collectors.toMap(AllowedMethod::getMethod, allowedMethod -> allowedMethod));
+            .filter(method -> method.isAnnotationPresent(Allow.class) || method.isAnnotationPresent(Exposed.class))
+            .map(method -> {
+                final Allow allow = method.getAnnotation(Allow.class);
+                final Exposed exposed = method.getAnnotation(Exposed.class);
+
+                return new PolicyIndex.Entry(
+                    method.getName(),
+                    EMPTY_STRING,
+                    allow != null,
+                    allow == null ? Collections.emptyList() : Arrays.asList(allow.roles()),
+                    allow == null ? EMPTY_STRING : allow.ownerField(),
+                    exposed == null ? Collections.emptyList() : Arrays.asList(exposed.environments()),
+                    allow == null ? EMPTY_STRING : allow.expression()
+                );
+            });
     }
 
-    private Map<String, Set<String>> findExposedMethods(Class<?> beanClass) {
-        return Arrays.stream(beanClass.getMethods())
-            .filter(method -> method.isAnnotationPresent(Exposed.class))
-            .collect(Collectors.toMap(method -> getGrpcServiceDescriptor(beanClass, method), this::buildEnv));
+    private synchronized void register(Map<String, MethodPolicy> servicePolicies) {
+        final Map<String, MethodPolicy> merged = new HashMap<>(policies);
+
+        merged.putAll(servicePolicies);
+
+        this.policies = Collections.unmodifiableMap(merged);
     }
 
-    private Set<String> buildEnv(Method method) {
-        final Exposed annotation = method.getAnnotation(Exposed.class);
-        return Arrays.stream(annotation.environments()).collect(Collectors.toSet());
+    private MethodPolicy buildPolicy(
+        Class<?> beanClass,
+        PolicyIndex.Entry entry,
+        Map<String, MethodDescriptor<?, ?>> methodDescriptors
+    ) {
+        final MethodDescriptor<?, ?> methodDescriptor = methodDescriptors.get(normalize(entry.getMethodName()));
+        final String grpcMethodName = methodDescriptor != null ? methodDescriptor.getFullMethodName() :
+            entry.getGrpcMethodName().isEmpty() ?
+                getGrpcServiceDescriptor(beanClass, entry.getMethodName()) : entry.getGrpcMethodName();
+        final List<String> roles = entry.getRoles();
+        final Set<String> environments = new HashSet<>(entry.getEnvironments());
+        roleRegistry.register(roles);
+
+        final boolean exposedInActiveProfile = Arrays.stream(environment.getActiveProfiles())
+            .anyMatch(environments::contains);
+
+        final Descriptors.Descriptor requestDescriptor = requestDescriptor(methodDescriptor);
+
+        return new MethodPolicy(
+            grpcMethodName,
+            entry.isAllowed(),
+            entry.isAllowed() ? buildOwnerAccessor(entry.getOwnerField(), grpcMethodName, requestDescriptor) : null,
+            entry.isAllowed() ? buildExpression(entry.getExpression(), grpcMethodName, requestDescriptor) : null,
+            roleRegistry.intern(roles),
+            exposedInActiveProfile,
+            environments
+        );
     }
 
-    private AllowedMethod buildAllowed(Class<?> gRpcServiceClass, Method method) {
-        final Allow annotation = method.getAnnotation(Allow.class);
-        final Set<String> roles = Sets.newHashSet(Arrays.asList(annotation.roles()));
+    private OwnerFieldAccessor buildOwnerAccessor(
+        String ownerField,
+        String grpcMethodName,
+        Descriptors.Descriptor requestDescriptor
+    ) {
+        if(ownerField.isEmpty()) return null;
+        if(requestDescriptor == null) return OwnerFieldAccessor.lazy(ownerField);
+
+        try {
+            return OwnerFieldAccessor.of(ownerField, requestDescriptor);
+        } catch(IllegalArgumentException e) {
+            throw invalidAllow(grpcMethodName, e);
+        }
+    }
 
-        return new AllowedMethod(getGrpcServiceDescriptor(gRpcServiceClass, method), annotation.ownerField(), roles);
+    private AllowExpression buildExpression(
+        String expression,
+        String grpcMethodName,
+        Descriptors.Descriptor requestDescriptor
+    ) {
+        if(expression.isEmpty()) return null;
+
+        try {
+            return AllowExpression.compile(expression, requestDescriptor);
+        } catch(IllegalArgumentException e) {
+            throw invalidAllow(grpcMethodName, e);
+        }
     }
 
-    private String getGrpcServiceDescriptor(Class<?> gRpcServiceClass, Method method) {
+    private static IllegalStateException invalidAllow(String grpcMethodName, IllegalArgumentException e) {
+        return new IllegalStateException("Invalid @Allow of gRPC method " + grpcMethodName + ": " + e.getMessage(), e);
+    }
+
+    /**
+     * @return Descriptor of the request message or null when the method does not use the protobuf marshaller.
+     */
+    private static Descriptors.Descriptor requestDescriptor(MethodDescriptor<?, ?> methodDescriptor) {
+        final MethodDescriptor.Marshaller<?> marshaller =
+            methodDescriptor == null ? null : methodDescriptor.getRequestMarshaller();
+
+        if(!(marshaller instanceof MethodDescriptor.PrototypeMarshaller)) return null;
+
+        final Object prototype = ((MethodDescriptor.PrototypeMarshaller<?>) marshaller).getMessagePrototype();
+
+        return prototype instanceof Message ? ((Message) prototype).getDescriptorForType() : null;
+    }
+
+    private Map<String, MethodDescriptor<?, ?>> findGrpcMethodDescriptors(Object bean) {
+        if(!(bean instanceof BindableService)) return Collections.emptyMap();
+
+        return ((BindableService) bean).bindService().getMethods().stream()
+            .map(ServerMethodDefinition::getMethodDescriptor)
+            .collect(Collectors.toMap(
+                descriptor -> normalize(MethodDescriptor.extractBareMethodName(descriptor.getFullMethodName())),
+                descriptor -> descriptor,
+                (first, second) -> first
+            ));
+    }
+
+    private String getGrpcServiceDescriptor(Class<?> gRpcServiceClass, String methodName) {
         final Class<?> superClass = gRpcServiceClass.getSuperclass();
 
-        return (superClass.getPackage().getName() +
+        return superClass.getPackage().getName() +
             PACKAGE_CLASS_DELIMITER +
             superClass.getSimpleName().replace(GRPC_BASE_CLASS_NAME_EXT, EMPTY_STRING) +
             CLASS_METHOD_DELIMITER +
-            method.getName()).toLowerCase();
+            Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1);
+    }
+
+    private static String normalize(String methodName) {
+        return methodName.replace(WORD_DELIMITER, EMPTY_STRING).toLowerCase(Locale.ROOT);
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,9 @@
 package io.github.majusko.grpc.jwt.interceptor;
 
 import io.github.majusko.grpc.jwt.data.GrpcHeader;
+import io.github.majusko.grpc.jwt.metrics.AuthMetrics;
+import io.github.majusko.grpc.jwt.metrics.AuthOutcome;
+import io.github.majusko.grpc.jwt.metrics.MethodMetrics;
 import io.github.majusko.grpc.jwt.service.JwtService;
 import io.grpc.*;
 import org.slf4j.Logger;
@@ -11,9 +14,15 @@ public class AuthClientInterceptor implements ClientInterceptor {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private final JwtService jwtService;
+    private final AuthMetrics authMetrics;
 
     public AuthClientInterceptor(JwtService jwtService) {
+        this(jwtService, AuthMetrics.NOOP);
+    }
+
+    public AuthClientInterceptor(JwtService jwtService, AuthMetrics authMetrics) {
         this.jwtService = jwtService;
+        this.authMetrics = authMetrics;
     }
 
     @Override
@@ -26,18 +35,22 @@ public class AuthClientInterceptor implements ClientInterceptor {
 
             @Override
             public void start(Listener<RespT> responseListener, final Metadata metadata) {
-                final Listener<RespT> tracingResponseListener = responseListener(responseListener);
+                final Listener<RespT> tracingResponseListener =
+                    responseListener(responseListener, authMetrics.forMethod(method.getFullMethodName()));
 
                 super.start(tracingResponseListener, injectInternalToken(metadata));
             }
         };
     }
 
-    private <RespT> ForwardingClientCallListener<RespT> responseListener(ClientCall.Listener<RespT> responseListener) {
+    private <RespT> ForwardingClientCallListener<RespT> responseListener(
+        ClientCall.Listener<RespT> responseListener,
+        MethodMetrics methodMetrics
+    ) {
         return new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
             @Override
             public void onClose(Status status, Metadata metadata) {
-                handleAuthStatusCodes(status);
+                handleAuthStatusCodes(status, methodMetrics);
 
                 super.onClose(status, metadata);
             }
@@ -47,21 +60,33 @@ public class AuthClientInterceptor implements ClientInterceptor {
     private Metadata injectInternalToken(Metadata metadata) {
         final String authHeader = metadata.get(GrpcHeader.AUTHORIZATION);
 
-        if(authHeader == null || authHeader.isEmpty()) {
+        if((authHeader == null || authHeader.isEmpty()) && !metadata.containsKey(GrpcHeader.AUTHORIZATION_BIN)) {
+            final byte[] compactToken = jwtService.getInternalCompact();
+
+            if(compactToken != null) {
+                metadata.put(GrpcHeader.AUTHORIZATION_BIN, compactToken);
+                return metadata;
+            }
+
             final String internalToken = jwtService.getInternal();
-            metadata.put(GrpcHeader.AUTHORIZATION, internalToken);
+
+            if(internalToken != null) metadata.put(GrpcHeader.AUTHORIZATION, internalToken);
         }
 
         return metadata;
     }
 
-    private void handleAuthStatusCodes(Status status) {
+    private void handleAuthStatusCodes(Status status, MethodMetrics methodMetrics) {
         if(status.getCode().equals(Status.UNAUTHENTICATED.getCode())) {
+            methodMetrics.recordClientOutcome(AuthOutcome.UNAUTHENTICATED);
             logger.error("Grpc call is unauthenticated.", status.getCause());
         }
 
         if(status.getCode().equals(Status.PERMISSION_DENIED.getCode())) {
+            methodMetrics.recordClientOutcome(AuthOutcome.PERMISSION_DENIED);
             logger.error("Grpc call is unauthorized.", status.getCause());
         }
+
+        if(status.isOk()) methodMetrics.recordClientOutcome(AuthOutcome.SUCCESS);
     }
 }
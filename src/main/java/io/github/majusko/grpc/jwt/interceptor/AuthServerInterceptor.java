@@ -1,60 +1,401 @@
 package io.github.majusko.grpc.jwt.interceptor;
 
-import com.google.common.collect.Sets;
-import io.github.majusko.grpc.jwt.data.AllowedMethod;
+import com.google.common.base.Suppliers;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.audit.AuditLog;
+import io.github.majusko.grpc.jwt.data.AllowExpression;
+import io.github.majusko.grpc.jwt.data.ClaimProjection;
 import io.github.majusko.grpc.jwt.data.JwtContextData;
 import io.github.majusko.grpc.jwt.data.GrpcHeader;
 import io.github.majusko.grpc.jwt.data.GrpcJwtContext;
+import io.github.majusko.grpc.jwt.data.MethodPolicy;
+import io.github.majusko.grpc.jwt.data.OwnerFieldAccessor;
+import io.github.majusko.grpc.jwt.data.RoleSet;
 import io.github.majusko.grpc.jwt.exception.AuthException;
 import io.github.majusko.grpc.jwt.exception.UnauthenticatedException;
+import io.github.majusko.grpc.jwt.metrics.AuthMetrics;
+import io.github.majusko.grpc.jwt.metrics.AuthOutcome;
+import io.github.majusko.grpc.jwt.metrics.MethodMetrics;
 import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.TokenResolver;
+import io.github.majusko.grpc.jwt.service.VerifiedTokenCache;
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
 import io.grpc.*;
-import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
-import io.jsonwebtoken.Jwts;
 import org.lognet.springboot.grpc.GRpcGlobalInterceptor;
-import org.springframework.core.env.Environment;
-
-import java.lang.reflect.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @GRpcGlobalInterceptor
-public class AuthServerInterceptor implements ServerInterceptor {
+public class AuthServerInterceptor implements ServerInterceptor, SmartInitializingSingleton {
+
+    /**
+     * Name of the {@link Executor} bean running the calls authorized in the async mode.
+     */
+    public static final String CALL_EXECUTOR = "grpcJwtCallExecutor";
 
-    private static final String GRPC_FIELD_MODIFIER = "_";
     private static final String BEARER = "Bearer";
+    private static final String TOKEN_REVOKED = "JWT token is revoked.";
+    private static final String VERIFIER_THREAD_NAME = "grpc-jwt-verifier-";
+    private static final String CALL_THREAD_NAME = "grpc-jwt-call-";
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
     private static final ServerCall.Listener NOOP_LISTENER = new ServerCall.Listener() {
     };
 
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
     private final AllowedCollector allowedCollector;
     private final JwtService jwtService;
-    private final Environment environment;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final RoleRegistry roleRegistry;
+    private final AuthMetrics authMetrics;
+    private final ClaimProjection claimProjection;
+    private final boolean lazyContext;
+    private final ExecutorService verificationExecutor;
+    private final Executor callExecutor;
+    private final ExecutorService ownedCallExecutor;
+    private final List<TokenResolver> tokenResolvers;
+    private final AuditLog auditLog;
+    private final Function<String, JwtContextData> tokenVerifier = this::verifyToken;
+
+    public AuthServerInterceptor(
+        AllowedCollector allowedCollector,
+        JwtService jwtService,
+        VerifiedTokenCache verifiedTokenCache,
+        AuthMetrics authMetrics,
+        GrpcJwtProperties properties
+    ) {
+        this(allowedCollector, jwtService, verifiedTokenCache, authMetrics, properties, Collections.emptyList(),
+            AuditLog.DISABLED);
+    }
+
+    @Autowired
+    public AuthServerInterceptor(
+        AllowedCollector allowedCollector,
+        JwtService jwtService,
+        VerifiedTokenCache verifiedTokenCache,
+        AuthMetrics authMetrics,
+        GrpcJwtProperties properties,
+        ObjectProvider<TokenResolver> tokenResolvers,
+        AuditLog auditLog,
+        @Qualifier(CALL_EXECUTOR) ObjectProvider<Executor> callExecutor
+    ) {
+        this(allowedCollector, jwtService, verifiedTokenCache, authMetrics, properties,
+            tokenResolvers.orderedStream().collect(Collectors.toList()), auditLog, callExecutor.getIfAvailable());
+    }
+
+    /**
+     * @param tokenResolvers Resolvers asked for tokens of the {@code Authorization} header before they are
+     *                       verified as JWTs.
+     * @param auditLog Log of the auth decisions.
+     */
+    public AuthServerInterceptor(
+        AllowedCollector allowedCollector,
+        JwtService jwtService,
+        VerifiedTokenCache verifiedTokenCache,
+        AuthMetrics authMetrics,
+        GrpcJwtProperties properties,
+        List<TokenResolver> tokenResolvers,
+        AuditLog auditLog
+    ) {
+        this(allowedCollector, jwtService, verifiedTokenCache, authMetrics, properties, tokenResolvers, auditLog,
+            null);
+    }
 
+    /**
+     * @param tokenResolvers Resolvers asked for tokens of the {@code Authorization} header before they are
+     *                       verified as JWTs.
+     * @param auditLog Log of the auth decisions.
+     * @param callExecutor Executor running the calls authorized in the async mode. A cached pool of daemon
+     *                     threads owned by the interceptor is used when null.
+     */
     public AuthServerInterceptor(
         AllowedCollector allowedCollector,
         JwtService jwtService,
-        Environment environment
+        VerifiedTokenCache verifiedTokenCache,
+        AuthMetrics authMetrics,
+        GrpcJwtProperties properties,
+        List<TokenResolver> tokenResolvers,
+        AuditLog auditLog,
+        Executor callExecutor
     ) {
         this.allowedCollector = allowedCollector;
         this.jwtService = jwtService;
-        this.environment = environment;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.roleRegistry = allowedCollector.getRoleRegistry();
+        this.authMetrics = authMetrics;
+        this.claimProjection = properties.getProjection().isEnabled() ?
+            new ClaimProjection(true, properties.getProjection().getClaims()) : ClaimProjection.FULL;
+        this.lazyContext = properties.isLazyContext();
+        this.verificationExecutor = properties.getAsync().isEnabled() ? newVerificationExecutor(properties) : null;
+        this.ownedCallExecutor = verificationExecutor != null && callExecutor == null ? newCallExecutor() : null;
+        this.callExecutor = ownedCallExecutor != null ? ownedCallExecutor : callExecutor;
+        this.tokenResolvers = new ArrayList<>(tokenResolvers);
+        this.auditLog = auditLog;
+    }
+
+    /**
+     * Create the meters of all protected methods once the gRPC services are collected, so they are never tagged
+     * as other methods.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        authMetrics.registerMethods(allowedCollector.getMethods());
+    }
+
+    /**
+     * Stop the threads verifying tokens and running calls in the async mode. A call executor passed in by the
+     * application is left running.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if(verificationExecutor != null) verificationExecutor.shutdownNow();
+        if(ownedCallExecutor != null) ownedCallExecutor.shutdown();
     }
 
     @Override
     public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
         ServerCall<ReqT, RespT> call, Metadata metadata, ServerCallHandler<ReqT, RespT> next
+    ) {
+        final String fullMethodName = call.getMethodDescriptor().getFullMethodName();
+        final MethodPolicy policy = allowedCollector.getPolicy(fullMethodName);
+
+        if(policy == null) return passThrough(call, metadata, next);
+
+        final long start = System.nanoTime();
+        final MethodMetrics methodMetrics = authMetrics.forMethod(fullMethodName);
+        final String authHeaderData = authorization(metadata);
+
+        if(verificationExecutor != null && authHeaderData != null) {
+            final JwtContextData cached =
+                verifiedTokenCache.getIfPresent(token(authHeaderData), jwtService.getKeyTable());
+
+            if(cached == null) return verifyAsync(call, metadata, next, policy, methodMetrics, authHeaderData, start);
+
+            return authorize(call, metadata, next, Context.current(), cached, policy, methodMetrics, start);
+        }
+
+        return verifyAndAuthorize(
+            call, metadata, next, Context.current(), policy, methodMetrics, authHeaderData, start);
+    }
+
+    /**
+     * Verify the token on the verification executor. Events of the call are buffered by {@link DeferredListener}
+     * until the token is verified. The call is then authorized and its listener created and replayed on the call
+     * executor, serialized per call, so the application never runs on the verifiers.
+     */
+    private <ReqT, RespT> ServerCall.Listener<ReqT> verifyAsync(
+        ServerCall<ReqT, RespT> call,
+        Metadata metadata,
+        ServerCallHandler<ReqT, RespT> next,
+        MethodPolicy policy,
+        MethodMetrics methodMetrics,
+        String authHeaderData,
+        long start
+    ) {
+        final DeferredListener<ReqT> listener = new DeferredListener<>(call);
+        final Executor serializingExecutor = new SerializingExecutor(callExecutor);
+        final Context parent = Context.current();
+
+        try {
+            verificationExecutor.execute(() -> {
+                final Supplier<ServerCall.Listener<ReqT>> listenerFactory =
+                    verify(call, metadata, next, parent, policy, methodMetrics, authHeaderData, start);
+
+                try {
+                    serializingExecutor.execute(() -> listener.start(listenerFactory));
+                } catch(RejectedExecutionException e) {
+                    call.close(Status.UNAVAILABLE.withDescription("Call executor rejected the call."), new Metadata());
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            call.close(Status.RESOURCE_EXHAUSTED
+                .withDescription("Too many tokens waiting for verification."), metadata);
+            //noinspection unchecked
+            return NOOP_LISTENER;
+        }
+
+        return listener;
+    }
+
+    /**
+     * Verify the token on the calling thread.
+     * @return Factory authorizing the call and creating its listener, or closing the call when the token is not
+     * valid.
+     */
+    private <ReqT, RespT> Supplier<ServerCall.Listener<ReqT>> verify(
+        ServerCall<ReqT, RespT> call,
+        Metadata metadata,
+        ServerCallHandler<ReqT, RespT> next,
+        Context parent,
+        MethodPolicy policy,
+        MethodMetrics methodMetrics,
+        String authHeaderData,
+        long start
     ) {
         try {
-            final JwtContextData contextData = parseAuthContextData(metadata);
-            final Context context = Context.current().withValue(GrpcJwtContext.CONTEXT_DATA_KEY, contextData);
+            final JwtContextData contextData = parseAuthContextData(authHeaderData, metadata, methodMetrics);
+
+            return () -> authorize(call, metadata, next, parent, contextData, policy, methodMetrics, start);
+        } catch(UnauthenticatedException e) {
+            return () -> unauthenticated(call, metadata, methodMetrics, e, start);
+        } catch(RuntimeException e) {
+            return () -> {
+                throw e;
+            };
+        }
+    }
+
+    private <ReqT, RespT> ServerCall.Listener<ReqT> verifyAndAuthorize(
+        ServerCall<ReqT, RespT> call,
+        Metadata metadata,
+        ServerCallHandler<ReqT, RespT> next,
+        Context parent,
+        MethodPolicy policy,
+        MethodMetrics methodMetrics,
+        String authHeaderData,
+        long start
+    ) {
+        final JwtContextData contextData;
 
-            return buildListener(call, metadata, next, context, contextData);
+        try {
+            contextData = parseAuthContextData(authHeaderData, metadata, methodMetrics);
         } catch(UnauthenticatedException e) {
-            call.close(Status.UNAUTHENTICATED.withDescription(e.getMessage()).withCause(e.getCause()), metadata);
+            return unauthenticated(call, metadata, methodMetrics, e, start);
+        }
+
+        return authorize(call, metadata, next, parent, contextData, policy, methodMetrics, start);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <ReqT> ServerCall.Listener<ReqT> unauthenticated(
+        ServerCall<ReqT, ?> call,
+        Metadata metadata,
+        MethodMetrics methodMetrics,
+        UnauthenticatedException e,
+        long start
+    ) {
+        recordOutcome(call, methodMetrics, null, AuthOutcome.UNAUTHENTICATED, e.getMessage(), start);
+        call.close(Status.UNAUTHENTICATED.withDescription(e.getMessage()).withCause(e.getCause()), metadata);
+        return NOOP_LISTENER;
+    }
+
+    private <ReqT, RespT> ServerCall.Listener<ReqT> authorize(
+        ServerCall<ReqT, RespT> call,
+        Metadata metadata,
+        ServerCallHandler<ReqT, RespT> next,
+        Context parent,
+        JwtContextData contextData,
+        MethodPolicy policy,
+        MethodMetrics methodMetrics,
+        long start
+    ) {
+        if(contextData != null && isRevoked(contextData)) {
+            recordOutcome(call, methodMetrics, contextData, AuthOutcome.UNAUTHENTICATED, TOKEN_REVOKED, start);
+            call.close(Status.UNAUTHENTICATED.withDescription(TOKEN_REVOKED), metadata);
             //noinspection unchecked
             return NOOP_LISTENER;
         }
+
+        final Context context = parent.withValue(GrpcJwtContext.CONTEXT_DATA_KEY, contextData);
+        final long evaluationStart = System.nanoTime();
+        final AuthOutcome outcome;
+
+        try {
+            outcome = authorizeHeaders(contextData, policy);
+        } catch(AuthException e) {
+            methodMetrics.recordEvaluation(System.nanoTime() - evaluationStart);
+            return deny(call, metadata, contextData, e, methodMetrics, start);
+        }
+
+        if(outcome == null) {
+            return buildListener(call, metadata, next, context, contextData, policy, methodMetrics, start);
+        }
+
+        methodMetrics.recordEvaluation(System.nanoTime() - evaluationStart);
+        recordOutcome(call, methodMetrics, contextData, outcome, null, start);
+
+        return Contexts.interceptCall(context, call, metadata, next);
+    }
+
+    /**
+     * Start the call of method without {@code @Allow} and {@code @Exposed}. The token is not touched unless
+     * the lazy context is enabled, then it is verified on the first read of {@link GrpcJwtContext}.
+     */
+    private <ReqT, RespT> ServerCall.Listener<ReqT> passThrough(
+        ServerCall<ReqT, RespT> call,
+        Metadata metadata,
+        ServerCallHandler<ReqT, RespT> next
+    ) {
+        if(!lazyContext) return next.startCall(call, metadata);
+
+        final String authHeaderData = authorization(metadata);
+
+        if(authHeaderData == null) return next.startCall(call, metadata);
+
+        final Supplier<JwtContextData> lazyContextData =
+            Suppliers.memoize(() -> verifyLazily(authHeaderData, metadata))::get;
+        final Context context = Context.current().withValue(GrpcJwtContext.LAZY_CONTEXT_DATA_KEY, lazyContextData);
+
+        return Contexts.interceptCall(context, call, metadata, next);
+    }
+
+    private JwtContextData verifyLazily(String authHeaderData, Metadata metadata) {
+        try {
+            final JwtContextData contextData = resolve(token(authHeaderData), metadata);
+
+            return isRevoked(contextData) ? null : contextData;
+        } catch(JwtException | IllegalArgumentException | UnauthenticatedException e) {
+            logger.debug("Token of unprotected gRPC call is not valid.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Checked on every call because the verified token cache keeps tokens revoked after they were cached.
+     */
+    private boolean isRevoked(JwtContextData contextData) {
+        return jwtService.getRevocationList().isRevoked(contextData.getTokenId(), contextData.getUserId());
+    }
+
+    /**
+     * Evaluate the parts of the policy which do not need the request message.
+     * @return Outcome of the call or null when the owner field or expression of the first message decides.
+     */
+    private AuthOutcome authorizeHeaders(JwtContextData contextData, MethodPolicy policy) {
+        if(validateExposedAnnotation(contextData, policy)) return AuthOutcome.EXPOSED;
+        if(!policy.isAllowed()) return AuthOutcome.SUCCESS;
+        if(contextData == null) throw new AuthException("Missing JWT data.");
+
+        final AllowExpression expression = policy.getExpression();
+
+        if(policy.getOwnerAccessor() != null || (expression != null && expression.usesRequest())) return null;
+
+        validateExpression(expression, contextData, null);
+
+        if(expression == null || !policy.getRoleSet().isEmpty()) {
+            validateRoles(policy.getRoleSet(), contextData.getRoleSet());
+        }
+
+        return AuthOutcome.SUCCESS;
     }
 
     private <ReqT, RespT> ForwardingServerCallListener<ReqT> buildListener(
@@ -62,7 +403,10 @@ public class AuthServerInterceptor implements ServerInterceptor {
         Metadata metadata,
         ServerCallHandler<ReqT, RespT> next,
         Context context,
-        JwtContextData contextData
+        JwtContextData contextData,
+        MethodPolicy policy,
+        MethodMetrics methodMetrics,
+        long start
     ) {
         final ServerCall.Listener<ReqT> customDelegate = Contexts.interceptCall(context, call, metadata, next);
 
@@ -78,108 +422,186 @@ public class AuthServerInterceptor implements ServerInterceptor {
 
             @Override
             public void onMessage(ReqT request) {
-                try {
-                    if(delegate == NOOP_LISTENER) {
-                        final String methodName = call.getMethodDescriptor().getFullMethodName().toLowerCase();
-
-                        validateAnnotatedMethods(request, contextData, methodName);
+                if(delegate == NOOP_LISTENER) {
+                    final long evaluationStart = System.nanoTime();
 
+                    try {
+                        authorizeOwner(request, contextData, policy);
+                        recordOutcome(call, methodMetrics, contextData, AuthOutcome.SUCCESS, null, start);
                         delegate = customDelegate;
+                    } catch(AuthException e) {
+                        deny(call, metadata, contextData, e, methodMetrics, start);
+                    } finally {
+                        methodMetrics.recordEvaluation(System.nanoTime() - evaluationStart);
                     }
-                } catch(AuthException e) {
-                    call.close(Status.PERMISSION_DENIED
-                        .withDescription(e.getMessage())
-                        .withCause(e.getCause()), metadata);
                 }
                 super.onMessage(request);
             }
         };
     }
 
-    private <ReqT> void validateAnnotatedMethods(ReqT request, JwtContextData contextData, String methodName) {
-        if(!validateExposedAnnotation(contextData, methodName)) {
-            validateAllowedAnnotation(request, contextData, methodName);
-        }
+    @SuppressWarnings("unchecked")
+    private <ReqT> ServerCall.Listener<ReqT> deny(
+        ServerCall<ReqT, ?> call,
+        Metadata metadata,
+        JwtContextData contextData,
+        AuthException e,
+        MethodMetrics methodMetrics,
+        long start
+    ) {
+        recordOutcome(call, methodMetrics, contextData, AuthOutcome.PERMISSION_DENIED, e.getMessage(), start);
+        call.close(Status.PERMISSION_DENIED.withDescription(e.getMessage()).withCause(e.getCause()), metadata);
+
+        return NOOP_LISTENER;
     }
 
-    @SuppressWarnings("unchecked")
-    private boolean validateExposedAnnotation(JwtContextData contextData, String methodName) {
-        final Set<String> exposedToEnvironments = allowedCollector.getExposedEnv(methodName).orElse(Sets.newHashSet());
-        final boolean methodIsExposed = Arrays.stream(environment.getActiveProfiles())
-            .anyMatch(exposedToEnvironments::contains);
+    /**
+     * Record the outcome to the metrics and the audit log.
+     * @param start Start of the call by {@link System#nanoTime()}.
+     */
+    private void recordOutcome(
+        ServerCall<?, ?> call,
+        MethodMetrics methodMetrics,
+        JwtContextData contextData,
+        AuthOutcome outcome,
+        String reason,
+        long start
+    ) {
+        methodMetrics.recordOutcome(outcome);
+
+        if(auditLog.isEnabled()) {
+            auditLog.record(call.getMethodDescriptor().getFullMethodName(),
+                contextData == null ? null : contextData.getUserId(), outcome, reason, System.nanoTime() - start);
+        }
+    }
 
-        if(methodIsExposed) {
+    private boolean validateExposedAnnotation(JwtContextData contextData, MethodPolicy policy) {
+        if(policy.isExposed()) {
             if(contextData == null) throw new AuthException("Missing JWT data.");
 
-            final List<String> rawEnvironments = (List<String>) contextData
-                .getJwtClaims().get(JwtService.TOKEN_ENV, List.class);
-            final Set<String> environments = rawEnvironments.stream().map(Object::toString).collect(Collectors.toSet());
+            final List<String> environments = contextData.getEnvironments();
 
-            return exposedToEnvironments.stream().anyMatch(environments::contains);
+            for(int i = 0; i < environments.size(); i++) {
+                if(policy.getExposedEnvironments().contains(environments.get(i))) return true;
+            }
         }
 
         return false;
     }
 
-    private <ReqT> void validateAllowedAnnotation(ReqT request, JwtContextData contextData, String methodName) {
-        allowedCollector.getAllowedAuth(methodName)
-            .ifPresent(value -> authorizeOwnerOrRoles(request, contextData, value));
-    }
+    private <ReqT> void authorizeOwner(ReqT request, JwtContextData jwtContext, MethodPolicy policy) {
+        final AllowExpression expression = policy.getExpression();
+        final OwnerFieldAccessor ownerAccessor = policy.getOwnerAccessor();
 
-    private <ReqT> void authorizeOwnerOrRoles(ReqT request, JwtContextData contextData, AllowedMethod allowedMethod) {
-        if(contextData == null) throw new AuthException("Missing JWT data.");
-        if(allowedMethod.getOwnerField().isEmpty()) {
-            validateRoles(new HashSet<>(allowedMethod.getRoles()), contextData.getRoles());
-        } else {
-            authorizeOwner(request, contextData, allowedMethod);
-        }
-    }
+        validateExpression(expression, jwtContext, request);
 
-    private <ReqT> String parseOwner(ReqT request, String fieldName) {
-        try {
-            final Field field = request.getClass().getDeclaredField(fieldName + GRPC_FIELD_MODIFIER);
-            field.setAccessible(true);
-            return String.valueOf(field.get(request));
-        } catch(NoSuchFieldException | IllegalAccessException e) {
-            throw new AuthException("Missing owner field.");
-        }
-    }
+        if(ownerAccessor != null && ownerAccessor.isOwnedBy(request, jwtContext.getUserId())) return;
+        if(ownerAccessor == null && expression != null && policy.getRoleSet().isEmpty()) return;
 
-    private <ReqT> void authorizeOwner(ReqT request, JwtContextData jwtContext, AllowedMethod allowedMethod) {
-        final String uid = parseOwner(request, allowedMethod.getOwnerField());
+        validateRoles(policy.getRoleSet(), jwtContext.getRoleSet());
+    }
 
-        if(!jwtContext.getUserId().equals(uid)) validateRoles(new HashSet<>(allowedMethod.getRoles()), jwtContext.getRoles());
+    private void validateExpression(AllowExpression expression, JwtContextData contextData, Object request) {
+        if(expression != null && !expression.evaluate(contextData, request)) {
+            throw new AuthException("Expression of @Allow is not satisfied.");
+        }
     }
 
-    private void validateRoles(Set<String> requiredRoles, Set<String> userRoles) {
+    private void validateRoles(RoleSet requiredRoles, RoleSet userRoles) {
 
         if(requiredRoles.isEmpty()) {
             throw new AuthException("Endpoint does not have specified roles.");
         }
 
-        requiredRoles.retainAll(Objects.requireNonNull(userRoles));
-
-        if(requiredRoles.isEmpty()) {
+        if(!roleRegistry.current(Objects.requireNonNull(userRoles)).intersects(requiredRoles)) {
             throw new AuthException("Missing required permission roles.");
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private JwtContextData parseAuthContextData(Metadata metadata) {
+    private JwtContextData parseAuthContextData(
+        String authHeaderData,
+        Metadata metadata,
+        MethodMetrics methodMetrics
+    ) {
         try {
-            final String authHeaderData = metadata.get(GrpcHeader.AUTHORIZATION);
-
             if(authHeaderData == null) {
                 return null;
             }
 
-            final String token = authHeaderData.replace(BEARER, "").trim();
-            final Claims jwtBody = Jwts.parser().setSigningKey(jwtService.getKey()).parseClaimsJws(token).getBody();
-            final List<String> roles = (List<String>) jwtBody.get(JwtService.JWT_ROLES, List.class);
+            final long start = System.nanoTime();
 
-            return new JwtContextData(token, jwtBody.getSubject(), Sets.newHashSet(roles), jwtBody);
+            try {
+                return resolve(token(authHeaderData), metadata);
+            } finally {
+                methodMetrics.recordVerification(System.nanoTime() - start);
+            }
         } catch(JwtException | IllegalArgumentException e) {
             throw new UnauthenticatedException(e.getMessage(), e);
         }
     }
+
+    /**
+     * Resolve the token by the first {@link TokenResolver} supporting it or verify it as a JWT. Compact tokens
+     * of {@code authorization-bin} are never passed to the resolvers.
+     */
+    private JwtContextData resolve(String token, Metadata metadata) {
+        if(!tokenResolvers.isEmpty() && metadata.containsKey(GrpcHeader.AUTHORIZATION)) {
+            for(TokenResolver resolver : tokenResolvers) {
+                if(resolver.supports(token)) return resolver.resolve(token);
+            }
+        }
+
+        return verifiedTokenCache.get(token, jwtService.getKeyTable(), tokenVerifier);
+    }
+
+    private static ExecutorService newVerificationExecutor(GrpcJwtProperties properties) {
+        final GrpcJwtProperties.Async async = properties.getAsync();
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        return new ThreadPoolExecutor(
+            async.getThreads(),
+            async.getThreads(),
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(async.getQueueSize()),
+            runnable -> {
+                final Thread thread = new Thread(runnable, VERIFIER_THREAD_NAME + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+    }
+
+    private static ExecutorService newCallExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, CALL_THREAD_NAME + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return Authorization header or the compact token of {@code authorization-bin} encoded by base64url.
+     */
+    private static String authorization(Metadata metadata) {
+        final String authHeaderData = metadata.get(GrpcHeader.AUTHORIZATION);
+
+        if(authHeaderData != null) return authHeaderData;
+
+        final byte[] compactToken = metadata.get(GrpcHeader.AUTHORIZATION_BIN);
+
+        return compactToken == null ? null : BASE64.encodeToString(compactToken);
+    }
+
+    private static String token(String authHeaderData) {
+        return authHeaderData.replace(BEARER, "").trim();
+    }
+
+    private JwtContextData verifyToken(String token) {
+        final VerifiedToken verified = jwtService.verify(token);
+
+        return claimProjection.contextData(verified, roleRegistry.intern(verified.getRoles()));
+    }
 }
\ No newline at end of file
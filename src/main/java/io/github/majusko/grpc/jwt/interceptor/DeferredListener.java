@@ -0,0 +1,126 @@
+package io.github.majusko.grpc.jwt.interceptor;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.Status;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Listener of a call whose token is verified on another thread. Events are buffered until {@link #start} hands
+ * over the listener of the application and then replayed in the original order. No message is buffered, gRPC
+ * delivers messages only after the application started the call and requested them, so just events like
+ * {@code onReady} or {@code onCancel} wait here. When creating the listener fails, the call is closed with
+ * {@code INTERNAL}.
+ */
+class DeferredListener<ReqT> extends ServerCall.Listener<ReqT> {
+
+    private final ServerCall<ReqT, ?> call;
+    private final Queue<Consumer<ServerCall.Listener<ReqT>>> pending = new ArrayDeque<>();
+
+    private ServerCall.Listener<ReqT> delegate;
+    private boolean draining;
+    private boolean closed;
+
+    DeferredListener(ServerCall<ReqT, ?> call) {
+        this.call = call;
+    }
+
+    /**
+     * Create the listener of the application and replay the buffered events to it. Must run on the executor of
+     * the call, the listener of the application is created and called there.
+     * @param listenerFactory Starts the call and returns its listener.
+     */
+    void start(Supplier<ServerCall.Listener<ReqT>> listenerFactory) {
+        final ServerCall.Listener<ReqT> listener;
+
+        try {
+            listener = listenerFactory.get();
+        } catch(RuntimeException e) {
+            synchronized(this) {
+                closed = true;
+                pending.clear();
+            }
+
+            call.close(Status.INTERNAL.withDescription("Authorization of the call failed.").withCause(e),
+                new Metadata());
+            return;
+        }
+
+        synchronized(this) {
+            delegate = listener;
+        }
+
+        drain();
+    }
+
+    @Override
+    public void onMessage(ReqT message) {
+        dispatch(listener -> listener.onMessage(message));
+    }
+
+    @Override
+    public void onHalfClose() {
+        dispatch(ServerCall.Listener::onHalfClose);
+    }
+
+    @Override
+    public void onCancel() {
+        dispatch(ServerCall.Listener::onCancel);
+    }
+
+    @Override
+    public void onComplete() {
+        dispatch(ServerCall.Listener::onComplete);
+    }
+
+    @Override
+    public void onReady() {
+        dispatch(ServerCall.Listener::onReady);
+    }
+
+    private void dispatch(Consumer<ServerCall.Listener<ReqT>> event) {
+        synchronized(this) {
+            if(closed) return;
+
+            pending.add(event);
+        }
+
+        drain();
+    }
+
+    private void drain() {
+        final ServerCall.Listener<ReqT> listener;
+
+        synchronized(this) {
+            if(delegate == null || draining) return;
+
+            draining = true;
+            listener = delegate;
+        }
+
+        try {
+            Consumer<ServerCall.Listener<ReqT>> event;
+
+            while((event = poll()) != null) {
+                event.accept(listener);
+            }
+        } catch(RuntimeException e) {
+            synchronized(this) {
+                draining = false;
+            }
+            throw e;
+        }
+    }
+
+    private synchronized Consumer<ServerCall.Listener<ReqT>> poll() {
+        final Consumer<ServerCall.Listener<ReqT>> event = pending.poll();
+
+        if(event == null) draining = false;
+
+        return event;
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.majusko.grpc.jwt.interceptor;
+
+import io.github.majusko.grpc.jwt.processor.PolicyIndexProcessor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Policy index of a single gRPC service class written at build time by {@link PolicyIndexProcessor}.
+ * Classes without the index are scanned reflectively into the same entries.
+ */
+class PolicyIndex {
+
+    private static final Pattern FIELDS = Pattern.compile(PolicyIndexProcessor.FIELD_SEPARATOR);
+    private static final Pattern LIST = Pattern.compile(PolicyIndexProcessor.LIST_SEPARATOR);
+    private static final int FIELD_COUNT = 7;
+
+    private PolicyIndex() {
+    }
+
+    /**
+     * @param serviceClass Class of gRPC service bean.
+     * @return Indexed methods or null when the class was not indexed at build time.
+     */
+    static List<Entry> read(Class<?> serviceClass) {
+        final ClassLoader classLoader = serviceClass.getClassLoader();
+
+        if(classLoader == null) return null;
+
+        final InputStream input = classLoader.getResourceAsStream(
+            PolicyIndexProcessor.INDEX_LOCATION + serviceClass.getName());
+
+        if(input == null) return null;
+
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            if(!PolicyIndexProcessor.INDEX_VERSION.equals(reader.readLine())) return null;
+
+            final List<Entry> entries = new ArrayList<>();
+            String line;
+
+            while((line = reader.readLine()) != null) {
+                final String[] fields = FIELDS.split(line, -1);
+
+                if(fields.length != FIELD_COUNT) return null;
+
+                entries.add(new Entry(
+                    fields[0], fields[1], Boolean.parseBoolean(fields[2]), list(fields[3]), fields[4], list(fields[5]),
+                    fields[6]
+                ));
+            }
+
+            return entries;
+        } catch(IOException e) {
+            throw new UncheckedIOException("Unable to read policy index of " + serviceClass.getName(), e);
+        }
+    }
+
+    private static List<String> list(String value) {
+        return value.isEmpty() ? Collections.emptyList() : Arrays.asList(LIST.split(value, -1));
+    }
+
+    static class Entry {
+        private final String methodName;
+        private final String grpcMethodName;
+        private final boolean allowed;
+        private final List<String> roles;
+        private final String ownerField;
+        private final List<String> environments;
+        private final String expression;
+
+        Entry(
+            String methodName,
+            String grpcMethodName,
+            boolean allowed,
+            List<String> roles,
+            String ownerField,
+            List<String> environments,
+            String expression
+        ) {
+            this.methodName = methodName;
+            this.grpcMethodName = grpcMethodName;
+            this.allowed = allowed;
+            this.roles = roles;
+            this.ownerField = ownerField;
+            this.environments = environments;
+            this.expression = expression;
+        }
+
+        String getMethodName() {
+            return methodName;
+        }
+
+        /**
+         * @return Full gRPC method name or an empty string when it was not known at build time.
+         */
+        String getGrpcMethodName() {
+            return grpcMethodName;
+        }
+
+        boolean isAllowed() {
+            return allowed;
+        }
+
+        List<String> getRoles() {
+            return roles;
+        }
+
+        String getOwnerField() {
+            return ownerField;
+        }
+
+        List<String> getEnvironments() {
+            return environments;
+        }
+
+        String getExpression() {
+            return expression;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.majusko.grpc.jwt.interceptor;
+
+import io.github.majusko.grpc.jwt.data.RoleSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense ids to roles used in {@code @Allow} annotations and interns role sets so identical sets of
+ * different users share one instance with a precomputed bit mask.
+ */
+class RoleRegistry {
+
+    private static final int MAX_INTERNED_SETS = 4096;
+
+    private final Map<Set<String>, RoleSet> interned = new ConcurrentHashMap<>();
+
+    private volatile Map<String, Integer> ids = Collections.emptyMap();
+    private volatile int generation;
+
+    /**
+     * Assign ids to the roles which don't have one yet.
+     * @param roles Roles required by some method.
+     */
+    synchronized void register(Collection<String> roles) {
+        if(ids.keySet().containsAll(roles)) return;
+
+        final Map<String, Integer> extended = new HashMap<>(ids);
+
+        for(String role : roles) {
+            extended.putIfAbsent(role, extended.size());
+        }
+
+        this.ids = Collections.unmodifiableMap(extended);
+        this.generation++;
+        this.interned.clear();
+    }
+
+    /**
+     * Get the shared role set instance for the roles.
+     * @param roles Role names, duplicates are ignored.
+     * @return Interned role set.
+     */
+    RoleSet intern(Collection<String> roles) {
+        if(roles == null || roles.isEmpty()) return RoleSet.empty();
+
+        final Set<String> names = roles instanceof Set ? (Set<String>) roles : new HashSet<>(roles);
+        final RoleSet existing = interned.get(names);
+
+        if(existing != null && existing.getGeneration() == generation) return existing;
+
+        final RoleSet created = build(new HashSet<>(names));
+
+        if(existing != null || interned.size() < MAX_INTERNED_SETS) interned.put(created.getNames(), created);
+
+        return created;
+    }
+
+    /**
+     * Rebuild the role set when it was built before some of the role ids were assigned.
+     * @param roles Role set of the user.
+     * @return Role set valid with the current role ids.
+     */
+    RoleSet current(RoleSet roles) {
+        return roles.getGeneration() == generation || roles.isEmpty() ? roles : intern(roles.getNames());
+    }
+
+    private RoleSet build(Set<String> names) {
+        final int currentGeneration = generation;
+        final Map<String, Integer> currentIds = ids;
+        final long[] mask = new long[(currentIds.size() + Long.SIZE - 1) / Long.SIZE];
+
+        for(String name : names) {
+            final Integer id = currentIds.get(name);
+
+            if(id != null) mask[id / Long.SIZE] |= 1L << (id % Long.SIZE);
+        }
+
+        return new RoleSet(names, mask, currentGeneration);
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.majusko.grpc.jwt.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the tasks of one call one at a time in the order they were submitted, on the threads of the delegate.
+ */
+class SerializingExecutor implements Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerializingExecutor.class);
+
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    SerializingExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if(!scheduled.compareAndSet(false, true)) return;
+
+        try {
+            delegate.execute(this::runTasks);
+        } catch(RuntimeException e) {
+            scheduled.set(false);
+            throw e;
+        }
+    }
+
+    private void runTasks() {
+        try {
+            Runnable task;
+
+            while((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch(RuntimeException e) {
+                    logger.error("Task of a gRPC call failed.", e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+
+        if(!tasks.isEmpty()) schedule();
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.majusko.grpc.jwt.metrics;
+
+import java.util.Collection;
+
+/**
+ * Entry point of auth metrics used by the interceptors.
+ */
+public interface AuthMetrics {
+
+    AuthMetrics NOOP = fullMethodName -> MethodMetrics.NOOP;
+
+    /**
+     * Get the meters of the method.
+     * @param fullMethodName Full gRPC method name, e.g. {@code package.Service/Method}.
+     * @return Meters of the method, the same instance for every call of the method.
+     */
+    MethodMetrics forMethod(String fullMethodName);
+
+    /**
+     * Create the meters of methods known up front, e.g. the methods protected by {@code @Allow} and
+     * {@code @Exposed}. Implementations limiting the number of methods never count these methods.
+     * @param fullMethodNames Full gRPC method names.
+     */
+    default void registerMethods(Collection<String> fullMethodNames) {
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.majusko.grpc.jwt.metrics;
+
+public enum AuthOutcome {
+    /**
+     * Call passed authentication and authorization.
+     */
+    SUCCESS,
+    /**
+     * Call was let through by {@code @Exposed} without checking roles or owner.
+     */
+    EXPOSED,
+    UNAUTHENTICATED,
+    PERMISSION_DENIED
+}
@@ -0,0 +1,42 @@
+package io.github.majusko.grpc.jwt.metrics;
+
+/**
+ * Meters of a single gRPC method. Instances are created once per method so recording does not allocate.
+ */
+public interface MethodMetrics {
+
+    MethodMetrics NOOP = new MethodMetrics() {
+        @Override
+        public void recordVerification(long nanos) {
+        }
+
+        @Override
+        public void recordEvaluation(long nanos) {
+        }
+
+        @Override
+        public void recordOutcome(AuthOutcome outcome) {
+        }
+
+        @Override
+        public void recordClientOutcome(AuthOutcome outcome) {
+        }
+    };
+
+    /**
+     * @param nanos Time spent by parsing and verifying the token.
+     */
+    void recordVerification(long nanos);
+
+    /**
+     * @param nanos Time spent by evaluating {@code @Allow} and {@code @Exposed} policy.
+     */
+    void recordEvaluation(long nanos);
+
+    void recordOutcome(AuthOutcome outcome);
+
+    /**
+     * @param outcome Auth outcome of outgoing call as reported by the server.
+     */
+    void recordClientOutcome(AuthOutcome outcome);
+}
@@ -0,0 +1,139 @@
+package io.github.majusko.grpc.jwt.metrics;
+
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.RejectedTokenCache;
+import io.micrometer.core.instrument.*;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer implementation of {@link AuthMetrics}. Meters are tagged by gRPC method. Registered methods always
+ * have their own meters, other methods above the limit share the meters tagged with {@value #OTHER_METHOD} to keep
+ * the cardinality bounded.
+ */
+public class MicrometerAuthMetrics implements AuthMetrics {
+
+    public static final String VERIFICATION = "grpc.jwt.verification";
+    public static final String EVALUATION = "grpc.jwt.evaluation";
+    public static final String CALLS = "grpc.jwt.calls";
+    public static final String CLIENT_CALLS = "grpc.jwt.client.calls";
+    public static final String INTERNAL_TOKEN_AGE = "grpc.jwt.internal.token.age";
+    public static final String INTERNAL_TOKEN_REFRESHES = "grpc.jwt.internal.token.refreshes";
+    public static final String REJECTED_CACHE_HITS = "grpc.jwt.rejected.cache.hits";
+
+    private static final String METHOD_TAG = "method";
+    private static final String OUTCOME_TAG = "outcome";
+    private static final String OTHER_METHOD = "other";
+
+    private final MeterRegistry registry;
+    private final int maxMethods;
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final MethodMetrics other;
+
+    private volatile Map<String, MethodMetrics> registeredMethods = Collections.emptyMap();
+
+    public MicrometerAuthMetrics(MeterRegistry registry, JwtService jwtService, int maxMethods) {
+        this.registry = registry;
+        this.maxMethods = maxMethods;
+        this.other = new MicrometerMethodMetrics(OTHER_METHOD);
+
+        Gauge.builder(INTERNAL_TOKEN_AGE, jwtService, MicrometerAuthMetrics::internalTokenAge)
+            .description("Age of the internal token injected to outgoing calls.")
+            .baseUnit("seconds")
+            .register(registry);
+        FunctionCounter.builder(INTERNAL_TOKEN_REFRESHES, jwtService, JwtService::getInternalRefreshCount)
+            .description("Number of internal token refreshes.")
+            .register(registry);
+        FunctionCounter.builder(REJECTED_CACHE_HITS, jwtService.getRejectedTokenCache(),
+                RejectedTokenCache::getHitCount)
+            .description("Number of tokens refused because they were rejected recently.")
+            .register(registry);
+    }
+
+    @Override
+    public MethodMetrics forMethod(String fullMethodName) {
+        final MethodMetrics registered = registeredMethods.get(fullMethodName);
+
+        if(registered != null) return registered;
+
+        final MethodMetrics existing = methods.get(fullMethodName);
+
+        if(existing != null) return existing;
+        if(methods.size() >= maxMethods) return other;
+
+        return methods.computeIfAbsent(fullMethodName, MicrometerMethodMetrics::new);
+    }
+
+    @Override
+    public synchronized void registerMethods(Collection<String> fullMethodNames) {
+        final Map<String, MethodMetrics> registered = new HashMap<>(registeredMethods);
+
+        for(String fullMethodName : fullMethodNames) {
+            registered.computeIfAbsent(fullMethodName, name -> {
+                final MethodMetrics existing = methods.get(name);
+
+                return existing != null ? existing : new MicrometerMethodMetrics(name);
+            });
+        }
+
+        this.registeredMethods = Collections.unmodifiableMap(registered);
+    }
+
+    private static double internalTokenAge(JwtService jwtService) {
+        final long issuedAt = jwtService.getInternalIssuedAt();
+
+        return issuedAt == 0 ? Double.NaN : (System.currentTimeMillis() - issuedAt) / 1000.0;
+    }
+
+    private class MicrometerMethodMetrics implements MethodMetrics {
+        private final Timer verification;
+        private final Timer evaluation;
+        private final Counter[] outcomes = new Counter[AuthOutcome.values().length];
+        private final Counter[] clientOutcomes = new Counter[AuthOutcome.values().length];
+
+        private MicrometerMethodMetrics(String method) {
+            final Tags tags = Tags.of(METHOD_TAG, method);
+
+            this.verification = Timer.builder(VERIFICATION)
+                .description("Parsing and signature verification of JWT token.")
+                .tags(tags)
+                .register(registry);
+            this.evaluation = Timer.builder(EVALUATION)
+                .description("Evaluation of @Allow and @Exposed policy.")
+                .tags(tags)
+                .register(registry);
+
+            for(AuthOutcome outcome : AuthOutcome.values()) {
+                final Tags outcomeTags = tags.and(OUTCOME_TAG, outcome.name());
+
+                outcomes[outcome.ordinal()] = registry.counter(CALLS, outcomeTags);
+                clientOutcomes[outcome.ordinal()] = registry.counter(CLIENT_CALLS, outcomeTags);
+            }
+        }
+
+        @Override
+        public void recordVerification(long nanos) {
+            verification.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordEvaluation(long nanos) {
+            evaluation.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordOutcome(AuthOutcome outcome) {
+            outcomes[outcome.ordinal()].increment();
+        }
+
+        @Override
+        public void recordClientOutcome(AuthOutcome outcome) {
+            clientOutcomes[outcome.ordinal()].increment();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package io.github.majusko.grpc.jwt.processor;
+
+import io.github.majusko.grpc.jwt.annotation.Allow;
+import io.github.majusko.grpc.jwt.annotation.Exposed;
+import io.github.majusko.grpc.jwt.data.AllowExpression;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the {@code @Allow} and {@code @Exposed} methods of every {@code @GRpcService} class into
+ * {@value #INDEX_LOCATION}{@code <binary class name>}, so {@code AllowedCollector} does not scan the class
+ * reflectively at startup. gRPC method names are taken from {@code @RpcMethod} of the generated service class
+ * or built from its {@code SERVICE_NAME} constant.
+ * <p>
+ * The index starts with the {@value #INDEX_VERSION} line followed by one tab separated line per method:
+ * Java method name, full gRPC method name (empty when unknown), {@code @Allow} presence, roles, owner field,
+ * exposed environments and expression. Lists are comma separated. Expressions are parsed, so syntax errors fail
+ * the compilation.
+ * <p>
+ * Request messages read by {@code ownerField} or {@code request.*} of expressions, and the messages nested in them,
+ * are written to a GraalVM {@code reflect-config.json} under {@value #NATIVE_IMAGE_LOCATION}, because protobuf
+ * reads message fields by reflection on the generated accessors.
+ */
+public class PolicyIndexProcessor extends AbstractProcessor {
+
+    public static final String INDEX_LOCATION = "META-INF/grpc-jwt/policies/";
+    public static final String INDEX_VERSION = "grpc-jwt-policy-index-2";
+    public static final String FIELD_SEPARATOR = "\t";
+    public static final String LIST_SEPARATOR = ",";
+    public static final String NATIVE_IMAGE_LOCATION = "META-INF/native-image/grpc-jwt/";
+
+    private static final String GRPC_SERVICE = "org.lognet.springboot.grpc.GRpcService";
+    private static final String RPC_METHOD = "io.grpc.stub.annotations.RpcMethod";
+    private static final String SERVICE_NAME = "SERVICE_NAME";
+    private static final String FULL_METHOD_NAME = "fullMethodName";
+    private static final String GENERATED_MESSAGE = "com.google.protobuf.GeneratedMessageV3";
+    private static final String BUILDER = "Builder";
+    private static final String REFLECT_CONFIG = "/reflect-config.json";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(GRPC_SERVICE);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for(TypeElement annotation : annotations) {
+            for(TypeElement service : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+                if(service.getKind() == ElementKind.CLASS) writeIndex(service);
+            }
+        }
+
+        return false;
+    }
+
+    private void writeIndex(TypeElement service) {
+        final TypeElement grpcClass = findGrpcClass(service);
+        final StringBuilder index = new StringBuilder(INDEX_VERSION).append('\n');
+        final Set<TypeElement> messages = new LinkedHashSet<>();
+
+        final List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(service);
+
+        for(ExecutableElement method : ElementFilter.methodsIn(members)) {
+            final Allow allow = method.getAnnotation(Allow.class);
+            final Exposed exposed = method.getAnnotation(Exposed.class);
+
+            if(!method.getModifiers().contains(Modifier.PUBLIC) || (allow == null && exposed == null)) continue;
+
+            final String methodName = method.getSimpleName().toString();
+            final String[] roles = allow == null ? new String[0] : allow.roles();
+            final String ownerField = allow == null ? "" : allow.ownerField();
+            final String[] environments = exposed == null ? new String[0] : exposed.environments();
+            final String expression = allow == null ? "" : allow.expression();
+
+            final AllowExpression compiled = expression.isEmpty() ? null : compile(method, expression);
+
+            if(!expression.isEmpty() && compiled == null) continue;
+
+            if(hasSeparator(ownerField) || hasSeparator(roles) || hasSeparator(environments) ||
+                hasLineSeparator(expression)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Values with tabs, commas or line breaks can not be indexed, " +
+                        "the gRPC JWT policies of this class are read at runtime.", method);
+                writeReflectConfig(service, Collections.singleton(service));
+                return;
+            }
+
+            if(!ownerField.isEmpty() || (compiled != null && compiled.usesRequest())) {
+                collectMessages(requestType(method), messages);
+            }
+
+            index.append(String.join(FIELD_SEPARATOR,
+                methodName,
+                grpcMethodName(grpcClass, methodName),
+                String.valueOf(allow != null),
+                String.join(LIST_SEPARATOR, roles),
+                ownerField,
+                String.join(LIST_SEPARATOR, environments),
+                expression
+            )).append('\n');
+        }
+
+        write(service, INDEX_LOCATION + binaryName(service), index.toString());
+
+        if(!messages.isEmpty()) writeReflectConfig(service, messages);
+    }
+
+    /**
+     * Write reflection metadata of the types and their nested builders, classes with public methods only.
+     */
+    private void writeReflectConfig(TypeElement service, Set<TypeElement> types) {
+        final StringBuilder config = new StringBuilder("[\n");
+
+        for(TypeElement type : types) {
+            appendReflectEntry(config, type);
+
+            for(TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+                if(nested.getSimpleName().contentEquals(BUILDER)) appendReflectEntry(config, nested);
+            }
+        }
+
+        config.setLength(config.length() - 2);
+        config.append("\n]\n");
+
+        write(service, NATIVE_IMAGE_LOCATION + binaryName(service) + REFLECT_CONFIG, config.toString());
+    }
+
+    private void appendReflectEntry(StringBuilder config, TypeElement type) {
+        config.append("  {\"name\": \"").append(binaryName(type)).append("\", \"allPublicMethods\": true},\n");
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void write(TypeElement service, String location, String content) {
+        try {
+            final FileObject file = processingEnv.getFiler()
+                .createResource(StandardLocation.CLASS_OUTPUT, "", location, service);
+
+            try(Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write(content);
+            }
+        } catch(IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                "Unable to write " + location + ": " + e.getMessage(), service);
+        }
+    }
+
+    /**
+     * @return Request type of a unary or server streaming method, the type of the returned observer of a client
+     * or bidi streaming method.
+     */
+    private static TypeMirror requestType(ExecutableElement method) {
+        final List<? extends VariableElement> parameters = method.getParameters();
+
+        if(parameters.size() == 2) return parameters.get(0).asType();
+
+        final TypeMirror returnType = method.getReturnType();
+
+        if(returnType.getKind() != TypeKind.DECLARED) return null;
+
+        final List<? extends TypeMirror> arguments = ((DeclaredType) returnType).getTypeArguments();
+
+        return arguments.size() == 1 ? arguments.get(0) : null;
+    }
+
+    /**
+     * Add the protobuf message and every message reachable by its getters, including elements of repeated fields.
+     */
+    private void collectMessages(TypeMirror type, Set<TypeElement> messages) {
+        final TypeElement generatedMessage = processingEnv.getElementUtils().getTypeElement(GENERATED_MESSAGE);
+
+        if(type == null || type.getKind() != TypeKind.DECLARED || generatedMessage == null) return;
+
+        final Types types = processingEnv.getTypeUtils();
+
+        if(!types.isAssignable(type, types.erasure(generatedMessage.asType()))) {
+            for(TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                collectMessages(argument, messages);
+            }
+            return;
+        }
+
+        final TypeElement message = (TypeElement) types.asElement(type);
+
+        if(!messages.add(message)) return;
+
+        for(ExecutableElement getter : ElementFilter.methodsIn(message.getEnclosedElements())) {
+            if(getter.getModifiers().contains(Modifier.PUBLIC) && !getter.getModifiers().contains(Modifier.STATIC) &&
+                getter.getParameters().isEmpty() && getter.getSimpleName().toString().startsWith("get")) {
+                collectMessages(getter.getReturnType(), messages);
+            }
+        }
+    }
+
+    /**
+     * @return Generated {@code *Grpc} class enclosing a superclass of the service or null when there is none.
+     */
+    private static TypeElement findGrpcClass(TypeElement service) {
+        TypeMirror superclass = service.getSuperclass();
+
+        while(superclass.getKind() == TypeKind.DECLARED) {
+            final TypeElement type = (TypeElement) ((DeclaredType) superclass).asElement();
+            final Element enclosing = type.getEnclosingElement();
+
+            if(enclosing instanceof TypeElement && serviceName((TypeElement) enclosing) != null) {
+                return (TypeElement) enclosing;
+            }
+
+            superclass = type.getSuperclass();
+        }
+
+        return null;
+    }
+
+    private static String serviceName(TypeElement grpcClass) {
+        for(VariableElement field : ElementFilter.fieldsIn(grpcClass.getEnclosedElements())) {
+            if(field.getSimpleName().contentEquals(SERVICE_NAME) && field.getConstantValue() instanceof String) {
+                return (String) field.getConstantValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Full method name from {@code @RpcMethod} of the descriptor getter, {@code SERVICE_NAME/Method}
+     * for older generated code or an empty string when the generated class is not known.
+     */
+    private static String grpcMethodName(TypeElement grpcClass, String methodName) {
+        if(grpcClass == null) return "";
+
+        final String protoName = Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1);
+        final String getterName = "get" + protoName + "Method";
+
+        for(ExecutableElement getter : ElementFilter.methodsIn(grpcClass.getEnclosedElements())) {
+            if(!getter.getSimpleName().contentEquals(getterName)) continue;
+
+            for(AnnotationMirror annotation : getter.getAnnotationMirrors()) {
+                if(!annotation.getAnnotationType().toString().equals(RPC_METHOD)) continue;
+
+                for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value :
+                    annotation.getElementValues().entrySet()) {
+                    if(value.getKey().getSimpleName().contentEquals(FULL_METHOD_NAME)) {
+                        return value.getValue().getValue().toString();
+                    }
+                }
+            }
+        }
+
+        return serviceName(grpcClass) + "/" + protoName;
+    }
+
+    private AllowExpression compile(ExecutableElement method, String expression) {
+        try {
+            return AllowExpression.compile(expression, null);
+        } catch(IllegalArgumentException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                "Invalid @Allow expression: " + e.getMessage(), method);
+            return null;
+        }
+    }
+
+    private static boolean hasSeparator(String... values) {
+        for(String value : values) {
+            if(value.contains(LIST_SEPARATOR) || hasLineSeparator(value)) return true;
+        }
+
+        return false;
+    }
+
+    private static boolean hasLineSeparator(String value) {
+        return value.contains(FIELD_SEPARATOR) || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.majusko.grpc.jwt.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock read from a field which its own daemon thread refreshes every tick and nothing else runs on. Until it
+ * is started and after it is stopped the system clock is read directly.
+ */
+class CoarseClock {
+
+    private static final String THREAD_NAME = "grpc-jwt-clock";
+
+    private volatile long millis = System.currentTimeMillis();
+    private volatile boolean running;
+    private ScheduledExecutorService ticker;
+
+    synchronized void start(long tickMillis) {
+        if(running) return;
+
+        this.millis = System.currentTimeMillis();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        this.running = true;
+    }
+
+    synchronized void stop() {
+        this.running = false;
+
+        if(ticker != null) ticker.shutdownNow();
+    }
+
+    /**
+     * @return Current time in epoch millis. While running it lags the system clock by one tick, or more only when
+     * the ticking thread is not scheduled at all.
+     */
+    long millis() {
+        return running ? millis : System.currentTimeMillis();
+    }
+
+    private void tick() {
+        millis = System.currentTimeMillis();
+    }
+}
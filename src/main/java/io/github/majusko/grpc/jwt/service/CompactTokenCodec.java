@@ -0,0 +1,211 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Binary token for service-to-service calls sent in the {@code authorization-bin} header. It holds the format
+ * version, expiration, subject, roles and environments. Roles and environments listed in the dictionary are
+ * written as their index, other values inline. The token ends with HMAC-SHA256 of the dictionary and the content,
+ * so services with different dictionaries reject each other's tokens.
+ * <p>
+ * Layout: {@code version, varint exp, string sub, varint n, n x entry, varint m, m x entry, 32 bytes signature}
+ * where entry is {@code varint index << 1} or {@code varint length << 1 | 1} followed by UTF-8 bytes.
+ */
+class CompactTokenCodec {
+
+    private static final int VERSION = 1;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_LENGTH = 32;
+    private static final int CAPACITY = 128;
+    private static final Base64.Decoder BASE64 = Base64.getUrlDecoder();
+
+    private final List<String> dictionary;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final byte[] dictionaryDigest;
+    private final ThreadLocal<Mac> mac;
+    private final int maxTokenLength;
+
+    /**
+     * @param key Shared HMAC key.
+     * @param dictionary Roles and environments written as their index. Must be the same on every service.
+     * @param maxTokenLength Longest accepted token in its base64url form.
+     */
+    CompactTokenCodec(Key key, List<String> dictionary, int maxTokenLength) {
+        final SecretKeySpec spec = new SecretKeySpec(key.getEncoded(), MAC_ALGORITHM);
+
+        this.dictionary = Collections.unmodifiableList(new ArrayList<>(dictionary));
+        this.dictionaryDigest = digest(this.dictionary);
+        this.mac = ThreadLocal.withInitial(() -> TokenIssuer.newMac(spec));
+        this.maxTokenLength = maxTokenLength;
+
+        for(int i = 0; i < this.dictionary.size(); i++) {
+            indexes.putIfAbsent(this.dictionary.get(i), i);
+        }
+    }
+
+    /**
+     * @param data Subject and roles.
+     * @param environments Active profiles of the issuing service.
+     * @param expirationSec Expiration in epoch seconds or 0 when the token does not expire.
+     * @return Signed binary token.
+     */
+    byte[] encode(JwtData data, List<String> environments, long expirationSec) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(CAPACITY);
+        final CodedOutputStream coded = CodedOutputStream.newInstance(out);
+
+        try {
+            coded.write((byte) VERSION);
+            coded.writeUInt64NoTag(expirationSec);
+            coded.writeStringNoTag(data.getUserId());
+            writeEntries(coded, data.getRoles());
+            writeEntries(coded, environments);
+            coded.flush();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final byte[] content = out.toByteArray();
+        final byte[] token = Arrays.copyOf(content, content.length + SIGNATURE_LENGTH);
+
+        System.arraycopy(sign(content, content.length), 0, token, content.length, SIGNATURE_LENGTH);
+
+        return token;
+    }
+
+    /**
+     * @param token Binary token encoded by base64url.
+     * @param nowMillis Current time the expiration is checked against.
+     * @return Verified token with claims of its fields.
+     */
+    VerifiedToken decode(String token, long nowMillis) {
+        if(token.length() > maxTokenLength) {
+            throw new MalformedJwtException("Compact token is longer than " + maxTokenLength + " characters.");
+        }
+
+        final byte[] bytes;
+
+        try {
+            bytes = BASE64.decode(token);
+        } catch(IllegalArgumentException e) {
+            throw new MalformedJwtException("Compact token is not base64url encoded.", e);
+        }
+
+        final int contentLength = bytes.length - SIGNATURE_LENGTH;
+
+        if(contentLength < 1) throw new MalformedJwtException("Compact token is too short.");
+        if(bytes[0] != VERSION) {
+            throw new UnsupportedJwtException("Unsupported compact token version " + bytes[0] + ".");
+        }
+
+        final byte[] signature = Arrays.copyOfRange(bytes, contentLength, bytes.length);
+
+        if(!MessageDigest.isEqual(sign(bytes, contentLength), signature)) {
+            throw new SignatureException("Compact token signature does not match, the key or dictionary differs.");
+        }
+
+        final CodedInputStream in = CodedInputStream.newInstance(bytes, 1, contentLength - 1);
+
+        try {
+            final long expirationSec = in.readUInt64();
+            final String subject = in.readStringRequireUtf8();
+            final List<String> roles = readEntries(in);
+            final List<String> environments = readEntries(in);
+
+            if(!in.isAtEnd()) throw new MalformedJwtException("Compact token has trailing bytes.");
+
+            if(expirationSec != 0 && nowMillis > expirationSec * 1000) {
+                throw new ExpiredJwtException(null, null,
+                    "Compact token expired at " + new Date(expirationSec * 1000) + ".");
+            }
+
+            final Claims claims = Jwts.claims().setSubject(subject);
+
+            claims.put(JwtService.JWT_ROLES, roles);
+            claims.put(JwtService.TOKEN_ENV, environments);
+
+            if(expirationSec != 0) claims.setExpiration(new Date(expirationSec * 1000));
+
+            return new VerifiedToken(token, subject, null, roles, environments, expirationSec * 1000, claims);
+        } catch(IOException | IndexOutOfBoundsException e) {
+            throw new MalformedJwtException("Compact token is not readable.", e);
+        }
+    }
+
+    private void writeEntries(CodedOutputStream out, Collection<String> values) throws IOException {
+        out.writeUInt32NoTag(values.size());
+
+        for(String value : values) {
+            final Integer index = indexes.get(value);
+
+            if(index != null) {
+                out.writeUInt32NoTag(index << 1);
+            } else {
+                final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+
+                out.writeUInt32NoTag(utf8.length << 1 | 1);
+                out.writeRawBytes(utf8);
+            }
+        }
+    }
+
+    private List<String> readEntries(CodedInputStream in) throws IOException {
+        final int count = in.readUInt32();
+
+        if(count < 0 || count > maxTokenLength) throw new MalformedJwtException("Compact token is corrupted.");
+
+        final List<String> values = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++) {
+            final int entry = in.readUInt32();
+
+            values.add((entry & 1) == 0 ?
+                dictionary.get(entry >>> 1) : new String(in.readRawBytes(entry >>> 1), StandardCharsets.UTF_8));
+        }
+
+        return values;
+    }
+
+    private byte[] sign(byte[] content, int length) {
+        final Mac signer = mac.get();
+
+        signer.update(dictionaryDigest);
+        signer.update(content, 0, length);
+
+        return signer.doFinal();
+    }
+
+    private static byte[] digest(List<String> dictionary) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            for(String value : dictionary) {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+
+            return digest.digest();
+        } catch(GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Verifies HMAC signed tokens directly on the token bytes. The signature is computed by a per-thread {@link Mac}
+ * and compared in constant time, header and payload are read by a streaming JSON parser which keeps only the
+ * fields needed for authorization and the expiration is checked against a {@link CoarseClock}.
+ * Compressed tokens, tokens whose {@code kid} header does not name this key and claims of unexpected types are
+ * passed to the fallback verifier.
+ */
+class HmacTokenVerifier implements TokenVerifier {
+
+    private static final String ALGORITHM = "alg";
+    private static final String KEY_ID = "kid";
+    private static final String COMPRESSION = "zip";
+    private static final String NONE = "none";
+    private static final SignatureAlgorithm[] ALGORITHMS = {
+        SignatureAlgorithm.HS256, SignatureAlgorithm.HS384, SignatureAlgorithm.HS512
+    };
+    private static final List<String> UNSUPPORTED = Collections.unmodifiableList(new ArrayList<>(0));
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Base64.Decoder BASE64 = Base64.getUrlDecoder();
+
+    private final Map<String, ThreadLocal<Mac>> macs = new HashMap<>();
+    private final Key key;
+    private final Supplier<KeyTable> keyTable;
+    private final int maxTokenLength;
+    private final CoarseClock clock;
+    private final TokenVerifier fallback;
+
+    /**
+     * @param key HMAC key. Only algorithms this key is strong enough for are accepted.
+     * @param keyTable Current keys, a {@code kid} header is accepted when it names the HMAC key.
+     * @param maxTokenLength Longest accepted token.
+     * @param clock Clock the expiration is checked against.
+     * @param fallback Verifier of tokens this one does not handle.
+     */
+    HmacTokenVerifier(
+        Key key, Supplier<KeyTable> keyTable, int maxTokenLength, CoarseClock clock, TokenVerifier fallback
+    ) {
+        final byte[] secret = key.getEncoded();
+
+        for(SignatureAlgorithm algorithm : ALGORITHMS) {
+            if(secret.length * Byte.SIZE >= algorithm.getMinKeyLength()) {
+                final SecretKeySpec spec = new SecretKeySpec(secret, algorithm.getJcaName());
+
+                macs.put(algorithm.getValue(), ThreadLocal.withInitial(() -> TokenIssuer.newMac(spec)));
+            }
+        }
+
+        this.key = key;
+        this.keyTable = keyTable;
+        this.maxTokenLength = maxTokenLength;
+        this.clock = clock;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public VerifiedToken verify(String token) {
+        if(token.length() > maxTokenLength) {
+            throw new MalformedJwtException("JWT token is longer than " + maxTokenLength + " characters.");
+        }
+
+        final int headerEnd = token.indexOf('.');
+        final int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+
+        if(headerEnd <= 0 || payloadEnd <= headerEnd + 1 || payloadEnd == token.length() - 1
+            || token.indexOf('.', payloadEnd + 1) >= 0) {
+            throw new MalformedJwtException("JWT token must have header, payload and signature.");
+        }
+
+        final byte[] bytes = token.getBytes(StandardCharsets.US_ASCII);
+        final Mac mac = headerMac(decode(bytes, 0, headerEnd));
+
+        if(mac == null) return fallback.verify(token);
+
+        mac.update(bytes, 0, payloadEnd);
+
+        if(!MessageDigest.isEqual(mac.doFinal(), toArray(decode(bytes, payloadEnd + 1, bytes.length)))) {
+            throw new SignatureException("JWT signature does not match the locally computed signature.");
+        }
+
+        final VerifiedToken verified = readPayload(token, decode(bytes, headerEnd + 1, payloadEnd));
+
+        return verified == null ? fallback.verify(token) : verified;
+    }
+
+    /**
+     * @return Mac of the token algorithm or null when the token is verified by the fallback.
+     */
+    private Mac headerMac(ByteBuffer header) {
+        String algorithm = null;
+
+        try(JsonParser parser = createParser(header)) {
+            while(nextField(parser)) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+
+                if(COMPRESSION.equals(name)) return null;
+                if(KEY_ID.equals(name) && !namesKey(value, parser)) return null;
+
+                if(ALGORITHM.equals(name) && value == JsonToken.VALUE_STRING) {
+                    algorithm = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch(IOException e) {
+            throw new MalformedJwtException("JWT is not a JSON object.", e);
+        }
+
+        if(algorithm == null || NONE.equalsIgnoreCase(algorithm)) {
+            throw new UnsupportedJwtException("JWT token is not signed.");
+        }
+
+        final ThreadLocal<Mac> mac = macs.get(algorithm);
+
+        if(mac == null) throw new UnsupportedJwtException("JWT algorithm " + algorithm + " is not accepted.");
+
+        return mac.get();
+    }
+
+    private boolean namesKey(JsonToken value, JsonParser parser) throws IOException {
+        return value == JsonToken.VALUE_STRING && key.equals(keyTable.get().get(parser.getText()));
+    }
+
+    /**
+     * @return Verified token or null when some claim has an unexpected type.
+     */
+    private VerifiedToken readPayload(String token, ByteBuffer payload) {
+        String subject = null;
+        String tokenId = null;
+        List<String> roles = null;
+        List<String> environments = null;
+        long expirationSec = 0;
+        long notBeforeSec = 0;
+        boolean expires = false;
+        boolean hasNotBefore = false;
+
+        try(JsonParser parser = createParser(payload)) {
+            while(nextField(parser)) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+
+                switch(name) {
+                    case Claims.SUBJECT:
+                        if(value == JsonToken.VALUE_STRING) subject = parser.getText();
+                        else if(value != JsonToken.VALUE_NULL) return null;
+                        break;
+                    case Claims.ID:
+                        if(value == JsonToken.VALUE_STRING) tokenId = parser.getText();
+                        else if(value != JsonToken.VALUE_NULL) return null;
+                        break;
+                    case Claims.EXPIRATION:
+                        if(!value.isNumeric()) return null;
+                        expirationSec = parser.getValueAsLong();
+                        expires = true;
+                        break;
+                    case Claims.NOT_BEFORE:
+                        if(!value.isNumeric()) return null;
+                        notBeforeSec = parser.getValueAsLong();
+                        hasNotBefore = true;
+                        break;
+                    case JwtService.JWT_ROLES:
+                        roles = readStrings(parser, value);
+                        if(roles == UNSUPPORTED) return null;
+                        break;
+                    case JwtService.TOKEN_ENV:
+                        environments = readStrings(parser, value);
+                        if(environments == UNSUPPORTED) return null;
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        } catch(IOException e) {
+            throw new MalformedJwtException("JWT is not a JSON object.", e);
+        }
+
+        final long now = clock.millis();
+
+        if(expires && now > expirationSec * 1000) {
+            throw new ExpiredJwtException(null, null, "JWT expired at " + new Date(expirationSec * 1000) + ".");
+        }
+
+        if(hasNotBefore && now < notBeforeSec * 1000) {
+            throw new PrematureJwtException(null, null,
+                "JWT must not be accepted before " + new Date(notBeforeSec * 1000) + ".");
+        }
+
+        return new VerifiedToken(
+            token, subject, tokenId, roles, environments, expires ? expirationSec * 1000 : 0, null
+        );
+    }
+
+    private static List<String> readStrings(JsonParser parser, JsonToken value) throws IOException {
+        if(value == JsonToken.VALUE_NULL) return null;
+        if(value != JsonToken.START_ARRAY) return UNSUPPORTED;
+
+        final List<String> strings = new ArrayList<>(4);
+        JsonToken next;
+
+        while((next = parser.nextToken()) == JsonToken.VALUE_STRING) {
+            strings.add(parser.getText());
+        }
+
+        if(next != JsonToken.END_ARRAY) return UNSUPPORTED;
+
+        return strings;
+    }
+
+    private static JsonParser createParser(ByteBuffer json) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createParser(
+            json.array(), json.arrayOffset() + json.position(), json.remaining()
+        );
+
+        if(parser.nextToken() != JsonToken.START_OBJECT) {
+            parser.close();
+            throw new MalformedJwtException("JWT is not a JSON object.");
+        }
+
+        return parser;
+    }
+
+    private static boolean nextField(JsonParser parser) throws IOException {
+        final JsonToken next = parser.nextToken();
+
+        if(next == JsonToken.FIELD_NAME) return true;
+        if(next != JsonToken.END_OBJECT) throw new MalformedJwtException("JWT is not a JSON object.");
+
+        return false;
+    }
+
+    private static ByteBuffer decode(byte[] bytes, int start, int end) {
+        try {
+            return BASE64.decode(ByteBuffer.wrap(bytes, start, end - start));
+        } catch(IllegalArgumentException e) {
+            throw new MalformedJwtException("JWT token is not base64url encoded.", e);
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] array = buffer.array();
+
+        return buffer.arrayOffset() == 0 && buffer.remaining() == array.length ?
+            array : Arrays.copyOfRange(array, buffer.arrayOffset() + buffer.position(),
+            buffer.arrayOffset() + buffer.limit());
+    }
+}
@@ -0,0 +1,252 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.data.JwtContextData;
+import io.github.majusko.grpc.jwt.exception.UnauthenticatedException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves opaque tokens, i.e. tokens without a dot, by the OAuth 2.0 token introspection endpoint (RFC 7662).
+ * <ul>
+ *     <li>Concurrent calls with the same token wait for a single introspection request.</li>
+ *     <li>Results are kept in a bounded cache until the token expires, at most {@code ttlSec}.</li>
+ *     <li>Results older than {@code refreshSec} are served while a background thread introspects the token
+ *     again, so a token deactivated by the identity provider is refused after one more refresh.</li>
+ * </ul>
+ * Failed introspection requests are not cached, a failed refresh keeps the previous result. The first
+ * introspection of a token blocks the thread resolving it up to the connect and read timeouts, so enable
+ * {@code grpc.jwt.async.enabled} in production to keep it off the gRPC threads.
+ */
+public class IntrospectionTokenResolver implements TokenResolver {
+
+    private static final String ACTIVE = "active";
+    private static final String SCOPE = "scope";
+    private static final String REFRESH_THREAD_NAME = "grpc-jwt-introspection-";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> RESPONSE_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+    private static final Introspection INACTIVE = new Introspection(null, Long.MAX_VALUE);
+
+    private final URL url;
+    private final String authorization;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final ExecutorService refreshExecutor;
+    private final LoadingCache<String, Introspection> cache;
+    private final LongAdder introspections = new LongAdder();
+
+    public IntrospectionTokenResolver(GrpcJwtProperties.Introspection properties) {
+        this(properties, Ticker.systemTicker());
+    }
+
+    IntrospectionTokenResolver(GrpcJwtProperties.Introspection properties, Ticker ticker) {
+        this.url = parseUrl(properties.getUrl());
+        this.authorization = basicAuthorization(properties.getClientId(), properties.getClientSecret());
+        this.connectTimeoutMillis = positive("connectTimeoutMillis", properties.getConnectTimeoutMillis());
+        this.readTimeoutMillis = positive("readTimeoutMillis", properties.getReadTimeoutMillis());
+        this.refreshExecutor = newRefreshExecutor(properties.getThreads());
+
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+            .maximumSize(properties.getMaxSize())
+            .expireAfterWrite(properties.getTtlSec(), TimeUnit.SECONDS)
+            .ticker(ticker);
+
+        if(properties.getRefreshSec() > 0) builder.refreshAfterWrite(properties.getRefreshSec(), TimeUnit.SECONDS);
+
+        this.cache = builder.build(CacheLoader.asyncReloading(CacheLoader.from(this::introspect), refreshExecutor));
+    }
+
+    @Override
+    public boolean supports(String token) {
+        return token.indexOf('.') < 0;
+    }
+
+    @Override
+    public JwtContextData resolve(String token) {
+        Introspection introspection = get(token);
+
+        if(introspection.isExpired()) {
+            cache.asMap().remove(token, introspection);
+            introspection = get(token);
+        }
+
+        if(introspection.data == null || introspection.isExpired()) {
+            throw new UnauthenticatedException("Token is not active.", null);
+        }
+
+        return introspection.data;
+    }
+
+    /**
+     * @return Number of requests sent to the introspection endpoint.
+     */
+    public long getIntrospectionCount() {
+        return introspections.sum();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Stop the threads refreshing cached results.
+     */
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private Introspection get(String token) {
+        try {
+            return cache.getUnchecked(token);
+        } catch(UncheckedExecutionException e) {
+            throw new UnauthenticatedException("Token introspection failed.", e.getCause());
+        }
+    }
+
+    private Introspection introspect(String token) {
+        introspections.increment();
+
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setRequestProperty("Accept", "application/json");
+            if(authorization != null) connection.setRequestProperty("Authorization", authorization);
+
+            try(OutputStream body = connection.getOutputStream()) {
+                body.write(("token=" + URLEncoder.encode(token, StandardCharsets.UTF_8.name()))
+                    .getBytes(StandardCharsets.UTF_8));
+            }
+
+            final int status = connection.getResponseCode();
+
+            if(status != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                throw new IOException("Introspection endpoint " + url + " responded with status " + status + ".");
+            }
+
+            try(InputStream response = connection.getInputStream()) {
+                return toIntrospection(token, OBJECT_MAPPER.readValue(response, RESPONSE_TYPE));
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Introspection toIntrospection(String token, Map<String, Object> response) {
+        if(!Boolean.TRUE.equals(response.get(ACTIVE))) return INACTIVE;
+
+        final Claims claims = Jwts.claims(response);
+        final JwtContextData data = new JwtContextData(token, claims.getSubject(), readRoles(claims), claims);
+        final Date expiration = claims.getExpiration();
+
+        return new Introspection(data, expiration == null ? Long.MAX_VALUE : expiration.getTime());
+    }
+
+    /**
+     * @return Roles of the {@code jwt_roles} claim or the space separated {@code scope} of the response.
+     */
+    private static Set<String> readRoles(Claims claims) {
+        final Object roles = claims.get(JwtService.JWT_ROLES);
+
+        if(roles instanceof Collection) {
+            final Set<String> result = new HashSet<>();
+
+            for(Object role : (Collection<?>) roles) {
+                result.add(String.valueOf(role));
+            }
+
+            return result;
+        }
+
+        final Object scope = claims.get(SCOPE);
+
+        if(!(scope instanceof String) || ((String) scope).trim().isEmpty()) return Collections.emptySet();
+
+        return new HashSet<>(Arrays.asList(((String) scope).trim().split("\\s+")));
+    }
+
+    private static URL parseUrl(String url) {
+        if(url == null || url.isEmpty()) throw new IllegalArgumentException("Introspection url is not configured.");
+
+        try {
+            return new URL(url);
+        } catch(MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid introspection url " + url, e);
+        }
+    }
+
+    /**
+     * Zero would mean no timeout for {@link HttpURLConnection}, so a hanging endpoint would hold threads forever.
+     */
+    private static int positive(String name, int timeoutMillis) {
+        if(timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Introspection " + name + " must be positive, was " + timeoutMillis);
+        }
+
+        return timeoutMillis;
+    }
+
+    private static String basicAuthorization(String clientId, String clientSecret) {
+        if(clientId == null) return null;
+
+        final String credentials = clientId + ":" + (clientSecret == null ? "" : clientSecret);
+
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ExecutorService newRefreshExecutor(int threads) {
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+            final Thread thread = new Thread(runnable, REFRESH_THREAD_NAME + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static class Introspection {
+        private final JwtContextData data;
+        private final long expiresAt;
+
+        private Introspection(JwtContextData data, long expiresAt) {
+            this.data = data;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return expiresAt <= System.currentTimeMillis();
+        }
+    }
+}
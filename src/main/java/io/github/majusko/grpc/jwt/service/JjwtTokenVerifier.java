@@ -0,0 +1,45 @@
+package io.github.majusko.grpc.jwt.service;
+
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Verifies tokens of any algorithm with jjwt after the structural {@link TokenPrecheck}.
+ */
+class JjwtTokenVerifier implements TokenVerifier {
+
+    private final TokenPrecheck precheck;
+    private final JwtParser parser;
+
+    JjwtTokenVerifier(TokenPrecheck precheck, JwtParser parser) {
+        this.precheck = precheck;
+        this.parser = parser;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public VerifiedToken verify(String token) {
+        final Claims claims = parseClaims(token);
+        final Date expiration = claims.getExpiration();
+
+        return new VerifiedToken(
+            token,
+            claims.getSubject(),
+            claims.getId(),
+            (List<String>) claims.get(JwtService.JWT_ROLES, List.class),
+            (List<String>) claims.get(JwtService.TOKEN_ENV, List.class),
+            expiration == null ? 0 : expiration.getTime(),
+            claims
+        );
+    }
+
+    Claims parseClaims(String token) {
+        precheck.check(token);
+
+        return parser.parseClaimsJws(token).getBody();
+    }
+}
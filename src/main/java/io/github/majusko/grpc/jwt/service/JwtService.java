@@ -1,24 +1,35 @@
 package io.github.majusko.grpc.jwt.service;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import io.github.majusko.grpc.jwt.GrpcJwtProperties;
 import io.github.majusko.grpc.jwt.service.dto.JwtData;
 import io.github.majusko.grpc.jwt.service.dto.JwtMetadata;
 import io.github.majusko.grpc.jwt.service.dto.JwtToken;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
+import io.jsonwebtoken.*;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 
-import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.file.Paths;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.Arrays;
-import java.util.Base64;
-import java.util.Date;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class JwtService {
 
@@ -27,20 +38,84 @@ public class JwtService {
 
     private static final String INTERNAL_ACCOUNT = "internal_account";
     private static final Double REFRESH_TIME_THRESHOLD = 0.2;
+    private static final long MIN_REFRESH_DELAY_MILLIS = 100L;
+    private static final long RETRY_REFRESH_DELAY_MILLIS = 1000L;
+    private static final String REFRESH_THREAD_NAME = "grpc-jwt-internal-token";
+    private static final String KEY_RELOAD_THREAD_NAME = "grpc-jwt-key-reload";
+    private static final int PARALLEL_BATCH_SIZE = 256;
+    private static final long CLOCK_TICK_MILLIS = 10L;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final ScheduledExecutorService scheduler = newScheduler(REFRESH_THREAD_NAME);
+    private final ScheduledExecutorService keyReloader;
 
     private final GrpcJwtProperties properties;
+    private final CoarseClock clock = new CoarseClock();
+    private final JjwtTokenVerifier jjwtVerifier;
+    private final TokenVerifier verifier;
+    private final RejectedTokenCache rejectedTokens;
+    private final TokenIssuer tokenIssuer;
+    private final CompactTokenCodec compactCodec;
+    private final TokenVerifier compactVerifier;
+    private final boolean compactInternal;
+    private final RevocationList revocationList;
+    private final RevocationFileWatcher revocationWatcher;
 
     private JwtMetadata metadata;
-    private JwtToken internal;
+    private volatile KeyTable keyTable;
+    private volatile InternalToken internal;
+    private final AtomicLong internalRefreshes = new AtomicLong();
+    private ScheduledFuture<?> scheduledRefresh;
 
     public JwtService(Environment env, GrpcJwtProperties properties) {
+        final GrpcJwtProperties.Keys keys = properties.getKeys();
+
         this.properties = properties;
         this.metadata = JwtMetadata.builder()
             .env(Arrays.stream(env.getActiveProfiles()).collect(Collectors.toList()))
             .expirationSec(properties.getExpirationSec())
-            .key(generateKey(properties.getSecret(), properties.getAlgorithm()))
+            .key(keys.isAsymmetric() ?
+                readSigningKey(keys) : generateKey(properties.getSecret(), properties.getAlgorithm()))
+            .keyId(keys.isAsymmetric() ? keys.getSigningKeyId() : null)
+            .signatureAlgorithm(keys.getSigningAlgorithm() == null ?
+                null : SignatureAlgorithm.forName(keys.getSigningAlgorithm()))
             .build();
-        this.internal = generateInternalToken(properties.getExpirationSec(), metadata);
+        this.keyTable = loadKeyTable();
+        this.tokenIssuer = metadata.getKey() == null ? null : new TokenIssuer(metadata);
+        this.jjwtVerifier = new JjwtTokenVerifier(
+            new TokenPrecheck(properties.getMaxTokenLength(), !keys.isAsymmetric()),
+            Jwts.parserBuilder().setSigningKeyResolver(new KeyTableResolver(this::getKeyTable)).build()
+        );
+        this.verifier = properties.isNativeVerification() && !keys.isAsymmetric() ?
+            new HmacTokenVerifier(
+                metadata.getKey(), this::getKeyTable, properties.getMaxTokenLength(), clock, jjwtVerifier) :
+            jjwtVerifier;
+        this.rejectedTokens = new RejectedTokenCache(
+            properties.getRejectedCache().isEnabled(),
+            properties.getRejectedCache().getMaxSize(),
+            properties.getRejectedCache().getTtlSec()
+        );
+
+        this.compactCodec = keys.isAsymmetric() ? null : new CompactTokenCodec(
+            metadata.getKey(), properties.getCompact().getDictionary(), properties.getMaxTokenLength());
+        this.compactVerifier = token -> compactCodec.decode(token, clock.millis());
+        this.compactInternal = compactCodec != null && properties.getCompact().isEnabled();
+
+        this.revocationList = new RevocationList();
+        this.revocationWatcher = properties.getRevocation().getFile() == null ?
+            null : new RevocationFileWatcher(Paths.get(properties.getRevocation().getFile()), revocationList);
+
+        if(verifier != jjwtVerifier) clock.start(CLOCK_TICK_MILLIS);
+        if(revocationWatcher != null) revocationWatcher.start();
+
+        refreshInternalToken();
+
+        this.keyReloader = keys.getRefreshSec() > 0 ? newScheduler(KEY_RELOAD_THREAD_NAME) : null;
+
+        if(keyReloader != null) {
+            keyReloader.scheduleWithFixedDelay(this::reloadKeysInBackground,
+                keys.getRefreshSec(), keys.getRefreshSec(), TimeUnit.SECONDS);
+        }
     }
 
     /**
@@ -49,61 +124,302 @@ public class JwtService {
      * @return String version of your new JWT token
      */
     public String generate(JwtData data) {
-        return generateJwt(data, metadata);
+        return requireTokenIssuer().issue(data, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+    }
+
+    /**
+     * Generate JWT tokens for many users at once. Tokens share the issued at and expiration time, batches of
+     * {@value #PARALLEL_BATCH_SIZE} and more are signed in parallel on the common fork-join pool.
+     * @param data JwtData of every token.
+     * @return Tokens in the order of the given data.
+     */
+    public List<String> generateAll(Collection<JwtData> data) {
+        final TokenIssuer issuer = requireTokenIssuer();
+        final long issuedAtSec = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        final JwtData[] items = data.toArray(new JwtData[0]);
+        final String[] tokens = new String[items.length];
+        final IntStream indexes = IntStream.range(0, items.length);
+
+        (items.length >= PARALLEL_BATCH_SIZE ? indexes.parallel() : indexes)
+            .forEach(i -> tokens[i] = issuer.issue(items[i], issuedAtSec));
+
+        return Arrays.asList(tokens);
+    }
+
+    /**
+     * Generate JWT tokens lazily as the stream is consumed. Tokens share the issued at and expiration time taken
+     * when this method is called. Parallel streams are signed in parallel.
+     * @param data Stream of JwtData.
+     * @return Stream of tokens in the order of the given data.
+     */
+    public Stream<String> generateAll(Stream<JwtData> data) {
+        final TokenIssuer issuer = requireTokenIssuer();
+        final long issuedAtSec = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+        return data.map(item -> issuer.issue(item, issuedAtSec));
+    }
+
+    /**
+     * Generate a compact binary token for the {@code authorization-bin} header. Roles and environments from
+     * {@code grpc.jwt.compact.dictionary} are written as small integers.
+     * @param data JwtData with data needed for the token.
+     * @return Signed binary token.
+     */
+    public byte[] generateCompact(JwtData data) {
+        if(compactCodec == null) throw new IllegalStateException("Compact tokens need the shared secret.");
+
+        final long nowSec = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+        return compactCodec.encode(data, metadata.getEnv(), nowSec + metadata.getExpirationSec());
+    }
+
+    /**
+     * Get the internal token in the compact binary form. It is refreshed together with {@link #getInternal()}.
+     * @return Binary internal token or null when {@code grpc.jwt.compact.enabled} is not set. Do not modify it.
+     */
+    public byte[] getInternalCompact() {
+        final InternalToken token = internal;
+
+        return token == null ? null : token.compact;
     }
 
     /**
-     * Get the internal JWT token and automatically refresh the token if it's expired.
+     * Get the internal JWT token. The token is refreshed in the background when 80% of its lifetime has passed,
+     * so this is a plain read that never checks the clock.
      * This token is used for inter-service communication.
-     * @return String version of your internal JWT token.
+     * @return String version of your internal JWT token or null when this service can only verify tokens.
      */
     public String getInternal() {
-        final double refreshThresholdValue = properties.getExpirationSec() * REFRESH_TIME_THRESHOLD;
+        final InternalToken token = internal;
 
-        if (LocalDateTime.now().plusSeconds((long) refreshThresholdValue).isAfter(internal.getExpiration())) {
-            refreshInternalToken();
-        }
+        return token == null ? null : token.jwt.getToken();
+    }
 
-        return internal.getToken();
+    /**
+     * @return Epoch millis when the current internal token was issued or 0 when there is none.
+     */
+    public long getInternalIssuedAt() {
+        final InternalToken token = internal;
+
+        return token == null ? 0 : token.issuedAt;
+    }
+
+    /**
+     * @return Number of internal tokens minted since the start including the first one.
+     */
+    public long getInternalRefreshCount() {
+        return internalRefreshes.get();
     }
 
     /**
      * Get the key used for JWT token generation.
-     * @return generated SecretKey with configuration from application.properties.
+     * @return Secret key from application.properties, the configured private key or null on verify-only services.
      */
-    public SecretKey getKey() {
+    public Key getKey() {
         return metadata.getKey();
     }
 
+    /**
+     * Get the keys accepted for JWT token verification. The table is replaced whenever the keys are reloaded.
+     * @return Current table of verification keys.
+     */
+    public KeyTable getKeyTable() {
+        return keyTable;
+    }
+
+    /**
+     * Get the cache of recently rejected tokens.
+     * @return Cache which refuses tokens rejected by {@link #parseClaims(String)} without parsing them again.
+     */
+    public RejectedTokenCache getRejectedTokenCache() {
+        return rejectedTokens;
+    }
+
+    /**
+     * Get the denylist of revoked tokens. It is loaded from {@code grpc.jwt.revocation.file} when configured,
+     * other sources can replace it by {@link RevocationList#update(Collection, Collection)}.
+     * @return Revoked token ids and subjects.
+     */
+    public RevocationList getRevocationList() {
+        return revocationList;
+    }
+
+    /**
+     * Verify the token with the key selected by its {@code kid} header and return its claims. Malformed
+     * tokens are rejected before the signature is checked and rejected tokens are remembered for a while.
+     * @param token Signed JWT token.
+     * @return Verified claims.
+     * @throws JwtException when the token is invalid, expired or signed by an unknown key.
+     */
+    public Claims parseClaims(String token) {
+        return rejectOnFailure(token, jjwtVerifier::parseClaims);
+    }
+
+    /**
+     * Verify the token and return the fields needed for authorization. HMAC tokens are verified by the built-in
+     * verifier when {@code grpc.jwt.nativeVerification} is enabled, other tokens by jjwt like
+     * {@link #parseClaims(String)}. Compact binary tokens are passed encoded by base64url.
+     * @param token Signed JWT token or base64url encoded compact token.
+     * @return Verified token. Its claims are present only when it was verified by jjwt.
+     * @throws JwtException when the token is invalid, expired or signed by an unknown key.
+     */
+    public VerifiedToken verify(String token) {
+        if(compactCodec != null && token.indexOf('.') < 0) return rejectOnFailure(token, compactVerifier::verify);
+
+        return rejectOnFailure(token, verifier::verify);
+    }
+
+    /**
+     * Load the public keys and JWKS file again. Tokens signed by the old and new keys are accepted as long as
+     * both keys are present in the files.
+     */
+    public void reloadKeys() {
+        this.keyTable = loadKeyTable();
+        rejectedTokens.invalidateAll();
+    }
+
+    /**
+     * Stop the background refresh of the internal token and keys and watching of the revocation file.
+     */
+    public void shutdown() {
+        clock.stop();
+        if(revocationWatcher != null) revocationWatcher.stop();
+        if(keyReloader != null) keyReloader.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private <T> T rejectOnFailure(String token, Function<String, T> verification) {
+        rejectedTokens.check(token);
+
+        try {
+            return verification.apply(token);
+        } catch(JwtException | IllegalArgumentException e) {
+            rejectedTokens.reject(token, e);
+            throw e;
+        }
+    }
+
+    private TokenIssuer requireTokenIssuer() {
+        if(tokenIssuer == null) throw new IllegalStateException("JWT signing key is not configured.");
+
+        return tokenIssuer;
+    }
+
     private SecretKeySpec generateKey(String signingSecret, String signAlgorithm) {
         final String sha256hex = DigestUtils.sha256Hex(signingSecret);
         final byte[] decodedKey = Base64.getDecoder().decode(sha256hex);
         return new SecretKeySpec(decodedKey, 0, decodedKey.length, signAlgorithm);
     }
 
-    private String generateJwt(JwtData data, JwtMetadata metadata) {
-        final LocalDateTime future = LocalDateTime.now().plusSeconds(metadata.getExpirationSec());
-        final Claims ourClaims = Jwts.claims();
+    private PrivateKey readSigningKey(GrpcJwtProperties.Keys keys) {
+        if(keys.getSigningKey() == null) return null;
+        if(keys.getSigningKeyId() == null) throw new IllegalStateException("Missing grpc.jwt.keys.signingKeyId.");
+
+        return KeyLoader.readPrivateKey(keys.getSigningKey());
+    }
+
+    private KeyTable loadKeyTable() {
+        final GrpcJwtProperties.Keys keys = properties.getKeys();
+
+        if(!keys.isAsymmetric()) {
+            return new KeyTable(keys.getSigningKeyId() == null ? Collections.emptyMap() :
+                Collections.singletonMap(keys.getSigningKeyId(), metadata.getKey()), metadata.getKey());
+        }
+
+        final Map<String, Key> verificationKeys = new HashMap<>();
+
+        keys.getPublicKeys().forEach((keyId, path) -> verificationKeys.put(keyId, KeyLoader.readPublicKey(path)));
+
+        if(keys.getJwks() != null) verificationKeys.putAll(KeyLoader.readJwks(keys.getJwks()));
+
+        if(metadata.getKey() != null && !verificationKeys.containsKey(metadata.getKeyId())) {
+            final PublicKey ownKey = KeyLoader.derivePublicKey((PrivateKey) metadata.getKey());
+
+            if(ownKey != null) verificationKeys.put(metadata.getKeyId(), ownKey);
+        }
+
+        return new KeyTable(verificationKeys, null);
+    }
+
+    private void reloadKeysInBackground() {
+        try {
+            reloadKeys();
+        } catch(RuntimeException e) {
+            logger.error("Reload of JWT verification keys failed, keeping the previous keys.", e);
+        }
+    }
 
-        ourClaims.put(JWT_ROLES, Lists.newArrayList(data.getRoles()));
-        ourClaims.put(TOKEN_ENV, metadata.getEnv());
+    private synchronized void refreshInternalToken() {
+        if(metadata.getKey() == null) return;
 
-        return Jwts.builder()
-            .setClaims(ourClaims)
-            .setSubject(data.getUserId())
-            .setIssuedAt(Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant()))
-            .setExpiration(Date.from(future.atZone(ZoneId.systemDefault()).toInstant()))
-            .signWith(metadata.getKey()).compact();
+        final long expirationSec = properties.getExpirationSec();
+        final long issuedAt = System.currentTimeMillis();
+        // Expiration is written in whole seconds, rounding it down would cut short lived tokens before refresh.
+        final long expiresAtSec = TimeUnit.MILLISECONDS.toSeconds(issuedAt + 999) + expirationSec;
+
+        final long lifetimeMillis = TimeUnit.SECONDS.toMillis(expiresAtSec) - issuedAt;
+
+        this.internal = new InternalToken(
+            generateInternalToken(TimeUnit.MILLISECONDS.toSeconds(issuedAt), expiresAtSec),
+            compactInternal ? compactCodec.encode(internalAccount(), metadata.getEnv(), expiresAtSec) : null,
+            issuedAt
+        );
+        this.internalRefreshes.incrementAndGet();
+
+        if(expirationSec > 0) {
+            final long delayMillis = (long) (lifetimeMillis * (1 - REFRESH_TIME_THRESHOLD));
+
+            scheduleRefresh(Math.max(delayMillis, MIN_REFRESH_DELAY_MILLIS));
+        }
     }
 
-    private void refreshInternalToken() {
-        this.internal = generateInternalToken(properties.getExpirationSec(), metadata);
+    private synchronized void scheduleRefresh(long delayMillis) {
+        if(scheduledRefresh != null) scheduledRefresh.cancel(false);
+        if(scheduler.isShutdown()) return;
+
+        this.scheduledRefresh = scheduler.schedule(this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS);
     }
 
-    private JwtToken generateInternalToken(Long expirationSec, JwtMetadata jwtMetadata) {
+    private void refreshInBackground() {
+        try {
+            refreshInternalToken();
+        } catch(RuntimeException e) {
+            logger.error("Refresh of the internal token failed.", e);
+            scheduleRefresh(RETRY_REFRESH_DELAY_MILLIS);
+        }
+    }
+
+    private JwtToken generateInternalToken(long issuedAtSec, long expiresAtSec) {
         return new JwtToken(
-            generateJwt(new JwtData(INTERNAL_ACCOUNT, Sets.newHashSet(GrpcRole.INTERNAL)), jwtMetadata),
-            LocalDateTime.now().plusSeconds(expirationSec)
+            tokenIssuer.issue(internalAccount(), issuedAtSec, expiresAtSec),
+            LocalDateTime.ofInstant(Instant.ofEpochSecond(expiresAtSec), ZoneId.systemDefault())
         );
     }
+
+    private static JwtData internalAccount() {
+        return new JwtData(INTERNAL_ACCOUNT, Sets.newHashSet(GrpcRole.INTERNAL));
+    }
+
+    private static ScheduledExecutorService newScheduler(String threadName) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Internal token in both forms with its issue time, replaced as a whole so readers never mix two tokens.
+     */
+    private static final class InternalToken {
+        private final JwtToken jwt;
+        private final byte[] compact;
+        private final long issuedAt;
+
+        private InternalToken(JwtToken jwt, byte[] compact, long issuedAt) {
+            this.jwt = jwt;
+            this.compact = compact;
+            this.issuedAt = issuedAt;
+        }
+    }
 }
@@ -0,0 +1,190 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.*;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.*;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads asymmetric keys from PEM and JWKS files.
+ */
+class KeyLoader {
+
+    private static final String RSA = "RSA";
+    private static final String EC = "EC";
+    private static final String PEM_BOUNDARY = "-----";
+    private static final String CERTIFICATE = "CERTIFICATE";
+    private static final String X509 = "X.509";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private KeyLoader() {
+    }
+
+    static PrivateKey readPrivateKey(String path) {
+        final PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(readPem(path).content);
+
+        return generate(path, factory -> factory.generatePrivate(spec));
+    }
+
+    static PublicKey readPublicKey(String path) {
+        final Pem pem = readPem(path);
+
+        if(pem.type.contains(CERTIFICATE)) {
+            try(InputStream stream = Files.newInputStream(Paths.get(path))) {
+                return CertificateFactory.getInstance(X509).generateCertificate(stream).getPublicKey();
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            } catch(CertificateException e) {
+                throw new IllegalStateException("Invalid certificate " + path, e);
+            }
+        }
+
+        final X509EncodedKeySpec spec = new X509EncodedKeySpec(pem.content);
+
+        return generate(path, factory -> factory.generatePublic(spec));
+    }
+
+    /**
+     * Derive the public key from the private key when the key format allows it.
+     * @param privateKey Signing key.
+     * @return Public key or null when it can not be derived.
+     */
+    static PublicKey derivePublicKey(PrivateKey privateKey) {
+        if(!(privateKey instanceof RSAPrivateCrtKey)) return null;
+
+        final RSAPrivateCrtKey rsaKey = (RSAPrivateCrtKey) privateKey;
+
+        try {
+            return KeyFactory.getInstance(RSA)
+                .generatePublic(new RSAPublicKeySpec(rsaKey.getModulus(), rsaKey.getPublicExponent()));
+        } catch(GeneralSecurityException e) {
+            throw new IllegalStateException("Can not derive public key.", e);
+        }
+    }
+
+    /**
+     * Read RSA and EC keys of JSON Web Key Set. Keys without {@code kid} or of unsupported type are skipped.
+     * @param path Path to JWKS file.
+     * @return Public keys indexed by key id.
+     */
+    static Map<String, Key> readJwks(String path) {
+        final Map<String, Key> keys = new HashMap<>();
+
+        try {
+            for(JsonNode jwk : OBJECT_MAPPER.readTree(Paths.get(path).toFile()).path("keys")) {
+                final String keyId = jwk.path("kid").asText(null);
+                final Key key = toPublicKey(jwk);
+
+                if(keyId != null && key != null) keys.put(keyId, key);
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        } catch(GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid JWKS " + path, e);
+        }
+
+        return keys;
+    }
+
+    private static PublicKey toPublicKey(JsonNode jwk) throws GeneralSecurityException {
+        final String type = jwk.path("kty").asText();
+
+        if(RSA.equals(type)) {
+            return KeyFactory.getInstance(RSA)
+                .generatePublic(new RSAPublicKeySpec(integer(jwk, "n"), integer(jwk, "e")));
+        }
+
+        if(EC.equals(type)) {
+            final AlgorithmParameters parameters = AlgorithmParameters.getInstance(EC);
+            parameters.init(new ECGenParameterSpec(curveName(jwk.path("crv").asText())));
+
+            final ECPoint point = new ECPoint(integer(jwk, "x"), integer(jwk, "y"));
+
+            return KeyFactory.getInstance(EC)
+                .generatePublic(new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+        }
+
+        return null;
+    }
+
+    private static String curveName(String curve) throws InvalidKeySpecException {
+        switch(curve) {
+            case "P-256":
+                return "secp256r1";
+            case "P-384":
+                return "secp384r1";
+            case "P-521":
+                return "secp521r1";
+            default:
+                throw new InvalidKeySpecException("Unsupported curve " + curve);
+        }
+    }
+
+    private static BigInteger integer(JsonNode jwk, String field) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path(field).asText()));
+    }
+
+    private static <K extends Key> K generate(String path, KeyGenerator<K> generator) {
+        for(String algorithm : new String[]{RSA, EC}) {
+            try {
+                return generator.generate(KeyFactory.getInstance(algorithm));
+            } catch(InvalidKeySpecException ignored) {
+                // try the next key type
+            } catch(NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        throw new IllegalStateException("Unsupported key type in " + path);
+    }
+
+    private static Pem readPem(String path) {
+        final String content;
+
+        try {
+            content = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.US_ASCII);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final int typeStart = content.indexOf(PEM_BOUNDARY + "BEGIN ");
+        final int bodyStart = content.indexOf(PEM_BOUNDARY, typeStart + PEM_BOUNDARY.length());
+        final int bodyEnd = content.indexOf(PEM_BOUNDARY + "END ", bodyStart);
+
+        if(typeStart < 0 || bodyStart < 0 || bodyEnd < 0) throw new IllegalStateException("Invalid PEM file " + path);
+
+        final String type = content.substring(typeStart + PEM_BOUNDARY.length(), bodyStart);
+        final String body = content.substring(bodyStart + PEM_BOUNDARY.length(), bodyEnd).replaceAll("\\s", "");
+
+        return new Pem(type, Base64.getDecoder().decode(body));
+    }
+
+    private interface KeyGenerator<K extends Key> {
+        K generate(KeyFactory factory) throws InvalidKeySpecException;
+    }
+
+    private static class Pem {
+        private final String type;
+        private final byte[] content;
+
+        private Pem(String type, byte[] content) {
+            this.type = type;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.majusko.grpc.jwt.service;
+
+import java.security.Key;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable table of verification keys indexed by the {@code kid} header of JWT tokens.
+ */
+public class KeyTable {
+
+    private final Map<String, Key> keys;
+    private final Key defaultKey;
+
+    public KeyTable(Map<String, Key> keys, Key defaultKey) {
+        this.keys = Collections.unmodifiableMap(new HashMap<>(keys));
+        this.defaultKey = defaultKey;
+    }
+
+    /**
+     * Find the verification key of the token.
+     * @param keyId Value of {@code kid} header or null when the token does not have one.
+     * @return Verification key or null when there is no such key.
+     */
+    public Key get(String keyId) {
+        return keyId == null ? defaultKey : keys.get(keyId);
+    }
+
+    public Map<String, Key> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return Key used for tokens without {@code kid} header or null when such tokens are not accepted.
+     */
+    public Key getDefaultKey() {
+        return defaultKey;
+    }
+}
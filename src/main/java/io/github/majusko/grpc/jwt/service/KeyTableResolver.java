@@ -0,0 +1,30 @@
+package io.github.majusko.grpc.jwt.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.UnsupportedJwtException;
+
+import java.security.Key;
+import java.util.function.Supplier;
+
+/**
+ * Resolves the verification key of jjwt by the {@code kid} header from the current {@link KeyTable}.
+ */
+class KeyTableResolver extends SigningKeyResolverAdapter {
+
+    private final Supplier<KeyTable> keyTable;
+
+    KeyTableResolver(Supplier<KeyTable> keyTable) {
+        this.keyTable = keyTable;
+    }
+
+    @Override
+    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+        final Key key = keyTable.get().get(header.getKeyId());
+
+        if(key == null) throw new UnsupportedJwtException("Unknown JWT key id: " + header.getKeyId());
+
+        return key;
+    }
+}
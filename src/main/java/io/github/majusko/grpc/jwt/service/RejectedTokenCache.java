@@ -0,0 +1,95 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of recently rejected tokens. Tokens are stored as keyed 64-bit digests together with the reason
+ * of the rejection, so a token sent again is refused without parsing it. Only rejections which stay true for the
+ * same token are remembered: bad signature, malformed or unsupported token and expiration. A token used before
+ * its {@code nbf} becomes valid later and is verified again.
+ */
+public class RejectedTokenCache {
+
+    private final boolean enabled;
+    private final HashFunction digest;
+    private final Cache<Long, String> cache;
+    private final LongAdder hits = new LongAdder();
+
+    public RejectedTokenCache(boolean enabled, long maxSize, long ttlSec) {
+        final SecureRandom random = new SecureRandom();
+
+        this.enabled = enabled && maxSize > 0;
+        this.digest = Hashing.sipHash24(random.nextLong(), random.nextLong());
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(Math.max(maxSize, 0))
+            .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * @param token Raw JWT token.
+     * @throws JwtException with the original reason when the token was rejected recently.
+     */
+    public void check(String token) {
+        if(!enabled) return;
+
+        final String reason = cache.getIfPresent(digest(token));
+
+        if(reason != null) {
+            hits.increment();
+            throw new JwtException(reason);
+        }
+    }
+
+    /**
+     * Remember the token when the reason of its rejection is permanent.
+     * @param token Raw JWT token.
+     * @param reason Failure of the verification.
+     */
+    public void reject(String token, Exception reason) {
+        if(enabled && isPermanent(reason)) cache.put(digest(token), String.valueOf(reason.getMessage()));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return Number of tokens refused by the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    private static boolean isPermanent(Exception reason) {
+        return reason instanceof SignatureException ||
+            reason instanceof MalformedJwtException ||
+            reason instanceof UnsupportedJwtException ||
+            reason instanceof ExpiredJwtException;
+    }
+
+    private long digest(String token) {
+        return digest.hashString(token, StandardCharsets.UTF_8).asLong();
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.majusko.grpc.jwt.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads {@link RevocationList} from a file and loads it again on a background thread whenever the file changes.
+ * Every line of the file is either {@code jti:<token id>} or {@code sub:<subject>}, empty lines and lines starting
+ * with {@code #} are skipped.
+ */
+class RevocationFileWatcher {
+
+    private static final String TOKEN_ID_PREFIX = "jti:";
+    private static final String SUBJECT_PREFIX = "sub:";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String WATCH_THREAD_NAME = "grpc-jwt-revocation";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Path file;
+    private final RevocationList revocationList;
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    RevocationFileWatcher(Path file, RevocationList revocationList) {
+        this.file = file.toAbsolutePath();
+        this.revocationList = revocationList;
+    }
+
+    /**
+     * Load the file and start watching it.
+     * @throws UncheckedIOException when the file can not be read.
+     */
+    synchronized void start() {
+        try {
+            load();
+            this.watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch(IOException e) {
+            throw new UncheckedIOException("Can not watch revocation file " + file, e);
+        }
+
+        this.watchThread = new Thread(this::watch, WATCH_THREAD_NAME);
+        this.watchThread.setDaemon(true);
+        this.watchThread.start();
+    }
+
+    synchronized void stop() {
+        if(watchService == null) return;
+
+        try {
+            watchService.close();
+        } catch(IOException e) {
+            logger.debug("Closing of the revocation file watcher failed.", e);
+        }
+
+        watchThread.interrupt();
+    }
+
+    private void watch() {
+        try {
+            while(true) {
+                final WatchKey key = watchService.take();
+                boolean changed = false;
+
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                        file.getFileName().equals(event.context());
+                }
+
+                key.reset();
+
+                if(changed) reload();
+            }
+        } catch(InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Revocation file watcher stopped.");
+        }
+    }
+
+    private void reload() {
+        try {
+            load();
+        } catch(IOException | RuntimeException e) {
+            logger.error("Reload of revocation file " + file + " failed, keeping the previous denylist.", e);
+        }
+    }
+
+    private void load() throws IOException {
+        final List<String> tokenIds = new ArrayList<>();
+        final List<String> subjects = new ArrayList<>();
+
+        for(String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            final String entry = line.trim();
+
+            if(entry.isEmpty() || entry.startsWith(COMMENT_PREFIX)) continue;
+
+            if(entry.startsWith(TOKEN_ID_PREFIX)) {
+                tokenIds.add(entry.substring(TOKEN_ID_PREFIX.length()).trim());
+            } else if(entry.startsWith(SUBJECT_PREFIX)) {
+                subjects.add(entry.substring(SUBJECT_PREFIX.length()).trim());
+            } else {
+                logger.warn("Skipping revocation entry without jti: or sub: prefix in {}.", file);
+            }
+        }
+
+        revocationList.update(tokenIds, subjects);
+        logger.info("Loaded {} revoked token ids and {} revoked subjects.", tokenIds.size(), subjects.size());
+    }
+}
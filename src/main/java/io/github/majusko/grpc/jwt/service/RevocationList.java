@@ -0,0 +1,64 @@
+package io.github.majusko.grpc.jwt.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Denylist of revoked token ids ({@code jti}) and subjects. The list is immutable and replaced as a whole by
+ * {@link #update(Collection, Collection)}, which can be called by any source of revocations. A lookup of a token
+ * which is not revoked is a single hash set miss on the cached hash of the string, or nothing while the list
+ * is empty.
+ */
+public class RevocationList {
+
+    private volatile Denylist denylist = Denylist.EMPTY;
+
+    /**
+     * @param tokenId Value of the {@code jti} claim or null.
+     * @param subject Subject of the token or null.
+     * @return True when the token id or the subject is revoked.
+     */
+    public boolean isRevoked(String tokenId, String subject) {
+        final Denylist current = denylist;
+
+        return (tokenId != null && current.tokenIds.contains(tokenId)) ||
+            (subject != null && current.subjects.contains(subject));
+    }
+
+    /**
+     * Replace the whole denylist. The sets are built on the calling thread and swapped in at once, lookups
+     * running meanwhile see either the old or the new list.
+     * @param tokenIds Revoked token ids.
+     * @param subjects Subjects whose all tokens are revoked.
+     */
+    public void update(Collection<String> tokenIds, Collection<String> subjects) {
+        this.denylist = new Denylist(copy(tokenIds), copy(subjects));
+    }
+
+    /**
+     * @return Number of revoked token ids and subjects.
+     */
+    public int size() {
+        final Denylist current = denylist;
+
+        return current.tokenIds.size() + current.subjects.size();
+    }
+
+    private static Set<String> copy(Collection<String> values) {
+        return values.isEmpty() ? Collections.emptySet() : new HashSet<>(values);
+    }
+
+    private static class Denylist {
+        static final Denylist EMPTY = new Denylist(Collections.emptySet(), Collections.emptySet());
+
+        final Set<String> tokenIds;
+        final Set<String> subjects;
+
+        Denylist(Set<String> tokenIds, Set<String> subjects) {
+            this.tokenIds = tokenIds;
+            this.subjects = subjects;
+        }
+    }
+}
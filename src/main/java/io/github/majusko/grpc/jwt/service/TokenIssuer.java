@@ -0,0 +1,140 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.github.majusko.grpc.jwt.service.dto.JwtMetadata;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Mints tokens of one {@link JwtMetadata}. HMAC tokens are assembled from a {@link TokenTemplate} and every
+ * thread signs with its own initialized {@link Mac}. Tokens signed by RSA or EC keys are built by jjwt.
+ */
+class TokenIssuer {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+    static final int TOKEN_ID_BYTES = 16;
+
+    private final JwtMetadata metadata;
+    private final TokenTemplate template;
+    private final ThreadLocal<Mac> mac;
+
+    TokenIssuer(JwtMetadata metadata) {
+        final SignatureAlgorithm algorithm = metadata.getSignatureAlgorithm() == null ?
+            SignatureAlgorithm.forSigningKey(metadata.getKey()) : metadata.getSignatureAlgorithm();
+
+        this.metadata = metadata;
+
+        if(algorithm.isHmac()) {
+            final SecretKeySpec key = new SecretKeySpec(metadata.getKey().getEncoded(), algorithm.getJcaName());
+
+            this.template = new TokenTemplate(encodeHeader(algorithm, metadata.getKeyId()), metadata.getEnv());
+            this.mac = ThreadLocal.withInitial(() -> newMac(key));
+        } else {
+            this.template = null;
+            this.mac = null;
+        }
+    }
+
+    /**
+     * @param data Subject and roles of the token.
+     * @param issuedAtSec Issued at time in epoch seconds shared by the whole batch.
+     * @return Signed compact token.
+     */
+    String issue(JwtData data, long issuedAtSec) {
+        return issue(data, issuedAtSec, issuedAtSec + metadata.getExpirationSec());
+    }
+
+    /**
+     * @param data Subject and roles of the token.
+     * @param issuedAtSec Issued at time in epoch seconds.
+     * @param expirationSec Expiration time in epoch seconds.
+     * @return Signed compact token.
+     */
+    String issue(JwtData data, long issuedAtSec, long expirationSec) {
+        if(mac == null) return issueWithJjwt(data, issuedAtSec, expirationSec);
+
+        return template.issue(mac.get(), data, issuedAtSec, expirationSec);
+    }
+
+    private String issueWithJjwt(JwtData data, long issuedAtSec, long expirationSec) {
+        final Claims claims = Jwts.claims();
+
+        claims.put(JwtService.JWT_ROLES, new ArrayList<>(data.getRoles()));
+        claims.put(JwtService.TOKEN_ENV, metadata.getEnv());
+
+        final JwtBuilder builder = Jwts.builder()
+            .setClaims(claims)
+            .setSubject(data.getUserId())
+            .setId(newTokenId())
+            .setIssuedAt(new Date(issuedAtSec * 1000))
+            .setExpiration(new Date(expirationSec * 1000));
+
+        if(metadata.getKeyId() != null) builder.setHeaderParam(JwsHeader.KEY_ID, metadata.getKeyId());
+
+        return metadata.getSignatureAlgorithm() == null ?
+            builder.signWith(metadata.getKey()).compact() :
+            builder.signWith(metadata.getKey(), metadata.getSignatureAlgorithm()).compact();
+    }
+
+    private static String encodeHeader(SignatureAlgorithm algorithm, String keyId) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try(JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            if(keyId != null) generator.writeStringField(JwsHeader.KEY_ID, keyId);
+            generator.writeStringField(JwsHeader.ALGORITHM, algorithm.getValue());
+            generator.writeEndObject();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return BASE64.encodeToString(out.toByteArray());
+    }
+
+    /**
+     * @return Random {@code jti} which identifies the token on revocation, encoded by Base64URL.
+     */
+    static String newTokenId() {
+        final byte[] id = new byte[TOKEN_ID_BYTES];
+
+        nextTokenId(id);
+
+        return BASE64.encodeToString(id);
+    }
+
+    /**
+     * Fill the {@code jti} bytes. The id only has to be unique, so it is not taken from {@code SecureRandom}
+     * shared by all threads.
+     * @param id Array of {@link #TOKEN_ID_BYTES} bytes.
+     */
+    static void nextTokenId(byte[] id) {
+        ThreadLocalRandom.current().nextBytes(id);
+    }
+
+    static Mac newMac(SecretKeySpec key) {
+        try {
+            final Mac mac = Mac.getInstance(key.getAlgorithm());
+            mac.init(key);
+            return mac;
+        } catch(GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + key.getAlgorithm() + ".", e);
+        }
+    }
+}
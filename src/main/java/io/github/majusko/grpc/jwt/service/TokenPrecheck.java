@@ -0,0 +1,129 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Structural checks of JWT token done before any cryptography. Tokens which cannot pass the signature check
+ * are rejected here by their length, number of segments, {@code alg} header and {@code exp} claim.
+ */
+class TokenPrecheck {
+
+    private static final String ALGORITHM = "alg";
+    private static final String EXPIRATION = "exp";
+    private static final String COMPRESSION = "zip";
+    private static final String NONE = "none";
+    private static final String HMAC_PREFIX = "HS";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final int maxTokenLength;
+    private final boolean symmetric;
+
+    /**
+     * @param maxTokenLength Longest accepted token.
+     * @param symmetric True when tokens are signed by HMAC, false for RSA and EC signatures.
+     */
+    TokenPrecheck(int maxTokenLength, boolean symmetric) {
+        this.maxTokenLength = maxTokenLength;
+        this.symmetric = symmetric;
+    }
+
+    void check(String token) {
+        if(token.length() > maxTokenLength) {
+            throw new MalformedJwtException("JWT token is longer than " + maxTokenLength + " characters.");
+        }
+
+        final int headerEnd = token.indexOf('.');
+        final int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+
+        if(headerEnd <= 0 || payloadEnd <= headerEnd + 1 || payloadEnd == token.length() - 1
+            || token.indexOf('.', payloadEnd + 1) >= 0) {
+            throw new MalformedJwtException("JWT token must have header, payload and signature.");
+        }
+
+        final Object[] header = readFields(token, 0, headerEnd, ALGORITHM, COMPRESSION);
+
+        checkAlgorithm(header[0]);
+
+        if(header[1] == null) checkExpiration(readFields(token, headerEnd + 1, payloadEnd, EXPIRATION)[0]);
+    }
+
+    private void checkAlgorithm(Object algorithm) {
+        if(!(algorithm instanceof String) || NONE.equalsIgnoreCase((String) algorithm)) {
+            throw new UnsupportedJwtException("JWT token is not signed.");
+        }
+
+        if(((String) algorithm).startsWith(HMAC_PREFIX) != symmetric) {
+            throw new UnsupportedJwtException("JWT algorithm " + algorithm + " is not accepted.");
+        }
+    }
+
+    private static void checkExpiration(Object expiration) {
+        if(expiration instanceof Number) {
+            final long expirationMillis = ((Number) expiration).longValue() * 1000;
+
+            if(System.currentTimeMillis() > expirationMillis) {
+                throw new ExpiredJwtException(null, null, "JWT expired at " + new Date(expirationMillis) + ".");
+            }
+        }
+    }
+
+    /**
+     * Read top level scalar fields of the base64url encoded JSON object without decoding the other fields.
+     * Compressed payloads are not read.
+     */
+    private static Object[] readFields(String token, int start, int end, String... names) {
+        final byte[] json;
+
+        try {
+            json = Base64.getUrlDecoder().decode(token.substring(start, end));
+        } catch(IllegalArgumentException e) {
+            throw new MalformedJwtException("JWT token is not base64url encoded.", e);
+        }
+
+        try(JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new MalformedJwtException("JWT is not a JSON object.");
+            }
+
+            final Object[] values = new Object[names.length];
+            JsonToken next;
+
+            while((next = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                final int index = indexOf(names, parser.getCurrentName());
+                final JsonToken value = parser.nextToken();
+
+                if(index >= 0 && value == JsonToken.VALUE_STRING) {
+                    values[index] = parser.getText();
+                } else if(index >= 0 && value.isNumeric()) {
+                    values[index] = parser.getNumberValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if(next != JsonToken.END_OBJECT) throw new MalformedJwtException("JWT is not a JSON object.");
+
+            return values;
+        } catch(IOException e) {
+            throw new MalformedJwtException("JWT is not a JSON object.", e);
+        }
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for(int i = 0; i < names.length; i++) {
+            if(names[i].equals(name)) return i;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.majusko.grpc.jwt.service;
+
+import io.github.majusko.grpc.jwt.data.JwtContextData;
+import io.github.majusko.grpc.jwt.exception.UnauthenticatedException;
+
+/**
+ * Resolves tokens which are not JWTs signed by the keys of {@link JwtService}, e.g. opaque reference tokens of
+ * an identity provider. Beans of this type are asked in order for every token of the {@code Authorization}
+ * header, tokens which none of them supports are verified as JWTs.
+ */
+public interface TokenResolver {
+
+    /**
+     * Called on the gRPC thread, so it should only look at the shape of the token.
+     * @param token Token without the {@code Bearer} prefix.
+     * @return True when the token is resolved by this resolver instead of the JWT verification.
+     */
+    boolean supports(String token);
+
+    /**
+     * @param token Token without the {@code Bearer} prefix.
+     * @return Context data of the call.
+     * @throws UnauthenticatedException when the token is not valid or can not be resolved.
+     */
+    JwtContextData resolve(String token);
+}
@@ -0,0 +1,292 @@
+package io.github.majusko.grpc.jwt.service;
+
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.github.majusko.grpc.jwt.service.dto.JwtMetadata;
+import io.jsonwebtoken.Claims;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * HMAC token of one {@link JwtMetadata} precompiled up to the claims which differ per token. The header and the
+ * {@code token_env} claim are Base64URL encoded once. The static part of the payload is padded by whitespace to a
+ * multiple of three bytes, so its encoding stays valid in front of the encoded {@code jwt_roles}, {@code sub},
+ * {@code jti}, {@code iat} and {@code exp} claims written per token. Every thread reuses its own buffers, a buffer
+ * grown above {@code MAX_RETAINED_CAPACITY} by an unusually large token is dropped after use.
+ */
+class TokenTemplate {
+
+    private static final byte[] BASE64_URL =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int CLAIMS_CAPACITY = 256;
+    private static final int TOKEN_CAPACITY = 512;
+    private static final int MAX_RETAINED_CAPACITY = 8192;
+
+    private final byte[] prefix;
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * @param encodedHeader Base64URL encoded header of the tokens.
+     * @param env Value of the {@code token_env} claim.
+     */
+    TokenTemplate(String encodedHeader, Iterable<String> env) {
+        final Buffer staticClaims = new Buffer(CLAIMS_CAPACITY);
+
+        staticClaims.append('{');
+        staticClaims.appendArrayField(JwtService.TOKEN_ENV, env);
+        staticClaims.append(',');
+
+        while(staticClaims.length % 3 != 0) staticClaims.append(' ');
+
+        final Buffer encoded = new Buffer(TOKEN_CAPACITY);
+
+        encoded.appendAscii(encodedHeader);
+        encoded.append('.');
+        encoded.appendBase64(staticClaims.bytes, staticClaims.length);
+
+        this.prefix = Arrays.copyOf(encoded.bytes, encoded.length);
+    }
+
+    /**
+     * @param mac Initialized HMAC of the calling thread.
+     * @param data Subject and roles of the token.
+     * @param issuedAtSec Issued at time in epoch seconds.
+     * @param expirationSec Expiration time in epoch seconds.
+     * @return Signed compact token.
+     */
+    String issue(Mac mac, JwtData data, long issuedAtSec, long expirationSec) {
+        final Buffers buffers = this.buffers.get();
+        final Buffer claims = buffers.claims.reset();
+
+        claims.appendArrayField(JwtService.JWT_ROLES, data.getRoles());
+
+        if(data.getUserId() != null) {
+            claims.append(',');
+            claims.appendStringField(Claims.SUBJECT, data.getUserId());
+        }
+
+        TokenIssuer.nextTokenId(buffers.tokenId);
+        claims.append(',');
+        claims.appendName(Claims.ID);
+        claims.append('"');
+        claims.appendBase64(buffers.tokenId, buffers.tokenId.length);
+        claims.append('"');
+        claims.append(',');
+        claims.appendLongField(Claims.ISSUED_AT, issuedAtSec);
+        claims.append(',');
+        claims.appendLongField(Claims.EXPIRATION, expirationSec);
+        claims.append('}');
+
+        final Buffer token = buffers.token.reset();
+
+        token.append(prefix);
+        token.appendBase64(claims.bytes, claims.length);
+        mac.update(token.bytes, 0, token.length);
+
+        if(buffers.signature.length != mac.getMacLength()) buffers.signature = new byte[mac.getMacLength()];
+
+        try {
+            mac.doFinal(buffers.signature, 0);
+        } catch(ShortBufferException e) {
+            throw new IllegalStateException("Signature buffer is too small.", e);
+        }
+
+        token.append('.');
+        token.appendBase64(buffers.signature, buffers.signature.length);
+
+        final String compact = new String(token.bytes, 0, token.length, StandardCharsets.US_ASCII);
+
+        claims.shrink(CLAIMS_CAPACITY);
+        token.shrink(TOKEN_CAPACITY);
+
+        return compact;
+    }
+
+    private static final class Buffers {
+        private final Buffer claims = new Buffer(CLAIMS_CAPACITY);
+        private final Buffer token = new Buffer(TOKEN_CAPACITY);
+        private final byte[] tokenId = new byte[TokenIssuer.TOKEN_ID_BYTES];
+        private byte[] signature = new byte[0];
+    }
+
+    /**
+     * Growable byte array writing JSON in UTF-8 and Base64URL without padding.
+     */
+    private static final class Buffer {
+        private byte[] bytes;
+        private int length;
+
+        private Buffer(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private Buffer reset() {
+            length = 0;
+            return this;
+        }
+
+        /**
+         * Drop the array when it grew above {@code MAX_RETAINED_CAPACITY}, so a thread does not keep it forever.
+         */
+        private void shrink(int capacity) {
+            if(bytes.length > MAX_RETAINED_CAPACITY) bytes = new byte[capacity];
+        }
+
+        private void append(char c) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) c;
+        }
+
+        private void append(byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, length, value.length);
+            length += value.length;
+        }
+
+        private void appendAscii(String value) {
+            ensureCapacity(value.length());
+
+            for(int i = 0; i < value.length(); i++) {
+                bytes[length++] = (byte) value.charAt(i);
+            }
+        }
+
+        private void appendName(String name) {
+            appendString(name);
+            append(':');
+        }
+
+        private void appendStringField(String name, String value) {
+            appendName(name);
+            appendString(value);
+        }
+
+        private void appendLongField(String name, long value) {
+            appendName(name);
+            appendLong(value);
+        }
+
+        private void appendArrayField(String name, Iterable<String> values) {
+            appendName(name);
+            append('[');
+
+            boolean first = true;
+
+            for(String value : values) {
+                if(!first) append(',');
+
+                appendString(value);
+                first = false;
+            }
+
+            append(']');
+        }
+
+        private void appendLong(long value) {
+            if(value < 0) {
+                append('-');
+                value = -value;
+            }
+
+            final int start = length;
+
+            do {
+                append((char) ('0' + value % 10));
+                value /= 10;
+            } while(value > 0);
+
+            for(int left = start, right = length - 1; left < right; left++, right--) {
+                final byte digit = bytes[left];
+                bytes[left] = bytes[right];
+                bytes[right] = digit;
+            }
+        }
+
+        private void appendString(String value) {
+            append('"');
+
+            for(int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+
+                if(c == '"' || c == '\\') {
+                    append('\\');
+                    append(c);
+                } else if(c < 0x20) {
+                    appendControl(c);
+                } else if(c < 0x80) {
+                    append(c);
+                } else {
+                    final int codePoint = Character.codePointAt(value, i);
+
+                    if(Character.isSupplementaryCodePoint(codePoint)) i++;
+
+                    appendUtf8(Character.isSurrogate(c) && codePoint == c ? '?' : codePoint);
+                }
+            }
+
+            append('"');
+        }
+
+        private void appendControl(char c) {
+            ensureCapacity(6);
+            bytes[length++] = '\\';
+            bytes[length++] = 'u';
+            bytes[length++] = '0';
+            bytes[length++] = '0';
+            bytes[length++] = HEX[c >> 4];
+            bytes[length++] = HEX[c & 0xF];
+        }
+
+        private void appendUtf8(int codePoint) {
+            ensureCapacity(4);
+
+            if(codePoint < 0x80) {
+                bytes[length++] = (byte) codePoint;
+            } else if(codePoint < 0x800) {
+                bytes[length++] = (byte) (0xC0 | codePoint >> 6);
+                bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if(codePoint < 0x10000) {
+                bytes[length++] = (byte) (0xE0 | codePoint >> 12);
+                bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+            }
+        }
+
+        private void appendBase64(byte[] source, int sourceLength) {
+            ensureCapacity((sourceLength + 2) / 3 * 4);
+
+            int i = 0;
+
+            for(; i + 2 < sourceLength; i += 3) {
+                final int bits = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8 | source[i + 2] & 0xFF;
+
+                bytes[length++] = BASE64_URL[bits >>> 18];
+                bytes[length++] = BASE64_URL[bits >>> 12 & 0x3F];
+                bytes[length++] = BASE64_URL[bits >>> 6 & 0x3F];
+                bytes[length++] = BASE64_URL[bits & 0x3F];
+            }
+
+            if(i < sourceLength) {
+                final int bits = (source[i] & 0xFF) << 16 | (i + 1 < sourceLength ? (source[i + 1] & 0xFF) << 8 : 0);
+
+                bytes[length++] = BASE64_URL[bits >>> 18];
+                bytes[length++] = BASE64_URL[bits >>> 12 & 0x3F];
+                if(i + 1 < sourceLength) bytes[length++] = BASE64_URL[bits >>> 6 & 0x3F];
+            }
+        }
+
+        private void ensureCapacity(int additional) {
+            if(length + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + additional));
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.majusko.grpc.jwt.service;
+
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
+import io.jsonwebtoken.JwtException;
+
+/**
+ * Verifies signature, expiration and structure of raw JWT tokens.
+ */
+interface TokenVerifier {
+
+    /**
+     * @param token Raw JWT token.
+     * @return Fields of the verified token.
+     * @throws JwtException when the token is invalid, expired or signed by an unknown key.
+     */
+    VerifiedToken verify(String token);
+}
@@ -0,0 +1,141 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.MapMaker;
+import io.github.majusko.grpc.jwt.data.JwtContextData;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of already verified tokens. Entries expire together with the token and are used only with the
+ * verification keys they were verified with. The whole cache is flushed as soon as new verification keys are
+ * presented, keys which were replaced before are never taken back.
+ */
+public class VerifiedTokenCache {
+
+    private final boolean enabled;
+    private final Cache<String, Entry> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final Set<Object> retiredKeys = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+
+    private volatile Object keys;
+
+    public VerifiedTokenCache(boolean enabled, long maxSize) {
+        this.enabled = enabled && maxSize > 0;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(Math.max(maxSize, 0))
+            .removalListener(this::onRemoval)
+            .build();
+    }
+
+    /**
+     * Get verified context data of the token or verify it with the given verifier and remember the result.
+     * @param token Raw JWT token.
+     * @param keys Key or key table the token is verified with. Cache is flushed when it is a new instance, results
+     *             of keys replaced before are neither used nor cached.
+     * @param verifier Function verifying the token. Thrown exceptions are propagated and nothing is cached.
+     * @return Verified context data of the token.
+     */
+    public JwtContextData get(String token, Object keys, Function<String, JwtContextData> verifier) {
+        if(!enabled) return verifier.apply(token);
+
+        if(this.keys != keys) flush(keys);
+
+        final Entry entry = cache.getIfPresent(token);
+
+        if(isValid(entry, keys)) {
+            hits.increment();
+            return entry.data;
+        }
+
+        misses.increment();
+
+        final JwtContextData data = verifier.apply(token);
+        final Date expiration = data.getExpiration();
+
+        if(expiration != null && this.keys == keys) cache.put(token, new Entry(data, keys, expiration.getTime()));
+
+        return data;
+    }
+
+    /**
+     * Get verified context data of the token without verifying it.
+     * @param token Raw JWT token.
+     * @param keys Key or key table the token is verified with.
+     * @return Verified context data or null when the token is not cached.
+     */
+    public JwtContextData getIfPresent(String token, Object keys) {
+        if(!enabled || this.keys != keys) return null;
+
+        final Entry entry = cache.getIfPresent(token);
+
+        if(isValid(entry, keys)) {
+            hits.increment();
+            return entry.data;
+        }
+
+        return null;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private synchronized void flush(Object newKeys) {
+        if(this.keys == newKeys || retiredKeys.contains(newKeys)) return;
+
+        if(this.keys != null) retiredKeys.add(this.keys);
+
+        this.keys = newKeys;
+        cache.invalidateAll();
+    }
+
+    private static boolean isValid(Entry entry, Object keys) {
+        return entry != null && entry.keys == keys && entry.expiresAt > System.currentTimeMillis();
+    }
+
+    private void onRemoval(RemovalNotification<String, Entry> notification) {
+        if(notification.wasEvicted()) evictions.increment();
+    }
+
+    private static class Entry {
+        private final JwtContextData data;
+        private final Object keys;
+        private final long expiresAt;
+
+        private Entry(JwtContextData data, Object keys, long expiresAt) {
+            this.data = data;
+            this.keys = keys;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
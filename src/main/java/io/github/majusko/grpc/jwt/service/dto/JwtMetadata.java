@@ -1,26 +1,37 @@
 package io.github.majusko.grpc.jwt.service.dto;
 
+import io.jsonwebtoken.SignatureAlgorithm;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 
-import javax.crypto.SecretKey;
+import java.security.Key;
 import java.util.List;
 
 @Builder
 @AllArgsConstructor
 public class JwtMetadata {
     private Long expirationSec;
-    private SecretKey key;
+    private Key key;
+    private String keyId;
+    private SignatureAlgorithm signatureAlgorithm;
     private List<String> env;
 
     public Long getExpirationSec() {
         return expirationSec;
     }
 
-    public SecretKey getKey() {
+    public Key getKey() {
         return key;
     }
 
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public SignatureAlgorithm getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
     public List<String> getEnv() {
         return env;
     }
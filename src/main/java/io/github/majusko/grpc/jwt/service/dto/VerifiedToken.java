@@ -0,0 +1,80 @@
+package io.github.majusko.grpc.jwt.service.dto;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.List;
+
+/**
+ * Fields of a verified token needed for authorization. Claims are present only when the token was verified
+ * by jjwt, tokens verified by the built-in HMAC verifier keep just the raw token.
+ */
+public class VerifiedToken {
+    private final String token;
+    private final String subject;
+    private final String tokenId;
+    private final List<String> roles;
+    private final List<String> environments;
+    private final long expiration;
+    private final Claims claims;
+
+    public VerifiedToken(
+        String token,
+        String subject,
+        String tokenId,
+        List<String> roles,
+        List<String> environments,
+        long expiration,
+        Claims claims
+    ) {
+        this.token = token;
+        this.subject = subject;
+        this.tokenId = tokenId;
+        this.roles = roles;
+        this.environments = environments;
+        this.expiration = expiration;
+        this.claims = claims;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * @return Value of the {@code jti} claim or null when the token does not have any.
+     */
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    /**
+     * @return Roles of the token or null when the token does not have any.
+     */
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return Active profiles of the issuing service or null when the token does not have any.
+     */
+    public List<String> getEnvironments() {
+        return environments;
+    }
+
+    /**
+     * @return Expiration in epoch millis or 0 when the token does not expire.
+     */
+    public long getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * @return Verified claims or null when the token was not verified by jjwt.
+     */
+    public Claims getClaims() {
+        return claims;
+    }
+}
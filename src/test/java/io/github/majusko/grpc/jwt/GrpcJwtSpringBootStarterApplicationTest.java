@@ -4,16 +4,25 @@ import com.google.common.collect.Sets;
 import com.google.protobuf.Empty;
 import io.github.majusko.grpc.jwt.annotation.Allow;
 import io.github.majusko.grpc.jwt.annotation.Exposed;
+import io.github.majusko.grpc.jwt.audit.AuditLog;
+import io.github.majusko.grpc.jwt.audit.AuditRecord;
 import io.github.majusko.grpc.jwt.data.GrpcHeader;
 import io.github.majusko.grpc.jwt.data.GrpcJwtContext;
 import io.github.majusko.grpc.jwt.data.JwtContextData;
+import io.github.majusko.grpc.jwt.exception.UnauthenticatedException;
 import io.github.majusko.grpc.jwt.interceptor.AllowedCollector;
 import io.github.majusko.grpc.jwt.interceptor.AuthClientInterceptor;
 import io.github.majusko.grpc.jwt.interceptor.AuthServerInterceptor;
 import io.github.majusko.grpc.jwt.interceptor.proto.Example;
 import io.github.majusko.grpc.jwt.interceptor.proto.ExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.interceptor.proto.SecondExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.metrics.AuthMetrics;
+import io.github.majusko.grpc.jwt.metrics.AuthOutcome;
+import io.github.majusko.grpc.jwt.metrics.MicrometerAuthMetrics;
 import io.github.majusko.grpc.jwt.service.GrpcRole;
 import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.TokenResolver;
+import io.github.majusko.grpc.jwt.service.VerifiedTokenCache;
 import io.github.majusko.grpc.jwt.service.dto.JwtData;
 import io.grpc.*;
 import io.grpc.inprocess.InProcessChannelBuilder;
@@ -21,19 +30,31 @@ import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.MetadataUtils;
 import io.grpc.stub.StreamObserver;
 import io.grpc.testing.GrpcCleanupRule;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Rule;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.lognet.springboot.grpc.GRpcService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.env.Environment;
 import org.springframework.test.context.ActiveProfiles;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -248,16 +269,49 @@ public class GrpcJwtSpringBootStarterApplicationTest {
     }
 
     @Test
-    public void testNonExistingFieldInPayload() throws IOException {
+    public void testNonExistingOwnerFieldFailsOnStartup() {
+
+        @GRpcService
+        class InvalidOwnerFieldService extends ExampleServiceGrpc.ExampleServiceImplBase {
+
+            @Override
+            @Allow(ownerField = "nonExistingField")
+            public void getExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+                response.onCompleted();
+            }
+        }
+
+        final AllowedCollector collector = new AllowedCollector(environment, new GrpcJwtProperties());
+
+        Assertions.assertThrows(IllegalStateException.class,
+            () -> collector.postProcessBeforeInitialization(new InvalidOwnerFieldService(), "invalidService"));
+    }
+
+    @Test
+    public void testNestedOwnerField() throws IOException {
+        final String ownerUserId = "nested-owner-id";
+        final String token = jwtService.generate(new JwtData(ownerUserId, "non-existing-role"));
+
         final ManagedChannel channel = initTestServer(new ExampleService());
-        final Channel interceptedChannel = ClientInterceptors.intercept(channel, authClientInterceptor);
-        final ExampleServiceGrpc.ExampleServiceBlockingStub stub =
-            ExampleServiceGrpc.newBlockingStub(interceptedChannel);
+        final ExampleServiceGrpc.ExampleServiceBlockingStub stub = ExampleServiceGrpc.newBlockingStub(channel);
+
+        final Metadata header = new Metadata();
+        header.put(GrpcHeader.AUTHORIZATION, token);
+
+        final ExampleServiceGrpc.ExampleServiceBlockingStub injectedStub = MetadataUtils.attachHeaders(stub, header);
+        final Example.NestedExampleRequest ownedRequest = Example.NestedExampleRequest.newBuilder()
+            .setOrder(Example.Order.newBuilder().setCustomer(Example.Customer.newBuilder().setId(ownerUserId)))
+            .build();
+        final Example.NestedExampleRequest foreignRequest = Example.NestedExampleRequest.newBuilder()
+            .setOrder(Example.Order.newBuilder().setCustomer(Example.Customer.newBuilder().setId("other-user-id")))
+            .build();
+
+        Assertions.assertNotNull(injectedStub.getNestedExample(ownedRequest));
 
         Status status = Status.OK;
 
         try {
-            final Empty ignored = stub.saveExample(Empty.getDefaultInstance());
+            final Empty ignored = injectedStub.getNestedExample(foreignRequest);
         } catch (StatusRuntimeException e) {
             status = e.getStatus();
         }
@@ -265,6 +319,43 @@ public class GrpcJwtSpringBootStarterApplicationTest {
         Assertions.assertEquals(Status.PERMISSION_DENIED.getCode(), status.getCode());
     }
 
+    @Test
+    public void testRepeatedOwnerField() throws IOException {
+        final String ownerUserId = "co-owner-id";
+        final String token = jwtService.generate(new JwtData(ownerUserId, "non-existing-role"));
+
+        final ManagedChannel channel = initTestServer(new ExampleService());
+        final ExampleServiceGrpc.ExampleServiceBlockingStub stub = ExampleServiceGrpc.newBlockingStub(channel);
+
+        final Metadata header = new Metadata();
+        header.put(GrpcHeader.AUTHORIZATION, token);
+
+        final ExampleServiceGrpc.ExampleServiceBlockingStub injectedStub = MetadataUtils.attachHeaders(stub, header);
+        final Example.NestedExampleRequest request = Example.NestedExampleRequest.newBuilder()
+            .setOrder(Example.Order.newBuilder()
+                .addCoOwners(Example.Customer.newBuilder().setId(ownerUserId))
+                .addCoOwners(Example.Customer.newBuilder().setId(ownerUserId)))
+            .build();
+        final Example.NestedExampleRequest mixedRequest = Example.NestedExampleRequest.newBuilder()
+            .setOrder(Example.Order.newBuilder()
+                .addCoOwners(Example.Customer.newBuilder().setId("victim-user-id"))
+                .addCoOwners(Example.Customer.newBuilder().setId(ownerUserId)))
+            .build();
+        final Example.NestedExampleRequest emptyRequest = Example.NestedExampleRequest.newBuilder()
+            .setOrder(Example.Order.getDefaultInstance())
+            .build();
+
+        Assertions.assertNotNull(injectedStub.listNestedExample(request));
+
+        final StatusRuntimeException mixed = Assertions.assertThrows(StatusRuntimeException.class,
+            () -> injectedStub.listNestedExample(mixedRequest));
+        final StatusRuntimeException empty = Assertions.assertThrows(StatusRuntimeException.class,
+            () -> injectedStub.listNestedExample(emptyRequest));
+
+        Assertions.assertEquals(Status.Code.PERMISSION_DENIED, mixed.getStatus().getCode());
+        Assertions.assertEquals(Status.Code.PERMISSION_DENIED, empty.getStatus().getCode());
+    }
+
     @Test
     public void testDiffUserIdAndNonExistingRole() throws IOException {
         final ManagedChannel channel = initTestServer(new ExampleService());
@@ -422,16 +513,554 @@ public class GrpcJwtSpringBootStarterApplicationTest {
         Assertions.assertNotNull(response);
     }
 
-    private ManagedChannel initTestServer(BindableService service) throws IOException {
+    @Test
+    public void testPoliciesOfAllServicesAreMerged() throws IOException {
+        final ManagedChannel channel = initTestServer(new ExampleService(), new SecondExampleService());
+        final ExampleServiceGrpc.ExampleServiceBlockingStub stub = ExampleServiceGrpc.newBlockingStub(channel);
+        final SecondExampleServiceGrpc.SecondExampleServiceBlockingStub secondStub =
+            SecondExampleServiceGrpc.newBlockingStub(channel);
+
+        Status status = Status.OK;
+        Status secondStatus = Status.OK;
+
+        try {
+            final Empty ignored = stub.someAction(Example.GetExampleRequest.newBuilder().build());
+        } catch (StatusRuntimeException e) {
+            status = e.getStatus();
+        }
+
+        try {
+            final Empty ignored = secondStub.getSecondExample(Example.GetExampleRequest.newBuilder().build());
+        } catch (StatusRuntimeException e) {
+            secondStatus = e.getStatus();
+        }
+
+        Assertions.assertEquals(Status.PERMISSION_DENIED.getCode(), status.getCode());
+        Assertions.assertEquals(Status.PERMISSION_DENIED.getCode(), secondStatus.getCode());
+    }
+
+    @Test
+    public void testVerifiedTokenCacheHitsAndKeyFlush() {
+        final VerifiedTokenCache cache = new VerifiedTokenCache(true, 10);
+        final String token = jwtService.generate(new JwtData("cached-user", ExampleService.ADMIN));
+        final AtomicInteger verifications = new AtomicInteger();
+        final Function<String, JwtContextData> verifier = raw -> {
+            verifications.incrementAndGet();
+            final Claims claims = Jwts.parserBuilder().setSigningKey(jwtService.getKey()).build()
+                .parseClaimsJws(raw).getBody();
+            return new JwtContextData(raw, claims.getSubject(), Sets.newHashSet(), claims);
+        };
+
+        final JwtContextData first = cache.get(token, jwtService.getKey(), verifier);
+        final JwtContextData second = cache.get(token, jwtService.getKey(), verifier);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, verifications.get());
+        Assertions.assertEquals(1, cache.getHitCount());
+        Assertions.assertEquals(1, cache.getMissCount());
+
+        final SecretKey rotatedKey = new SecretKeySpec(jwtService.getKey().getEncoded(), "HmacSHA256");
+        cache.get(token, rotatedKey, verifier);
+
+        Assertions.assertEquals(2, verifications.get());
+        Assertions.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testVerifiedTokenCacheNeverReturnsToReplacedKeys() {
+        final VerifiedTokenCache cache = new VerifiedTokenCache(true, 10);
+        final String token = jwtService.generate(new JwtData("cached-user", ExampleService.ADMIN));
+        final AtomicInteger verifications = new AtomicInteger();
+        final Function<String, JwtContextData> verifier = raw -> {
+            verifications.incrementAndGet();
+            final Claims claims = Jwts.parserBuilder().setSigningKey(jwtService.getKey()).build()
+                .parseClaimsJws(raw).getBody();
+            return new JwtContextData(raw, claims.getSubject(), Sets.newHashSet(), claims);
+        };
+        final SecretKey rotatedKey = new SecretKeySpec(jwtService.getKey().getEncoded(), "HmacSHA256");
+
+        cache.get(token, jwtService.getKey(), verifier);
+        final JwtContextData rotated = cache.get(token, rotatedKey, verifier);
+
+        Assertions.assertNull(cache.getIfPresent(token, jwtService.getKey()));
+        Assertions.assertNotSame(rotated, cache.get(token, jwtService.getKey(), verifier));
+        Assertions.assertSame(rotated, cache.getIfPresent(token, rotatedKey));
+        Assertions.assertSame(rotated, cache.get(token, rotatedKey, verifier));
+        Assertions.assertEquals(3, verifications.get());
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testVerifiedTokenCacheEviction() {
+        final VerifiedTokenCache cache = new VerifiedTokenCache(true, 1);
+        final Function<String, JwtContextData> verifier = raw -> {
+            final Claims claims = Jwts.parserBuilder().setSigningKey(jwtService.getKey()).build()
+                .parseClaimsJws(raw).getBody();
+            return new JwtContextData(raw, claims.getSubject(), Sets.newHashSet(), claims);
+        };
+
+        cache.get(jwtService.generate(new JwtData("first-user", ExampleService.ADMIN)), jwtService.getKey(), verifier);
+        cache.get(jwtService.generate(new JwtData("second-user", ExampleService.ADMIN)), jwtService.getKey(), verifier);
+
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testAuthMetrics() throws IOException {
+
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final AuthMetrics authMetrics = new MicrometerAuthMetrics(registry, jwtService, 500);
+        final AuthServerInterceptor interceptor = new AuthServerInterceptor(
+            allowedCollector, jwtService, new VerifiedTokenCache(false, 10), authMetrics,
+            new GrpcJwtProperties()
+        );
+        final ManagedChannel channel = initTestServer(interceptor, new ExampleService());
+        final ExampleServiceGrpc.ExampleServiceBlockingStub internalStub = ExampleServiceGrpc.newBlockingStub(
+            ClientInterceptors.intercept(channel, new AuthClientInterceptor(jwtService, authMetrics)));
+        final Metadata header = new Metadata();
+        header.put(GrpcHeader.AUTHORIZATION, jwtService.generate(new JwtData("some-user-id", "non-existing-role")));
+        final ExampleServiceGrpc.ExampleServiceBlockingStub userStub =
+            MetadataUtils.attachHeaders(ExampleServiceGrpc.newBlockingStub(channel), header);
+        final String method = ExampleServiceGrpc.METHOD_GET_EXAMPLE.getFullMethodName();
+
+        internalStub.getExample(Example.GetExampleRequest.newBuilder().build());
+        Assertions.assertThrows(StatusRuntimeException.class,
+            () -> userStub.getExample(Example.GetExampleRequest.newBuilder().build()));
+
+        Assertions.assertEquals(1, registry.get(MicrometerAuthMetrics.CALLS)
+            .tags("method", method, "outcome", AuthOutcome.SUCCESS.name()).counter().count());
+        Assertions.assertEquals(1, registry.get(MicrometerAuthMetrics.CALLS)
+            .tags("method", method, "outcome", AuthOutcome.PERMISSION_DENIED.name()).counter().count());
+        Assertions.assertEquals(1, registry.get(MicrometerAuthMetrics.CLIENT_CALLS)
+            .tags("method", method, "outcome", AuthOutcome.SUCCESS.name()).counter().count());
+        Assertions.assertEquals(2, registry.get(MicrometerAuthMetrics.VERIFICATION)
+            .tags("method", method).timer().count());
+        Assertions.assertEquals(2, registry.get(MicrometerAuthMetrics.EVALUATION)
+            .tags("method", method).timer().count());
+        Assertions.assertTrue(registry.get(MicrometerAuthMetrics.INTERNAL_TOKEN_AGE).gauge().value() >= 0);
+        Assertions.assertTrue(registry.get(MicrometerAuthMetrics.INTERNAL_TOKEN_REFRESHES)
+            .functionCounter().count() >= 1);
+    }
+
+    @Test
+    public void testAuthMetricsMethodLimit() {
+
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final AuthMetrics authMetrics = new MicrometerAuthMetrics(registry, jwtService, 1);
+
+        Assertions.assertSame(authMetrics.forMethod("first/Method"), authMetrics.forMethod("first/Method"));
+        Assertions.assertSame(authMetrics.forMethod("second/Method"), authMetrics.forMethod("third/Method"));
+        Assertions.assertNotSame(authMetrics.forMethod("first/Method"), authMetrics.forMethod("second/Method"));
+    }
+
+    @Test
+    public void testAuthMetricsRegisterProtectedMethods() {
+
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final AuthMetrics authMetrics = new MicrometerAuthMetrics(registry, jwtService, 1);
+        final AuthServerInterceptor interceptor = new AuthServerInterceptor(
+            allowedCollector, jwtService, new VerifiedTokenCache(false, 10), authMetrics,
+            new GrpcJwtProperties()
+        );
+        final String method = ExampleServiceGrpc.METHOD_GET_EXAMPLE.getFullMethodName();
+
+        allowedCollector.postProcessBeforeInitialization(new ExampleService(), ExampleService.class.getSimpleName());
+        authMetrics.forMethod("client/Method");
+        interceptor.afterSingletonsInstantiated();
+
+        Assertions.assertNotNull(registry.find(MicrometerAuthMetrics.CALLS).tags("method", method).counter());
+        Assertions.assertSame(authMetrics.forMethod(method), authMetrics.forMethod(method));
+        Assertions.assertNotSame(authMetrics.forMethod(method), authMetrics.forMethod("unknown/Method"));
+        Assertions.assertSame(authMetrics.forMethod("unknown/Method"), authMetrics.forMethod("other/Method"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRoleOnlyMethodIsDeniedAtHeaderStage() {
+
+        allowedCollector.postProcessBeforeInitialization(new ExampleService(), ExampleService.class.getSimpleName());
+
+        final ServerCall<Example.GetExampleRequest, Empty> call = Mockito.mock(ServerCall.class);
+        final ServerCallHandler<Example.GetExampleRequest, Empty> next = Mockito.mock(ServerCallHandler.class);
+        final Metadata header = new Metadata();
+        header.put(GrpcHeader.AUTHORIZATION, jwtService.generate(new JwtData("some-user-id", "non-existing-role")));
+        Mockito.when(call.getMethodDescriptor()).thenReturn(ExampleServiceGrpc.METHOD_SOME_ACTION);
+
+        authServerInterceptor.interceptCall(call, header, next);
+
+        Mockito.verify(call).close(
+            Mockito.argThat(status -> status.getCode() == Status.Code.PERMISSION_DENIED), Mockito.any());
+        Mockito.verifyNoInteractions(next);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRoleOnlyMethodIsGrantedBeforeMessage() {
+
+        allowedCollector.postProcessBeforeInitialization(new ExampleService(), ExampleService.class.getSimpleName());
+
+        final ServerCall<Example.GetExampleRequest, Empty> call = Mockito.mock(ServerCall.class);
+        final ServerCall.Listener<Example.GetExampleRequest> listener = Mockito.mock(ServerCall.Listener.class);
+        final Metadata header = new Metadata();
+        header.put(GrpcHeader.AUTHORIZATION, jwtService.generate(new JwtData("some-user-id", ExampleService.ADMIN)));
+        Mockito.when(call.getMethodDescriptor()).thenReturn(ExampleServiceGrpc.METHOD_SOME_ACTION);
+
+        final ServerCall.Listener<Example.GetExampleRequest> result =
+            authServerInterceptor.interceptCall(call, header, (serverCall, headers) -> listener);
+
+        result.onReady();
+
+        Mockito.verify(listener).onReady();
+        Mockito.verify(call, Mockito.never()).close(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void testUnprotectedMethodDoesNotReadToken() throws IOException {
+
+        final ManagedChannel channel = initTestServer(new SecondExampleService());
+        final Metadata header = new Metadata();
+        header.put(GrpcHeader.AUTHORIZATION, jwtService.generate(new JwtData("unprotected-user", "user")));
+        final SecondExampleServiceGrpc.SecondExampleServiceBlockingStub stub =
+            MetadataUtils.attachHeaders(SecondExampleServiceGrpc.newBlockingStub(channel), header);
+
+        final Example.GetExampleRequest response = stub.pingSecondExample(Example.GetExampleRequest.getDefaultInstance());
+
+        Assertions.assertEquals("", response.getUserId());
+    }
+
+    @Test
+    public void testUnprotectedMethodVerifiesTokenLazily() throws IOException {
+
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setLazyContext(true);
+        final AuthServerInterceptor interceptor = new AuthServerInterceptor(
+            allowedCollector, jwtService, new VerifiedTokenCache(false, 10), AuthMetrics.NOOP, properties
+        );
+        final ManagedChannel channel = initTestServer(interceptor, new SecondExampleService());
+        final String token = jwtService.generate(new JwtData("lazy-user", "user"));
+
+        Assertions.assertEquals("lazy-user", pingSecondExample(channel, token).getUserId());
+        Assertions.assertEquals("", pingSecondExample(channel, "not-a-token").getUserId());
+    }
+
+    @Test
+    public void testRevokedTokenIsRejectedAfterCaching() throws IOException {
+
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setSecret("secret");
+        final JwtService service = new JwtService(environment, properties);
+        final AuthServerInterceptor interceptor = new AuthServerInterceptor(
+            allowedCollector, service, new VerifiedTokenCache(true, 10), AuthMetrics.NOOP, properties
+        );
+        final ManagedChannel channel = initTestServer(interceptor, new ExampleService());
+        final String token = service.generate(new JwtData("revoked-admin", ExampleService.ADMIN));
+        final Example.GetExampleRequest request = Example.GetExampleRequest.getDefaultInstance();
+
+        try {
+            Assertions.assertNotNull(exampleStub(channel, token).someAction(request));
+
+            service.getRevocationList().update(
+                Collections.singletonList(service.parseClaims(token).getId()), Collections.emptyList());
+
+            final StatusRuntimeException e = Assertions.assertThrows(StatusRuntimeException.class,
+                () -> exampleStub(channel, token).someAction(request));
+
+            Assertions.assertEquals(Status.UNAUTHENTICATED.getCode(), e.getStatus().getCode());
+            Assertions.assertNotNull(exampleStub(channel, service.generate(new JwtData("revoked-admin",
+                ExampleService.ADMIN))).someAction(request));
+
+            service.getRevocationList().update(Collections.emptyList(), Collections.singletonList("revoked-admin"));
+
+            Assertions.assertThrows(StatusRuntimeException.class, () -> exampleStub(channel, token).someAction(request));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncVerification() throws IOException {
+
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.getAsync().setEnabled(true);
+        properties.getAsync().setThreads(2);
+        final VerifiedTokenCache cache = new VerifiedTokenCache(true, 10);
+        final AuthServerInterceptor interceptor =
+            new AuthServerInterceptor(allowedCollector, jwtService, cache, AuthMetrics.NOOP, properties);
+        final List<String> startThreads = new CopyOnWriteArrayList<>();
+        final ServerInterceptor recordingInterceptor = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+                ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next
+            ) {
+                return interceptor.interceptCall(call, headers, (startedCall, startedHeaders) -> {
+                    startThreads.add(Thread.currentThread().getName());
+                    return next.startCall(startedCall, startedHeaders);
+                });
+            }
+        };
+        final ManagedChannel channel = initTestServer(recordingInterceptor, new ExampleService());
+        final String adminToken = jwtService.generate(new JwtData("async-admin", ExampleService.ADMIN));
+        final String userToken = jwtService.generate(new JwtData("async-user", "user"));
+
+        try {
+            final Example.GetExampleRequest request = Example.GetExampleRequest.getDefaultInstance();
+
+            Assertions.assertNotNull(exampleStub(channel, adminToken).someAction(request));
+            Assertions.assertNotNull(exampleStub(channel, adminToken).getExample(request));
+            Assertions.assertNotNull(exampleStub(channel, userToken)
+                .getExample(Example.GetExampleRequest.newBuilder().setUserId("async-user").build()));
+            Assertions.assertEquals(1, cache.getHitCount());
+
+            final StatusRuntimeException denied = Assertions.assertThrows(StatusRuntimeException.class,
+                () -> exampleStub(channel, userToken).someAction(request));
+            final StatusRuntimeException unauthenticated = Assertions.assertThrows(StatusRuntimeException.class,
+                () -> exampleStub(channel, "not-a-token").someAction(request));
+
+            Assertions.assertEquals(Status.Code.PERMISSION_DENIED, denied.getStatus().getCode());
+            Assertions.assertEquals(Status.Code.UNAUTHENTICATED, unauthenticated.getStatus().getCode());
+            Assertions.assertFalse(startThreads.isEmpty());
+            Assertions.assertTrue(startThreads.stream().noneMatch(name -> name.startsWith("grpc-jwt-verifier-")),
+                "Application listener created on a verifier thread: " + startThreads);
+        } finally {
+            interceptor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompactInternalToken() throws IOException {
+
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setSecret("secret");
+        properties.getCompact().setEnabled(true);
+        final JwtService compactService = new JwtService(environment, properties);
+        properties.getCompact().setDictionary(Collections.singletonList(GrpcRole.INTERNAL));
+        final JwtService otherDictionaryService = new JwtService(environment, properties);
+        final ManagedChannel channel = initTestServer(new ExampleService());
+        final Example.GetExampleRequest request = Example.GetExampleRequest.getDefaultInstance();
+
+        final AtomicReference<Metadata> sentHeaders = new AtomicReference<>();
+        final ClientInterceptor recorder = new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+                MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next
+            ) {
+                return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(
+                    next.newCall(method, callOptions)) {
+                    @Override
+                    public void start(Listener<RespT> responseListener, Metadata headers) {
+                        sentHeaders.set(headers);
+                        super.start(responseListener, headers);
+                    }
+                };
+            }
+        };
+
+        try {
+            final Metadata header = new Metadata();
+            final ExampleServiceGrpc.ExampleServiceBlockingStub stub = ExampleServiceGrpc.newBlockingStub(
+                ClientInterceptors.intercept(channel, recorder, new AuthClientInterceptor(compactService)));
+
+            Assertions.assertNotNull(stub.getExample(request));
+            Assertions.assertTrue(sentHeaders.get().containsKey(GrpcHeader.AUTHORIZATION_BIN));
+            Assertions.assertFalse(sentHeaders.get().containsKey(GrpcHeader.AUTHORIZATION));
+
+            header.put(GrpcHeader.AUTHORIZATION_BIN, otherDictionaryService.getInternalCompact());
+            final StatusRuntimeException exception = Assertions.assertThrows(StatusRuntimeException.class,
+                () -> MetadataUtils.attachHeaders(ExampleServiceGrpc.newBlockingStub(channel), header)
+                    .getExample(request));
+
+            Assertions.assertEquals(Status.Code.UNAUTHENTICATED, exception.getStatus().getCode());
+        } finally {
+            compactService.shutdown();
+            otherDictionaryService.shutdown();
+        }
+    }
+
+    @Test
+    public void testAllowExpression() throws IOException {
+
+        @GRpcService
+        class ExpressionService extends ExampleServiceGrpc.ExampleServiceImplBase {
+
+            @Override
+            @Allow(expression = "request.userId == claim.sub || 'admin' in claim.jwt_roles")
+            public void getExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+                response.onNext(Empty.getDefaultInstance());
+                response.onCompleted();
+            }
+
+            @Override
+            @Allow(roles = {ExampleService.ADMIN}, expression = "claim.sub in ['alice', 'bob']")
+            public void someAction(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+                response.onNext(Empty.getDefaultInstance());
+                response.onCompleted();
+            }
+        }
+
+        final AllowedCollector collector = new AllowedCollector(environment, new GrpcJwtProperties());
+        final AuthServerInterceptor interceptor = new AuthServerInterceptor(
+            collector, jwtService, new VerifiedTokenCache(false, 10), AuthMetrics.NOOP, new GrpcJwtProperties()
+        );
+        final ManagedChannel channel = initTestServer(collector, interceptor, new ExpressionService());
+        final String alice = jwtService.generate(new JwtData("alice", "user"));
+        final String aliceAdmin = jwtService.generate(new JwtData("alice", ExampleService.ADMIN));
+        final String carolAdmin = jwtService.generate(new JwtData("carol", ExampleService.ADMIN));
+        final Example.GetExampleRequest aliceRequest =
+            Example.GetExampleRequest.newBuilder().setUserId("alice").build();
+        final Example.GetExampleRequest bobRequest =
+            Example.GetExampleRequest.newBuilder().setUserId("bob").build();
+
+        Assertions.assertNotNull(exampleStub(channel, alice).getExample(aliceRequest));
+        Assertions.assertNotNull(exampleStub(channel, carolAdmin).getExample(bobRequest));
+        Assertions.assertNotNull(exampleStub(channel, aliceAdmin).someAction(bobRequest));
+
+        final StatusRuntimeException foreign = Assertions.assertThrows(StatusRuntimeException.class,
+            () -> exampleStub(channel, alice).getExample(bobRequest));
+        final StatusRuntimeException notAdmin = Assertions.assertThrows(StatusRuntimeException.class,
+            () -> exampleStub(channel, alice).someAction(aliceRequest));
+        final StatusRuntimeException notListed = Assertions.assertThrows(StatusRuntimeException.class,
+            () -> exampleStub(channel, carolAdmin).someAction(aliceRequest));
+
+        Assertions.assertEquals(Status.Code.PERMISSION_DENIED, foreign.getStatus().getCode());
+        Assertions.assertEquals(Status.Code.PERMISSION_DENIED, notAdmin.getStatus().getCode());
+        Assertions.assertEquals(Status.Code.PERMISSION_DENIED, notListed.getStatus().getCode());
+    }
+
+    @Test
+    public void testInvalidAllowExpressionFailsOnStartup() {
+
+        @GRpcService
+        class InvalidExpressionService extends ExampleServiceGrpc.ExampleServiceImplBase {
+
+            @Override
+            @Allow(expression = "request.nonExistingField == claim.sub")
+            public void getExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+                response.onCompleted();
+            }
+
+            @Override
+            @Allow(expression = "claim.sub = 'alice'")
+            public void someAction(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+                response.onCompleted();
+            }
+        }
+
+        final AllowedCollector collector = new AllowedCollector(environment, new GrpcJwtProperties());
+
+        Assertions.assertThrows(IllegalStateException.class,
+            () -> collector.postProcessBeforeInitialization(new InvalidExpressionService(), "invalidService"));
+    }
+
+    @Test
+    public void testTokenResolver() throws IOException {
+
+        final TokenResolver resolver = new TokenResolver() {
+            @Override
+            public boolean supports(String token) {
+                return token.startsWith("opaque-");
+            }
+
+            @Override
+            public JwtContextData resolve(String token) {
+                if(!token.equals("opaque-admin")) throw new UnauthenticatedException("Token is not active.", null);
+
+                return new JwtContextData(token, "opaque-user", Sets.newHashSet(ExampleService.ADMIN),
+                    Jwts.claims().setSubject("opaque-user"));
+            }
+        };
+        final AuthServerInterceptor interceptor = new AuthServerInterceptor(allowedCollector, jwtService,
+            new VerifiedTokenCache(true, 10), AuthMetrics.NOOP, new GrpcJwtProperties(),
+            Collections.singletonList(resolver), AuditLog.DISABLED);
+        final ManagedChannel channel = initTestServer(interceptor, new ExampleService());
+        final Example.GetExampleRequest request = Example.GetExampleRequest.getDefaultInstance();
+        final String adminToken = jwtService.generate(new JwtData("jwt-admin", ExampleService.ADMIN));
+
+        Assertions.assertNotNull(exampleStub(channel, "opaque-admin").someAction(request));
+        Assertions.assertNotNull(exampleStub(channel, "Bearer opaque-admin").someAction(request));
+        Assertions.assertNotNull(exampleStub(channel, adminToken).someAction(request));
+
+        final StatusRuntimeException exception = Assertions.assertThrows(StatusRuntimeException.class,
+            () -> exampleStub(channel, "opaque-revoked").someAction(request));
+
+        Assertions.assertEquals(Status.Code.UNAUTHENTICATED, exception.getStatus().getCode());
+    }
+
+    @Test
+    public void testAuditLog() throws IOException {
+
+        final List<String> records = new CopyOnWriteArrayList<>();
+        final AuditLog auditLog = new AuditLog((AuditRecord record) -> records.add(record.getMethod() + " " +
+            record.getSubject() + " " + record.getDecision() + " " + record.getReason()), 16, 1.0);
+        final AuthServerInterceptor interceptor = new AuthServerInterceptor(allowedCollector, jwtService,
+            new VerifiedTokenCache(false, 10), AuthMetrics.NOOP, new GrpcJwtProperties(), Collections.emptyList(),
+            auditLog);
+        final ManagedChannel channel = initTestServer(interceptor, new ExampleService());
+        final Example.GetExampleRequest request = Example.GetExampleRequest.getDefaultInstance();
+        final String method = ExampleServiceGrpc.METHOD_SOME_ACTION.getFullMethodName();
+
+        try {
+            Assertions.assertNotNull(exampleStub(channel,
+                jwtService.generate(new JwtData("audit-admin", ExampleService.ADMIN))).someAction(request));
+            Assertions.assertThrows(StatusRuntimeException.class, () -> exampleStub(channel,
+                jwtService.generate(new JwtData("audit-user", "user"))).someAction(request));
+            Assertions.assertThrows(StatusRuntimeException.class,
+                () -> exampleStub(channel, "not-a-token").someAction(request));
+        } finally {
+            auditLog.shutdown();
+        }
+
+        Assertions.assertEquals(3, auditLog.getWrittenCount());
+        Assertions.assertEquals(method + " audit-admin SUCCESS null", records.get(0));
+        Assertions.assertEquals(method + " audit-user PERMISSION_DENIED Missing required permission roles.",
+            records.get(1));
+        Assertions.assertTrue(records.get(2).startsWith(method + " null UNAUTHENTICATED "));
+    }
+
+    private ExampleServiceGrpc.ExampleServiceBlockingStub exampleStub(Channel channel, String token) {
+        final Metadata header = new Metadata();
+        header.put(GrpcHeader.AUTHORIZATION, token);
+
+        return MetadataUtils.attachHeaders(ExampleServiceGrpc.newBlockingStub(channel), header);
+    }
+
+    private Example.GetExampleRequest pingSecondExample(Channel channel, String token) {
+        final Metadata header = new Metadata();
+        header.put(GrpcHeader.AUTHORIZATION, token);
+
+        return MetadataUtils.attachHeaders(SecondExampleServiceGrpc.newBlockingStub(channel), header)
+            .pingSecondExample(Example.GetExampleRequest.getDefaultInstance());
+    }
+
+    private ManagedChannel initTestServer(BindableService... services) throws IOException {
+        return initTestServer(authServerInterceptor, services);
+    }
+
+    private ManagedChannel initTestServer(
+        ServerInterceptor interceptor,
+        BindableService... services
+    ) throws IOException {
+        return initTestServer(allowedCollector, interceptor, services);
+    }
+
+    private ManagedChannel initTestServer(
+        AllowedCollector collector,
+        ServerInterceptor interceptor,
+        BindableService... services
+    ) throws IOException {
 
         final String serverName = InProcessServerBuilder.generateName();
-        final Server server = InProcessServerBuilder
-            .forName(serverName).directExecutor()
-            .addService(service)
-            .intercept(authServerInterceptor)
-            .build().start();
+        final InProcessServerBuilder serverBuilder = InProcessServerBuilder.forName(serverName).directExecutor();
+
+        for (BindableService service : services) {
+            serverBuilder.addService(service);
+        }
 
-        allowedCollector.postProcessBeforeInitialization(service, "exampleService");
+        final Server server = serverBuilder.intercept(interceptor).build().start();
+
+        for (BindableService service : services) {
+            collector.postProcessBeforeInitialization(service, service.getClass().getSimpleName());
+        }
 
         grpcCleanup.register(server);
 
@@ -471,7 +1100,7 @@ class ExampleService extends ExampleServiceGrpc.ExampleServiceImplBase {
     }
 
     @Override
-    @Allow(ownerField = "nonExistingField")
+    @Allow(roles = {ADMIN})
     public void saveExample(Empty request, StreamObserver<Empty> response) {
 
         response.onNext(Empty.getDefaultInstance());
@@ -493,4 +1122,42 @@ class ExampleService extends ExampleServiceGrpc.ExampleServiceImplBase {
         response.onNext(Empty.getDefaultInstance());
         response.onCompleted();
     }
-}
\ No newline at end of file
+
+    @Override
+    @Allow(ownerField = "order.customer.id", roles = {ADMIN})
+    public void getNestedExample(Example.NestedExampleRequest request, StreamObserver<Empty> response) {
+
+        response.onNext(Empty.getDefaultInstance());
+        response.onCompleted();
+    }
+
+    @Override
+    @Allow(ownerField = "order.coOwners.id", roles = {ADMIN})
+    public void listNestedExample(Example.NestedExampleRequest request, StreamObserver<Empty> response) {
+
+        response.onNext(Empty.getDefaultInstance());
+        response.onCompleted();
+    }
+}
+@GRpcService
+class SecondExampleService extends SecondExampleServiceGrpc.SecondExampleServiceImplBase {
+
+    @Override
+    @Allow(roles = {ExampleService.ADMIN})
+    public void getSecondExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+
+        response.onNext(Empty.getDefaultInstance());
+        response.onCompleted();
+    }
+
+    @Override
+    public void pingSecondExample(
+        Example.GetExampleRequest request,
+        StreamObserver<Example.GetExampleRequest> response
+    ) {
+        final String userId = GrpcJwtContext.get().map(JwtContextData::getUserId).orElse("");
+
+        response.onNext(Example.GetExampleRequest.newBuilder().setUserId(userId).build());
+        response.onCompleted();
+    }
+}
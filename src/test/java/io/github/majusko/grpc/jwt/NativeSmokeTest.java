@@ -0,0 +1,96 @@
+package io.github.majusko.grpc.jwt;
+
+import com.google.protobuf.Empty;
+import io.github.majusko.grpc.jwt.annotation.Allow;
+import io.github.majusko.grpc.jwt.data.GrpcHeader;
+import io.github.majusko.grpc.jwt.interceptor.AllowedCollector;
+import io.github.majusko.grpc.jwt.interceptor.AuthServerInterceptor;
+import io.github.majusko.grpc.jwt.interceptor.proto.Example;
+import io.github.majusko.grpc.jwt.interceptor.proto.ExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.metrics.AuthMetrics;
+import io.github.majusko.grpc.jwt.processor.PolicyIndexProcessor;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.VerifiedTokenCache;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.mock.env.MockEnvironment;
+
+/**
+ * Token round trip through the interceptors without an application context, so it runs the same on the JVM
+ * and as a native image test ({@code mvn -Pnative test}) where it checks the shipped reflection metadata.
+ */
+public class NativeSmokeTest {
+
+    @Test
+    public void testTokenIsIssuedAndVerifiedInProcess() throws Exception {
+        final MockEnvironment environment = new MockEnvironment();
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        final JwtService jwtService = new JwtService(environment, properties);
+        final AllowedCollector allowedCollector = new AllowedCollector(environment, properties);
+        final SmokeService service = new SmokeService();
+
+        allowedCollector.postProcessBeforeInitialization(service, "smokeService");
+
+        final AuthServerInterceptor interceptor = new AuthServerInterceptor(allowedCollector, jwtService,
+            new VerifiedTokenCache(true, properties.getCache().getMaxSize()), AuthMetrics.NOOP, properties);
+        final String serverName = InProcessServerBuilder.generateName();
+        final Server server = InProcessServerBuilder.forName(serverName)
+            .addService(ServerInterceptors.intercept(service, interceptor))
+            .build()
+            .start();
+        final ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+
+        try {
+            final Metadata header = new Metadata();
+            header.put(GrpcHeader.AUTHORIZATION, jwtService.generate(new JwtData("smoke-user", "user")));
+
+            final ExampleServiceGrpc.ExampleServiceBlockingStub stub = ExampleServiceGrpc.newBlockingStub(channel)
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(header));
+
+            Assertions.assertNotNull(stub.getExample(request("smoke-user")));
+
+            final StatusRuntimeException denied = Assertions.assertThrows(StatusRuntimeException.class,
+                () -> stub.getExample(request("other-user")));
+
+            Assertions.assertEquals(Status.Code.PERMISSION_DENIED, denied.getStatus().getCode());
+            Assertions.assertNotNull(SmokeService.class.getClassLoader().getResource(
+                PolicyIndexProcessor.NATIVE_IMAGE_LOCATION + SmokeService.class.getName() + "/reflect-config.json"));
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+            jwtService.shutdown();
+        }
+    }
+
+    private static Example.GetExampleRequest request(String userId) {
+        return Example.GetExampleRequest.newBuilder().setUserId(userId).build();
+    }
+
+    /**
+     * Kept out of the application context of the other tests which already serve the example service.
+     */
+    @GRpcService
+    @Profile("native-smoke-test")
+    static class SmokeService extends ExampleServiceGrpc.ExampleServiceImplBase {
+
+        @Override
+        @Allow(ownerField = "userId", roles = "admin")
+        public void getExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+            response.onNext(Empty.getDefaultInstance());
+            response.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package io.github.majusko.grpc.jwt.audit;
+
+import io.github.majusko.grpc.jwt.metrics.AuthOutcome;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class AuditLogTest {
+
+    @Test
+    public void testRecordsFromManyThreadsAreWritten() throws Exception {
+        final List<String> subjects = new CopyOnWriteArrayList<>();
+        final AuditLog auditLog = new AuditLog(record -> subjects.add(record.getSubject()), 1 << 16, 1.0);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<?>> producers = new ArrayList<>();
+
+        for(int thread = 0; thread < 4; thread++) {
+            final int producer = thread;
+
+            producers.add(executor.submit(() -> {
+                for(int i = 0; i < 1000; i++) {
+                    Assertions.assertTrue(auditLog.record("svc/Method", producer + "-" + i,
+                        AuthOutcome.SUCCESS, null, 1000));
+                }
+            }));
+        }
+
+        for(Future<?> producer : producers) {
+            producer.get(10, TimeUnit.SECONDS);
+        }
+
+        executor.shutdown();
+        auditLog.shutdown();
+
+        Assertions.assertEquals(4000, auditLog.getWrittenCount());
+        Assertions.assertEquals(4000, subjects.stream().distinct().count());
+        Assertions.assertEquals(0, auditLog.getDroppedCount());
+    }
+
+    @Test
+    public void testFullBufferDropsRecordsWithoutBlocking() throws Exception {
+        final CountDownLatch writerBlocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AuditLog auditLog = new AuditLog(record -> {
+            writerBlocked.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 4, 1.0);
+
+        Assertions.assertTrue(auditLog.record("svc/Method", "first", AuthOutcome.PERMISSION_DENIED, "denied", 0));
+        Assertions.assertTrue(writerBlocked.await(5, TimeUnit.SECONDS));
+
+        int accepted = 0;
+
+        for(int i = 0; i < 10; i++) {
+            if(auditLog.record("svc/Method", "next", AuthOutcome.PERMISSION_DENIED, "denied", 0)) accepted++;
+        }
+
+        release.countDown();
+        auditLog.shutdown();
+
+        Assertions.assertEquals(3, accepted);
+        Assertions.assertEquals(7, auditLog.getDroppedCount());
+        Assertions.assertEquals(4, auditLog.getWrittenCount());
+    }
+
+    @Test
+    public void testRecordsRacingWithShutdownAreWrittenOrDropped() throws Exception {
+        final AuditLog auditLog = new AuditLog(record -> {
+        }, 1 << 16, 1.0);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final CountDownLatch started = new CountDownLatch(4);
+        final List<Future<long[]>> producers = new ArrayList<>();
+
+        for(int thread = 0; thread < 4; thread++) {
+            producers.add(executor.submit(() -> {
+                long attempts = 0;
+                long accepted = 0;
+
+                started.countDown();
+
+                while(attempts < 1000 || accepted == attempts) {
+                    attempts++;
+                    if(auditLog.record("svc/Method", "user", AuthOutcome.PERMISSION_DENIED, "denied", 0)) accepted++;
+                }
+
+                return new long[]{attempts, accepted};
+            }));
+        }
+
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        auditLog.shutdown();
+
+        long attempts = 0;
+        long accepted = 0;
+
+        for(Future<long[]> producer : producers) {
+            final long[] counts = producer.get(10, TimeUnit.SECONDS);
+
+            attempts += counts[0];
+            accepted += counts[1];
+        }
+
+        executor.shutdown();
+
+        Assertions.assertEquals(accepted, auditLog.getWrittenCount());
+        Assertions.assertEquals(attempts - accepted, auditLog.getDroppedCount());
+    }
+
+    @Test
+    public void testGrantsAreSampled() {
+        final List<AuthOutcome> decisions = new CopyOnWriteArrayList<>();
+        final AuditLog auditLog = new AuditLog(record -> decisions.add(record.getDecision()), 64, 0.0);
+
+        auditLog.record("svc/Method", "user", AuthOutcome.SUCCESS, null, 0);
+        auditLog.record("svc/Method", "user", AuthOutcome.EXPOSED, null, 0);
+        auditLog.record("svc/Method", "user", AuthOutcome.PERMISSION_DENIED, "denied", 0);
+        auditLog.record("svc/Method", null, AuthOutcome.UNAUTHENTICATED, "expired", 0);
+        auditLog.shutdown();
+
+        Assertions.assertEquals(2, decisions.size());
+        Assertions.assertFalse(decisions.contains(AuthOutcome.SUCCESS));
+        Assertions.assertFalse(AuditLog.DISABLED.isEnabled());
+        Assertions.assertTrue(AuditLog.DISABLED.record("svc/Method", null, AuthOutcome.SUCCESS, null, 0));
+    }
+
+    @Test
+    public void testRollingFileSink(@TempDir Path directory) throws IOException {
+        final Path file = directory.resolve("audit/grpc-jwt-audit.log");
+        final AuditLog auditLog = new AuditLog(new RollingFileAuditSink(file, 400, 2), 64, 1.0);
+
+        for(int i = 0; i < 10; i++) {
+            auditLog.record("svc/Method", "user-" + i, AuthOutcome.PERMISSION_DENIED, "quote \" and\nnewline", 2500);
+        }
+
+        auditLog.shutdown();
+
+        final List<String> lines = new ArrayList<>();
+
+        for(String name : new String[]{"grpc-jwt-audit.log.2", "grpc-jwt-audit.log.1", "grpc-jwt-audit.log"}) {
+            final Path part = file.resolveSibling(name);
+            if(Files.exists(part)) lines.addAll(Files.readAllLines(part, StandardCharsets.UTF_8));
+        }
+
+        Assertions.assertTrue(Files.exists(file.resolveSibling("grpc-jwt-audit.log.2")));
+        Assertions.assertFalse(Files.exists(file.resolveSibling("grpc-jwt-audit.log.3")));
+        Assertions.assertTrue(lines.size() < 10);
+        Assertions.assertTrue(lines.get(lines.size() - 1).contains("\"subject\":\"user-9\""));
+        Assertions.assertTrue(lines.get(0).contains("\"method\":\"svc/Method\""));
+        Assertions.assertTrue(lines.get(0).contains("\"decision\":\"PERMISSION_DENIED\""));
+        Assertions.assertTrue(lines.get(0).contains("\"reason\":\"quote \\\" and\\u000anewline\""));
+        Assertions.assertTrue(lines.get(0).contains("\"latencyMicros\":2"));
+    }
+}
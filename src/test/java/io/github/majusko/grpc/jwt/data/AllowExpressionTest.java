@@ -0,0 +1,83 @@
+package io.github.majusko.grpc.jwt.data;
+
+import com.google.common.collect.Sets;
+import io.github.majusko.grpc.jwt.interceptor.proto.Example;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public class AllowExpressionTest {
+
+    private final Claims claims = Jwts.claims()
+        .setSubject("user-1")
+        .setId("token-1");
+    private final JwtContextData data;
+
+    {
+        claims.put("tenants", Arrays.asList("eu-1", "eu-2"));
+        claims.put("tier", "gold");
+        claims.put("level", 3);
+        data = new JwtContextData("token", "user-1", Sets.newHashSet("admin", "reader"), claims);
+    }
+
+    @Test
+    public void testClaimConditions() {
+        Assertions.assertTrue(evaluate("claim.tier == 'gold'"));
+        Assertions.assertTrue(evaluate("claim.level == 3 && claim.jti == \"token-1\""));
+        Assertions.assertTrue(evaluate("'admin' in claim.jwt_roles"));
+        Assertions.assertTrue(evaluate("claim.tier in ['gold', 'silver']"));
+        Assertions.assertTrue(evaluate("claim.tenants == ['eu-2', 'eu-1']"));
+        Assertions.assertTrue(evaluate("!(claim.tier != 'gold') || claim.missing == 'x'"));
+        Assertions.assertFalse(evaluate("claim.missing in claim.tenants"));
+        Assertions.assertFalse(evaluate("claim.tenants in ['eu-1']"));
+        Assertions.assertFalse(evaluate("claim.sub == 'user-2' || !('reader' in claim.jwt_roles)"));
+        Assertions.assertFalse(AllowExpression.compile("claim.tier == 'gold'", null).usesRequest());
+    }
+
+    @Test
+    public void testRequestFieldsResolvedAtCompileTime() {
+        final AllowExpression owner = AllowExpression.compile(
+            "request.userId == claim.sub && request.data in [1, 2, 3]", Example.GetExampleRequest.getDescriptor());
+        final AllowExpression coOwners = AllowExpression.compile(
+            "request.order.coOwners.id in claim.tenants", Example.NestedExampleRequest.getDescriptor());
+
+        Assertions.assertTrue(owner.usesRequest());
+        Assertions.assertTrue(owner.evaluate(data, Example.GetExampleRequest.newBuilder()
+            .setUserId("user-1").setData(2).build()));
+        Assertions.assertFalse(owner.evaluate(data, Example.GetExampleRequest.newBuilder()
+            .setUserId("user-1").setData(4).build()));
+        Assertions.assertTrue(coOwners.evaluate(data, nested("eu-1", "eu-2")));
+        Assertions.assertFalse(coOwners.evaluate(data, nested("eu-1", "us-1")));
+        Assertions.assertFalse(coOwners.evaluate(data, nested()));
+    }
+
+    @Test
+    public void testInvalidExpressions() {
+        for(String expression : Arrays.asList(
+            "", "claim.tier", "claim.tier = 'gold'", "tier == 'gold'", "(claim.tier == 'gold'",
+            "claim.tier == 'gold", "claim.tier == gold", "claim.tier == 'gold' &&")) {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                () -> AllowExpression.compile(expression, null), expression);
+        }
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AllowExpression.compile(
+            "request.missing == claim.sub", Example.GetExampleRequest.getDescriptor()));
+    }
+
+    private boolean evaluate(String expression) {
+        return AllowExpression.compile(expression, null).evaluate(data, null);
+    }
+
+    private static Example.NestedExampleRequest nested(String... coOwners) {
+        final Example.Order.Builder order = Example.Order.newBuilder();
+
+        for(String coOwner : coOwners) {
+            order.addCoOwners(Example.Customer.newBuilder().setId(coOwner));
+        }
+
+        return Example.NestedExampleRequest.newBuilder().setOrder(order).build();
+    }
+}
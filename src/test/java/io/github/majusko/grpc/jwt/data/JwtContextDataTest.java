@@ -0,0 +1,92 @@
+package io.github.majusko.grpc.jwt.data;
+
+import com.google.common.collect.Sets;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.crypto.SecretKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+
+public class JwtContextDataTest {
+
+    private final SecretKey key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+    private final Date expiration = new Date((System.currentTimeMillis() / 1000 + 3600) * 1000);
+    private final String token = Jwts.builder()
+        .setSubject("projected-user")
+        .setExpiration(expiration)
+        .claim(JwtService.TOKEN_ENV, Arrays.asList("test", "benchmark"))
+        .claim("tenant", "tenant-1")
+        .claim("locale", "sk")
+        .signWith(key)
+        .compact();
+    private final Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+
+    @Test
+    public void testProjectionKeepsCompactFields() {
+        final RoleSet roles = RoleSet.unresolved(Sets.newHashSet("admin"));
+        final JwtContextData data = JwtContextData.projected(token, roles, claims, Collections.singleton("tenant"));
+
+        Assertions.assertEquals("projected-user", data.getUserId());
+        Assertions.assertSame(roles, data.getRoleSet());
+        Assertions.assertEquals(Arrays.asList("test", "benchmark"), data.getEnvironments());
+        Assertions.assertEquals(expiration, data.getExpiration());
+        Assertions.assertEquals("tenant-1", data.getClaim("tenant"));
+    }
+
+    @Test
+    public void testProjectionDecodesOtherClaimsLazily() {
+        final JwtContextData data =
+            JwtContextData.projected(token, RoleSet.empty(), claims, Collections.emptySet());
+
+        Assertions.assertEquals("sk", data.getClaim("locale"));
+        Assertions.assertEquals(expiration, data.getJwtClaims().getExpiration());
+        Assertions.assertEquals("projected-user", data.getJwtClaims().getSubject());
+        Assertions.assertSame(data.getJwtClaims(), data.getJwtClaims());
+    }
+
+    @Test
+    public void testFullContextReadsEnvironmentsFromClaims() {
+        final JwtContextData data = ClaimProjection.FULL.contextData(token, RoleSet.empty(), claims);
+
+        Assertions.assertSame(claims, data.getJwtClaims());
+        Assertions.assertEquals(Arrays.asList("test", "benchmark"), data.getEnvironments());
+        Assertions.assertEquals("tenant-1", data.getClaim("tenant"));
+    }
+
+    @Test
+    public void testProjectionKeepsClaimsOfCompactToken() {
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setSecret("secret");
+        properties.getCompact().setEnabled(true);
+
+        final JwtService service = new JwtService(new MockEnvironment(), properties);
+
+        try {
+            final String compact = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(service.generateCompact(new JwtData("compact-user", "admin")));
+            final VerifiedToken verified = service.verify(compact);
+            final ClaimProjection projection = new ClaimProjection(true, Collections.emptySet());
+            final JwtContextData data =
+                projection.contextData(verified, RoleSet.unresolved(Sets.newHashSet(verified.getRoles())));
+
+            Assertions.assertEquals("compact-user", data.getUserId());
+            Assertions.assertEquals("compact-user", data.getJwtClaims().getSubject());
+            Assertions.assertEquals("compact-user", data.getClaim(Claims.SUBJECT));
+            Assertions.assertNotNull(data.getExpiration());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
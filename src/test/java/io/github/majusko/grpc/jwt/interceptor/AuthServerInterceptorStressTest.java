@@ -0,0 +1,186 @@
+package io.github.majusko.grpc.jwt.interceptor;
+
+import com.google.protobuf.Empty;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.annotation.Allow;
+import io.github.majusko.grpc.jwt.data.GrpcHeader;
+import io.github.majusko.grpc.jwt.interceptor.proto.Example;
+import io.github.majusko.grpc.jwt.interceptor.proto.ExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.interceptor.proto.SecondExampleServiceGrpc;
+import io.github.majusko.grpc.jwt.metrics.AuthMetrics;
+import io.github.majusko.grpc.jwt.service.JwtService;
+import io.github.majusko.grpc.jwt.service.VerifiedTokenCache;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Calls of many users from many threads through one interceptor, while a verified token cache smaller than the
+ * number of users keeps evicting and further services are registered to the shared {@link AllowedCollector}.
+ * Every call must get the decision it would get alone.
+ */
+@Tag("stress")
+public class AuthServerInterceptorStressTest {
+
+    private static final int USERS = 32;
+    private static final int CALLS_PER_THREAD = 400;
+    private static final String GET_EXAMPLE = ExampleServiceGrpc.METHOD_GET_EXAMPLE.getFullMethodName();
+    private static final String GET_SECOND_EXAMPLE =
+        SecondExampleServiceGrpc.METHOD_GET_SECOND_EXAMPLE.getFullMethodName();
+
+    @Test
+    public void testDecisionsUnderContention() throws Exception {
+        final MockEnvironment environment = new MockEnvironment();
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setSecret("secret");
+
+        final JwtService jwtService = new JwtService(environment, properties);
+        final AllowedCollector allowedCollector = new AllowedCollector(environment, properties);
+        final StressService service = new StressService();
+
+        allowedCollector.postProcessBeforeInitialization(service, "stressService");
+
+        final AuthServerInterceptor interceptor = new AuthServerInterceptor(allowedCollector, jwtService,
+            new VerifiedTokenCache(true, USERS / 4), AuthMetrics.NOOP, properties);
+        final String serverName = InProcessServerBuilder.generateName();
+        final Server server = InProcessServerBuilder.forName(serverName)
+            .addService(ServerInterceptors.intercept(service, interceptor))
+            .build()
+            .start();
+        final ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        final List<ExampleServiceGrpc.ExampleServiceBlockingStub> stubs = new ArrayList<>();
+
+        for(int i = 0; i < USERS; i++) {
+            final Metadata header = new Metadata();
+            header.put(GrpcHeader.AUTHORIZATION, jwtService.generate(new JwtData(user(i), "customer")));
+
+            stubs.add(ExampleServiceGrpc.newBlockingStub(channel)
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(header)));
+        }
+
+        final int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean callersDone = new AtomicBoolean();
+        final Queue<String> failures = new ConcurrentLinkedQueue<>();
+        final List<Future<?>> callers = new ArrayList<>();
+
+        try {
+            final Future<Integer> registrar = executor.submit(() -> {
+                start.await();
+
+                int registrations = 0;
+
+                while(!callersDone.get()) {
+                    allowedCollector.postProcessBeforeInitialization(new SecondStressService(), "second");
+                    registrations++;
+
+                    if(allowedCollector.getPolicy(GET_EXAMPLE) == null) failures.add("Policy was lost");
+                    if(allowedCollector.getPolicy(GET_SECOND_EXAMPLE) == null) failures.add("Policy not visible");
+                }
+
+                return registrations;
+            });
+
+            for(int thread = 0; thread < threads; thread++) {
+                callers.add(executor.submit(() -> {
+                    start.await();
+
+                    for(int i = 0; i < CALLS_PER_THREAD; i++) {
+                        final int caller = ThreadLocalRandom.current().nextInt(USERS);
+                        final boolean owned = ThreadLocalRandom.current().nextBoolean();
+                        final String owner = owned ? user(caller) : user((caller + 1) % USERS);
+                        final Status.Code expected = owned ? Status.Code.OK : Status.Code.PERMISSION_DENIED;
+                        final Status.Code actual = call(stubs.get(caller), owner);
+
+                        if(actual != expected) failures.add(user(caller) + " on " + owner + " got " + actual);
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for(Future<?> caller : callers) {
+                caller.get(60, TimeUnit.SECONDS);
+            }
+
+            callersDone.set(true);
+
+            Assertions.assertTrue(registrar.get(10, TimeUnit.SECONDS) > 0);
+            Assertions.assertTrue(failures.isEmpty(), failures.size() + " failures, first: " + failures.peek());
+        } finally {
+            executor.shutdownNow();
+            channel.shutdownNow();
+            server.shutdownNow();
+            jwtService.shutdown();
+        }
+    }
+
+    private static Status.Code call(ExampleServiceGrpc.ExampleServiceBlockingStub stub, String owner) {
+        try {
+            stub.getExample(Example.GetExampleRequest.newBuilder().setUserId(owner).build());
+            return Status.Code.OK;
+        } catch(StatusRuntimeException e) {
+            return e.getStatus().getCode();
+        }
+    }
+
+    private static String user(int index) {
+        return "stress-user-" + index;
+    }
+
+    /**
+     * Kept out of the application context of the other tests which already serve the example services.
+     */
+    @GRpcService
+    @Profile("stress-test")
+    static class StressService extends ExampleServiceGrpc.ExampleServiceImplBase {
+
+        @Override
+        @Allow(ownerField = "userId", roles = "admin")
+        public void getExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+            response.onNext(Empty.getDefaultInstance());
+            response.onCompleted();
+        }
+    }
+
+    @GRpcService
+    @Profile("stress-test")
+    static class SecondStressService extends SecondExampleServiceGrpc.SecondExampleServiceImplBase {
+
+        @Override
+        @Allow(roles = "admin")
+        public void getSecondExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+            response.onNext(Empty.getDefaultInstance());
+            response.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.majusko.grpc.jwt.interceptor;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+public class DeferredListenerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBufferedEventsAreReplayedInOrder() {
+        final ServerCall<String, String> call = Mockito.mock(ServerCall.class);
+        final ServerCall.Listener<String> application = Mockito.mock(ServerCall.Listener.class);
+        final DeferredListener<String> listener = new DeferredListener<>(call);
+
+        listener.onReady();
+        listener.onMessage("first");
+        listener.onMessage("second");
+        listener.onHalfClose();
+        Mockito.verifyNoInteractions(application);
+
+        listener.start(() -> application);
+        listener.onComplete();
+
+        final InOrder inOrder = Mockito.inOrder(application);
+        inOrder.verify(application).onReady();
+        inOrder.verify(application).onMessage("first");
+        inOrder.verify(application).onMessage("second");
+        inOrder.verify(application).onHalfClose();
+        inOrder.verify(application).onComplete();
+        Mockito.verify(call, Mockito.never()).close(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailingListenerFactoryClosesTheCall() {
+        final ServerCall<String, String> call = Mockito.mock(ServerCall.class);
+        final DeferredListener<String> listener = new DeferredListener<>(call);
+
+        listener.onMessage("first");
+        listener.start(() -> {
+            throw new IllegalStateException("Resolver is down.");
+        });
+        listener.onMessage("second");
+        listener.onMessage("third");
+        listener.onHalfClose();
+
+        Mockito.verify(call).close(
+            Mockito.argThat(status -> status.getCode() == Status.Code.INTERNAL), Mockito.any(Metadata.class));
+        Mockito.verifyNoMoreInteractions(call);
+    }
+}
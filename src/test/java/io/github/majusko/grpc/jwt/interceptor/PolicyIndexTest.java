@@ -0,0 +1,95 @@
+package io.github.majusko.grpc.jwt.interceptor;
+
+import com.google.protobuf.Empty;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.annotation.Allow;
+import io.github.majusko.grpc.jwt.annotation.Exposed;
+import io.github.majusko.grpc.jwt.data.MethodPolicy;
+import io.github.majusko.grpc.jwt.interceptor.proto.Example;
+import io.github.majusko.grpc.jwt.interceptor.proto.ExampleServiceGrpc;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+
+public class PolicyIndexTest {
+
+    private static final String[] METHODS = {
+        "io.github.majusko.grpc.jwt.interceptor.proto.ExampleService/GetExample",
+        "io.github.majusko.grpc.jwt.interceptor.proto.ExampleService/ListExample",
+        "io.github.majusko.grpc.jwt.interceptor.proto.ExampleService/SaveExample"
+    };
+
+    @Test
+    public void testServiceIsIndexedAtBuildTime() {
+        final List<PolicyIndex.Entry> entries = PolicyIndex.read(IndexedService.class);
+
+        Assertions.assertNotNull(entries);
+        Assertions.assertEquals(3, entries.size());
+        Assertions.assertNull(PolicyIndex.read(PolicyIndexTest.class));
+    }
+
+    @Test
+    public void testIndexedPoliciesMatchReflectiveScan() {
+        final AllowedCollector indexed = collect(true);
+        final AllowedCollector scanned = collect(false);
+
+        for(String method : METHODS) {
+            final MethodPolicy expected = scanned.getPolicy(method);
+            final MethodPolicy actual = indexed.getPolicy(method);
+
+            Assertions.assertNotNull(expected, method);
+            Assertions.assertNotNull(actual, method);
+            Assertions.assertEquals(expected.isAllowed(), actual.isAllowed());
+            Assertions.assertEquals(expected.getOwnerField(), actual.getOwnerField());
+            Assertions.assertEquals(expected.getRoles(), actual.getRoles());
+            Assertions.assertEquals(expected.isExposed(), actual.isExposed());
+            Assertions.assertEquals(expected.getExposedEnvironments(), actual.getExposedEnvironments());
+            Assertions.assertEquals(String.valueOf(expected.getExpression()), String.valueOf(actual.getExpression()));
+        }
+    }
+
+    private static AllowedCollector collect(boolean policyIndex) {
+        final MockEnvironment environment = new MockEnvironment();
+        environment.setActiveProfiles("test");
+
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setPolicyIndex(policyIndex);
+
+        final AllowedCollector collector = new AllowedCollector(environment, properties);
+        collector.postProcessBeforeInitialization(new IndexedService(), "indexedService");
+
+        return collector;
+    }
+
+    /**
+     * Kept out of the application context of the other tests which already serve the example service.
+     */
+    @GRpcService
+    @Profile("policy-index-test")
+    static class IndexedService extends ExampleServiceGrpc.ExampleServiceImplBase {
+
+        @Override
+        @Allow(ownerField = "userId", roles = {"admin", "user"})
+        public void getExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+            response.onCompleted();
+        }
+
+        @Override
+        @Exposed(environments = {"test", "dev"})
+        public void listExample(Example.GetExampleRequest request, StreamObserver<Empty> response) {
+            response.onCompleted();
+        }
+
+        @Override
+        @Allow(roles = "admin", expression = "claim.sub in ['alice', 'bob'] && !(claim.tier == \"trial\")")
+        @Exposed(environments = "prod")
+        public void saveExample(Empty request, StreamObserver<Empty> response) {
+            response.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.majusko.grpc.jwt.interceptor;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.github.majusko.grpc.jwt.data.RoleSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class RoleRegistryTest {
+
+    @Test
+    public void testIdenticalRoleSetsAreShared() {
+        final RoleRegistry registry = new RoleRegistry();
+        registry.register(Lists.newArrayList("admin", "user"));
+
+        final RoleSet first = registry.intern(Lists.newArrayList("admin", "user"));
+        final RoleSet second = registry.intern(Lists.newArrayList("user", "admin", "user"));
+
+        Assertions.assertSame(first, second);
+    }
+
+    @Test
+    public void testIntersectionBeyondSingleWord() {
+        final RoleRegistry registry = new RoleRegistry();
+        final List<String> roles = IntStream.range(0, 130).mapToObj(i -> "role-" + i).collect(Collectors.toList());
+        registry.register(roles);
+
+        final RoleSet required = registry.intern(Lists.newArrayList("role-129", "role-3"));
+
+        Assertions.assertTrue(registry.intern(Sets.newHashSet("role-129", "unknown")).intersects(required));
+        Assertions.assertTrue(registry.intern(Sets.newHashSet("role-3")).intersects(required));
+        Assertions.assertFalse(registry.intern(Sets.newHashSet("role-64", "unknown")).intersects(required));
+    }
+
+    @Test
+    public void testRoleSetIsRebuiltAfterNewRoleIsRegistered() {
+        final RoleRegistry registry = new RoleRegistry();
+        registry.register(Lists.newArrayList("admin"));
+
+        final RoleSet userRoles = registry.intern(Lists.newArrayList("admin", "auditor"));
+
+        registry.register(Lists.newArrayList("auditor"));
+
+        final RoleSet required = registry.intern(Lists.newArrayList("auditor"));
+
+        Assertions.assertFalse(userRoles.intersects(required));
+        Assertions.assertTrue(registry.current(userRoles).intersects(required));
+    }
+}
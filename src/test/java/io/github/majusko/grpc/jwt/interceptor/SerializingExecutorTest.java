@@ -0,0 +1,50 @@
+package io.github.majusko.grpc.jwt.interceptor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SerializingExecutorTest {
+
+    @Test
+    public void testTasksRunOneAtATimeInOrder() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final SerializingExecutor executor = new SerializingExecutor(pool);
+        final List<Integer> order = new ArrayList<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        try {
+            for(int i = 0; i < 100; i++) {
+                final int task = i;
+
+                executor.execute(() -> {
+                    if(running.incrementAndGet() > 1) overlaps.incrementAndGet();
+                    order.add(task);
+                    running.decrementAndGet();
+                });
+            }
+            executor.execute(() -> {
+                throw new IllegalStateException("Listener failed.");
+            });
+            executor.execute(done::countDown);
+
+            Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(0, overlaps.get());
+            Assertions.assertEquals(100, order.size());
+            for(int i = 0; i < order.size(); i++) {
+                Assertions.assertEquals(i, order.get(i));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.majusko.grpc.jwt.service;
+
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readers of the internal token racing with its background refresh. The token lives two seconds, so the readers
+ * cross several refreshes and expiry boundaries during the test. Every token must be valid at the time it was read.
+ */
+@Tag("stress")
+public class InternalTokenStressTest {
+
+    private static final long DURATION_MILLIS = 5000;
+
+    @Test
+    public void testInternalTokenIsValidAcrossRefreshes() throws Exception {
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setSecret("secret");
+        properties.setExpirationSec(2L);
+
+        final JwtService jwtService = new JwtService(new StandardEnvironment(), properties);
+        final int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Queue<String> failures = new ConcurrentLinkedQueue<>();
+        final List<Future<Integer>> readers = new ArrayList<>();
+
+        try {
+            for(int i = 0; i < threads; i++) {
+                readers.add(executor.submit(() -> {
+                    final Date readAt = new Date();
+                    final JwtParser parser = Jwts.parserBuilder()
+                        .setSigningKey(jwtService.getKey())
+                        .setClock(() -> readAt)
+                        .build();
+
+                    start.await();
+
+                    final long deadline = System.currentTimeMillis() + DURATION_MILLIS;
+                    long lastIssuedAt = 0;
+                    int reads = 0;
+
+                    while(System.currentTimeMillis() < deadline) {
+                        readAt.setTime(System.currentTimeMillis());
+
+                        final long issuedAt = jwtService.getInternalIssuedAt();
+                        final String token = jwtService.getInternal();
+
+                        if(issuedAt < lastIssuedAt) failures.add("issuedAt went back to " + issuedAt);
+
+                        try {
+                            parser.parseClaimsJws(token);
+                        } catch(RuntimeException e) {
+                            failures.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+                        }
+
+                        lastIssuedAt = issuedAt;
+                        reads++;
+                    }
+
+                    return reads;
+                }));
+            }
+
+            start.countDown();
+
+            int reads = 0;
+
+            for(Future<Integer> reader : readers) {
+                reads += reader.get(DURATION_MILLIS * 2, TimeUnit.MILLISECONDS);
+            }
+
+            Assertions.assertTrue(reads > threads, "Readers made no progress");
+            Assertions.assertTrue(jwtService.getInternalRefreshCount() >= 3,
+                "Only " + jwtService.getInternalRefreshCount() + " internal tokens were minted");
+            Assertions.assertTrue(failures.isEmpty(), failures.size() + " failures, first: " + failures.peek());
+        } finally {
+            executor.shutdownNow();
+            jwtService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.google.common.base.Ticker;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.data.JwtContextData;
+import io.github.majusko.grpc.jwt.exception.UnauthenticatedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IntrospectionTokenResolverTest {
+
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final FakeTicker ticker = new FakeTicker();
+
+    private volatile CountDownLatch responseGate = new CountDownLatch(0);
+    private HttpServer server;
+    private IntrospectionTokenResolver resolver;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/introspect", this::introspect);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        resolver = new IntrospectionTokenResolver(properties(), ticker);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        resolver.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testActiveTokenIsResolvedAndCached() {
+        responses.put("opaque-1", "{\"active\":true,\"sub\":\"user-1\",\"scope\":\"admin reader\"," +
+            "\"token_env\":[\"test\"],\"tenant\":\"eu-1\",\"exp\":" + secondsFromNow(600) + "}");
+
+        final JwtContextData data = resolver.resolve("opaque-1");
+
+        Assertions.assertEquals("user-1", data.getUserId());
+        Assertions.assertEquals("opaque-1", data.getJwt());
+        Assertions.assertTrue(data.getRoles().contains("admin"));
+        Assertions.assertTrue(data.getRoles().contains("reader"));
+        Assertions.assertEquals("test", data.getEnvironments().get(0));
+        Assertions.assertEquals("eu-1", data.getClaim("tenant"));
+        Assertions.assertSame(data, resolver.resolve("opaque-1"));
+        Assertions.assertEquals(1, resolver.getIntrospectionCount());
+        Assertions.assertEquals("Basic Z3JwYy1zZXJ2aWNlOmNsaWVudC1zZWNyZXQ=", authorizations.get(0));
+        Assertions.assertTrue(resolver.supports("opaque-1"));
+        Assertions.assertFalse(resolver.supports("header.payload.signature"));
+    }
+
+    @Test
+    public void testConcurrentCallsShareOneIntrospection() throws Exception {
+        responses.put("opaque-2", "{\"active\":true,\"sub\":\"user-2\",\"exp\":" + secondsFromNow(600) + "}");
+        responseGate = new CountDownLatch(1);
+
+        final int callers = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(callers);
+        final List<Future<JwtContextData>> results = new ArrayList<>();
+
+        try {
+            for(int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> resolver.resolve("opaque-2")));
+            }
+
+            Thread.sleep(200);
+            responseGate.countDown();
+
+            for(Future<JwtContextData> result : results) {
+                Assertions.assertEquals("user-2", result.get(5, TimeUnit.SECONDS).getUserId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(1, resolver.getIntrospectionCount());
+    }
+
+    @Test
+    public void testStaleResultIsRefreshedInBackground() throws Exception {
+        responses.put("opaque-3", "{\"active\":true,\"sub\":\"user-3\",\"exp\":" + secondsFromNow(600) + "}");
+
+        Assertions.assertEquals("user-3", resolver.resolve("opaque-3").getUserId());
+
+        responses.put("opaque-3", "{\"active\":false}");
+        responseGate = new CountDownLatch(1);
+        ticker.advance(61, TimeUnit.SECONDS);
+
+        Assertions.assertEquals("user-3", resolver.resolve("opaque-3").getUserId());
+
+        responseGate.countDown();
+        waitForIntrospections(2);
+
+        Assertions.assertThrows(UnauthenticatedException.class, () -> resolveEventually("opaque-3"));
+    }
+
+    @Test
+    public void testInactiveAndExpiredTokensAreRejected() {
+        responses.put("inactive", "{\"active\":false}");
+        responses.put("expired", "{\"active\":true,\"sub\":\"user-4\",\"exp\":" + secondsFromNow(-10) + "}");
+
+        Assertions.assertThrows(UnauthenticatedException.class, () -> resolver.resolve("inactive"));
+        Assertions.assertThrows(UnauthenticatedException.class, () -> resolver.resolve("inactive"));
+        Assertions.assertEquals(1, resolver.getIntrospectionCount());
+        Assertions.assertThrows(UnauthenticatedException.class, () -> resolver.resolve("expired"));
+    }
+
+    @Test
+    public void testFailedIntrospectionIsNotCached() {
+        Assertions.assertThrows(UnauthenticatedException.class, () -> resolver.resolve("unknown"));
+
+        responses.put("unknown", "{\"active\":true,\"sub\":\"user-5\",\"exp\":" + secondsFromNow(600) + "}");
+
+        Assertions.assertEquals("user-5", resolver.resolve("unknown").getUserId());
+        Assertions.assertEquals(2, resolver.getIntrospectionCount());
+    }
+
+    @Test
+    public void testSlowEndpointTimesOut() {
+        final GrpcJwtProperties.Introspection properties = properties();
+        properties.setReadTimeoutMillis(100);
+        final IntrospectionTokenResolver slowResolver = new IntrospectionTokenResolver(properties, ticker);
+        responses.put("slow", "{\"active\":true,\"sub\":\"user-6\",\"exp\":" + secondsFromNow(600) + "}");
+        responseGate = new CountDownLatch(1);
+
+        try {
+            final long start = System.nanoTime();
+
+            Assertions.assertThrows(UnauthenticatedException.class, () -> slowResolver.resolve("slow"));
+            Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        } finally {
+            responseGate.countDown();
+            slowResolver.shutdown();
+        }
+    }
+
+    @Test
+    public void testTimeoutsMustBePositive() {
+        final GrpcJwtProperties.Introspection noConnectTimeout = properties();
+        noConnectTimeout.setConnectTimeoutMillis(0);
+        final GrpcJwtProperties.Introspection noReadTimeout = properties();
+        noReadTimeout.setReadTimeoutMillis(0);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new IntrospectionTokenResolver(noConnectTimeout));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new IntrospectionTokenResolver(noReadTimeout));
+    }
+
+    private GrpcJwtProperties.Introspection properties() {
+        final GrpcJwtProperties.Introspection properties = new GrpcJwtProperties.Introspection();
+        properties.setUrl("http://localhost:" + server.getAddress().getPort() + "/introspect");
+        properties.setClientId("grpc-service");
+        properties.setClientSecret("client-secret");
+        properties.setTtlSec(300L);
+        properties.setRefreshSec(60L);
+        return properties;
+    }
+
+    private void introspect(HttpExchange exchange) throws IOException {
+        try {
+            responseGate.await(5, TimeUnit.SECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+
+        final String form = read(exchange.getRequestBody());
+        final String token = URLDecoder.decode(form.substring("token=".length()), StandardCharsets.UTF_8.name());
+        final String response = responses.get(token);
+        final byte[] body = response == null ? new byte[0] : response.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(response == null ? 500 : 200, body.length == 0 ? -1 : body.length);
+
+        try(OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private JwtContextData resolveEventually(String token) throws InterruptedException {
+        for(int i = 0; i < 50; i++) {
+            resolver.resolve(token);
+            Thread.sleep(20);
+        }
+
+        return resolver.resolve(token);
+    }
+
+    private void waitForIntrospections(long count) throws InterruptedException {
+        for(int i = 0; i < 250 && resolver.getIntrospectionCount() < count; i++) {
+            Thread.sleep(20);
+        }
+
+        Assertions.assertEquals(count, resolver.getIntrospectionCount());
+    }
+
+    private static long secondsFromNow(long seconds) {
+        return System.currentTimeMillis() / 1000 + seconds;
+    }
+
+    private static String read(InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int length;
+
+        while((length = input.read(buffer)) > 0) {
+            output.write(buffer, 0, length);
+        }
+
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(duration));
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Sets;
+import io.github.majusko.grpc.jwt.GrpcJwtProperties;
+import io.github.majusko.grpc.jwt.service.dto.JwtData;
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class JwtServiceTest {
+
+    private static final String KEYS = "src/test/resources/keys/";
+
+    private final List<JwtService> services = new ArrayList<>();
+
+    @AfterEach
+    public void shutdown() {
+        services.forEach(JwtService::shutdown);
+    }
+
+    @Test
+    public void testRsaSignedTokenIsVerifiedByKeyId() {
+        final JwtService signer = service(signing("rsa-2022.pem", "rsa-2022", null));
+        final JwtService verifier = service(jwks());
+
+        final String token = signer.generate(new JwtData("rsa-user", "admin"));
+        final Claims claims = verifier.parseClaims(token);
+
+        Assertions.assertEquals("rsa-user", claims.getSubject());
+        Assertions.assertNotNull(signer.parseClaims(signer.getInternal()));
+    }
+
+    @Test
+    public void testEcSignedTokenIsVerifiedByKeyId() {
+        final GrpcJwtProperties properties = signing("ec-2022.pem", "ec-2022", "ES256");
+        properties.getKeys().getPublicKeys().put("ec-2022", KEYS + "ec-2022.pub.pem");
+
+        final JwtService signer = service(properties);
+        final JwtService verifier = service(jwks());
+
+        final String token = signer.generate(new JwtData("ec-user", "admin"));
+
+        Assertions.assertEquals("ec-user", verifier.parseClaims(token).getSubject());
+    }
+
+    @Test
+    public void testOldAndNewKeysOverlapDuringRotation() {
+        final JwtService oldSigner = service(signing("rsa-2021.pem", "rsa-2021", null));
+        final JwtService newSigner = service(signing("rsa-2022.pem", "rsa-2022", null));
+        final JwtService verifier = service(jwks());
+
+        Assertions.assertEquals("old", verifier.parseClaims(oldSigner.generate(new JwtData("old", "admin"))).getSubject());
+        Assertions.assertEquals("new", verifier.parseClaims(newSigner.generate(new JwtData("new", "admin"))).getSubject());
+    }
+
+    @Test
+    public void testTokensOfUnknownKeysAreRejected() {
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.getKeys().getPublicKeys().put("rsa-2022", KEYS + "rsa-2022.pub.pem");
+
+        final JwtService oldSigner = service(signing("rsa-2021.pem", "rsa-2021", null));
+        final JwtService verifier = service(properties);
+        final JwtService hmacSigner = service(new GrpcJwtProperties());
+
+        Assertions.assertThrows(JwtException.class,
+            () -> verifier.parseClaims(oldSigner.generate(new JwtData("old", "admin"))));
+        Assertions.assertThrows(JwtException.class,
+            () -> verifier.parseClaims(hmacSigner.generate(new JwtData("hmac", "admin"))));
+    }
+
+    @Test
+    public void testVerifyOnlyServiceCanNotIssueTokens() {
+        final JwtService verifier = service(jwks());
+
+        Assertions.assertNull(verifier.getKey());
+        Assertions.assertNull(verifier.getInternal());
+        Assertions.assertThrows(IllegalStateException.class, () -> verifier.generate(new JwtData("user", "admin")));
+    }
+
+    @Test
+    public void testMalformedTokensAreRejectedBeforeSignatureCheck() {
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setMaxTokenLength(512);
+        final JwtService service = service(properties);
+        final String token = service.generate(new JwtData("user", "admin"));
+        final String[] segments = token.split("\\.");
+        final String withoutSignature = segments[0] + "." + segments[1];
+        final String unsigned = Jwts.builder().setSubject("user").compact();
+        final String expired = Jwts.builder()
+            .setSubject("user")
+            .setExpiration(new Date(System.currentTimeMillis() - 10_000))
+            .signWith(service.getKey())
+            .compact();
+
+        Assertions.assertThrows(MalformedJwtException.class, () -> service.parseClaims(withoutSignature));
+        Assertions.assertThrows(MalformedJwtException.class, () -> service.parseClaims(token + ".x"));
+        Assertions.assertThrows(MalformedJwtException.class, () -> service.parseClaims("%%." + segments[1] + ".x"));
+        Assertions.assertThrows(MalformedJwtException.class, () -> service.parseClaims(Strings.repeat("a", 513)));
+        Assertions.assertThrows(UnsupportedJwtException.class, () -> service.parseClaims(unsigned + "x"));
+        Assertions.assertThrows(ExpiredJwtException.class, () -> service.parseClaims(expired));
+    }
+
+    @Test
+    public void testHmacTokensAreRejectedByAsymmetricVerifier() {
+        final JwtService hmacSigner = service(new GrpcJwtProperties());
+        final JwtService verifier = service(jwks());
+
+        Assertions.assertThrows(UnsupportedJwtException.class,
+            () -> verifier.parseClaims(hmacSigner.generate(new JwtData("hmac", "admin"))));
+    }
+
+    @Test
+    public void testRejectedTokensAreRefusedFromCache() {
+        final JwtService signer = service(signing("rsa-2021.pem", "rsa-2021", null));
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.getKeys().getPublicKeys().put("rsa-2022", KEYS + "rsa-2022.pub.pem");
+        final JwtService verifier = service(properties);
+        final String token = signer.generate(new JwtData("old", "admin"));
+
+        Assertions.assertThrows(JwtException.class, () -> verifier.parseClaims(token));
+        Assertions.assertThrows(JwtException.class, () -> verifier.parseClaims(token));
+        Assertions.assertEquals(1, verifier.getRejectedTokenCache().getHitCount());
+        Assertions.assertEquals(1, verifier.getRejectedTokenCache().size());
+
+        verifier.reloadKeys();
+
+        Assertions.assertEquals(0, verifier.getRejectedTokenCache().size());
+    }
+
+    @Test
+    public void testPrematureTokensAreNotRemembered() {
+        final JwtService service = service(new GrpcJwtProperties());
+        final String premature = Jwts.builder()
+            .setSubject("early")
+            .setNotBefore(new Date(System.currentTimeMillis() + 60_000))
+            .signWith(service.getKey())
+            .compact();
+        final String forged = premature.substring(0, premature.lastIndexOf('.') + 1) + "AAAA";
+
+        Assertions.assertThrows(PrematureJwtException.class, () -> service.parseClaims(premature));
+        Assertions.assertThrows(PrematureJwtException.class, () -> service.parseClaims(premature));
+        Assertions.assertEquals(0, service.getRejectedTokenCache().size());
+
+        Assertions.assertThrows(SignatureException.class, () -> service.parseClaims(forged));
+        Assertions.assertEquals(1, service.getRejectedTokenCache().size());
+    }
+
+    @Test
+    public void testNativeVerificationOfOwnTokens() {
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setNativeVerification(true);
+        final JwtService service = service(properties);
+        final String token = service.generate(new JwtData("native-user", Sets.newHashSet("admin", "reader")));
+
+        final VerifiedToken verified = service.verify(token);
+
+        Assertions.assertEquals("native-user", verified.getSubject());
+        Assertions.assertEquals(Sets.newHashSet("admin", "reader"), Sets.newHashSet(verified.getRoles()));
+        Assertions.assertEquals(service.parseClaims(token).getExpiration().getTime(), verified.getExpiration());
+        Assertions.assertNull(verified.getClaims());
+        Assertions.assertNotNull(service(new GrpcJwtProperties()).verify(token).getClaims());
+        Assertions.assertThrows(JwtException.class, () -> service.verify(token.substring(0, token.length() - 2)));
+    }
+
+    @Test
+    public void testCompactTokens() {
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.getCompact().setEnabled(true);
+        properties.getCompact().setDictionary(Arrays.asList("admin", "reader", GrpcRole.INTERNAL));
+        final JwtService service = service(properties);
+        final JwtData data = new JwtData("compact-user", Sets.newHashSet("admin", "reader", "custom"));
+
+        final byte[] compact = service.generateCompact(data);
+        final String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(compact);
+        final VerifiedToken verified = service.verify(encoded);
+
+        Assertions.assertTrue(compact.length * 3 < service.generate(data).length());
+        Assertions.assertEquals("compact-user", verified.getSubject());
+        Assertions.assertEquals(data.getRoles(), Sets.newHashSet(verified.getRoles()));
+        Assertions.assertEquals(Collections.emptyList(), verified.getEnvironments());
+        Assertions.assertEquals(verified.getExpiration(), verified.getClaims().getExpiration().getTime());
+        Assertions.assertTrue(verified.getExpiration() > System.currentTimeMillis());
+        Assertions.assertEquals(Collections.singletonList(GrpcRole.INTERNAL), service.verify(
+            Base64.getUrlEncoder().withoutPadding().encodeToString(service.getInternalCompact())).getRoles());
+
+        compact[3] ^= 1;
+        final String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(compact);
+
+        Assertions.assertThrows(SignatureException.class, () -> service.verify(tampered));
+        Assertions.assertThrows(SignatureException.class, () -> service(new GrpcJwtProperties()).verify(encoded));
+        Assertions.assertNull(service(new GrpcJwtProperties()).getInternalCompact());
+        Assertions.assertThrows(MalformedJwtException.class, () -> service.verify("not-a-token"));
+    }
+
+    @Test
+    public void testBatchOfHmacTokens() {
+        final JwtService service = service(new GrpcJwtProperties());
+        final List<JwtData> data = IntStream.range(0, 300)
+            .mapToObj(i -> new JwtData("user-" + i, Sets.newHashSet("admin", "role-" + i)))
+            .collect(Collectors.toList());
+
+        final List<String> tokens = service.generateAll(data);
+        final Claims first = service.parseClaims(tokens.get(0));
+
+        Assertions.assertEquals(data.size(), tokens.size());
+        Assertions.assertEquals(
+            service.parseClaims(service.getInternal()).get(JwtService.TOKEN_ENV), first.get(JwtService.TOKEN_ENV));
+
+        for(int i = 0; i < tokens.size(); i++) {
+            final Claims claims = service.parseClaims(tokens.get(i));
+
+            Assertions.assertEquals("user-" + i, claims.getSubject());
+            Assertions.assertEquals(Sets.newHashSet("admin", "role-" + i),
+                Sets.newHashSet(claims.get(JwtService.JWT_ROLES, List.class)));
+            Assertions.assertEquals(first.getIssuedAt(), claims.getIssuedAt());
+            Assertions.assertEquals(first.getExpiration(), claims.getExpiration());
+        }
+    }
+
+    @Test
+    public void testTemplateTokensEscapeClaims() {
+        final Set<String> roles = Sets.newHashSet("r\u00f4le", "\"admin\"");
+        final List<String> subjects = Arrays.asList("quote \" and \\ slash", "tab\tline\nbreak\u0001",
+            "\u00fcn\u00efc\u00f6d\u00e9 \u4e2d", "emoji \ud83d\ude00", "");
+
+        for(String profile : Arrays.asList("p", "pp", "ppp")) {
+            final StandardEnvironment environment = new StandardEnvironment();
+            environment.setActiveProfiles(profile, "test");
+
+            final GrpcJwtProperties properties = new GrpcJwtProperties();
+            properties.setNativeVerification(true);
+            final JwtService service = new JwtService(environment, properties);
+            services.add(service);
+
+            for(String subject : subjects) {
+                final String token = service.generate(new JwtData(subject, roles));
+                final Claims claims = service.parseClaims(token);
+                final VerifiedToken verified = service.verify(token);
+
+                Assertions.assertEquals(subject, claims.getSubject());
+                Assertions.assertEquals(subject, verified.getSubject());
+                Assertions.assertEquals(roles, Sets.newHashSet(verified.getRoles()));
+                Assertions.assertEquals(Arrays.asList(profile, "test"), claims.get(JwtService.TOKEN_ENV, List.class));
+                Assertions.assertEquals(Arrays.asList(profile, "test"), verified.getEnvironments());
+                Assertions.assertNotNull(claims.getId());
+                Assertions.assertEquals(properties.getExpirationSec() * 1000,
+                    claims.getExpiration().getTime() - claims.getIssuedAt().getTime());
+            }
+        }
+    }
+
+    @Test
+    public void testTemplateTokensAfterOversizedToken() {
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setNativeVerification(true);
+        properties.setMaxTokenLength(64_000);
+        final JwtService service = service(properties);
+        final String largeSubject = Strings.repeat("x", 20_000);
+
+        final String large = service.generate(new JwtData(largeSubject, "admin"));
+        final String small = service.generate(new JwtData("user", "admin"));
+
+        Assertions.assertEquals(largeSubject, service.verify(large).getSubject());
+        Assertions.assertEquals("user", service.verify(small).getSubject());
+        Assertions.assertEquals("user", service.parseClaims(small).getSubject());
+    }
+
+    @Test
+    public void testStreamOfTokens() {
+        final JwtService service = service(new GrpcJwtProperties());
+
+        final Stream<JwtData> data = Stream.of("first", "second").map(id -> new JwtData(id, "admin"));
+
+        final List<String> subjects = service.generateAll(data)
+            .map(token -> service.parseClaims(token).getSubject())
+            .collect(Collectors.toList());
+
+        Assertions.assertEquals(Arrays.asList("first", "second"), subjects);
+    }
+
+    @Test
+    public void testBatchOfRsaTokens() {
+        final JwtService signer = service(signing("rsa-2022.pem", "rsa-2022", null));
+        final JwtService verifier = service(jwks());
+
+        final List<String> tokens =
+            signer.generateAll(Arrays.asList(new JwtData("a", "admin"), new JwtData("b", "admin")));
+
+        Assertions.assertEquals("a", verifier.parseClaims(tokens.get(0)).getSubject());
+        Assertions.assertEquals("b", verifier.parseClaims(tokens.get(1)).getSubject());
+    }
+
+    @Test
+    public void testRevocationFileIsReloaded(@TempDir Path directory) throws Exception {
+        final Path file = directory.resolve("revoked.txt");
+        Files.write(file, Collections.singletonList("sub:revoked-user"));
+
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.setNativeVerification(true);
+        properties.getRevocation().setFile(file.toString());
+        final JwtService service = service(properties);
+        final RevocationList revocationList = service.getRevocationList();
+        final VerifiedToken token = service.verify(service.generate(new JwtData("active-user", "admin")));
+
+        Assertions.assertNotNull(token.getTokenId());
+        Assertions.assertEquals(token.getTokenId(), service.parseClaims(token.getToken()).getId());
+        Assertions.assertTrue(revocationList.isRevoked(null, "revoked-user"));
+        Assertions.assertFalse(revocationList.isRevoked(token.getTokenId(), token.getSubject()));
+
+        Files.write(file, Arrays.asList("# leaked", "jti:" + token.getTokenId()));
+
+        final long deadline = System.currentTimeMillis() + 30_000;
+
+        while(!revocationList.isRevoked(token.getTokenId(), null) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        Assertions.assertTrue(revocationList.isRevoked(token.getTokenId(), token.getSubject()));
+        Assertions.assertFalse(revocationList.isRevoked(null, "revoked-user"));
+        Assertions.assertEquals(1, revocationList.size());
+    }
+
+    private JwtService service(GrpcJwtProperties properties) {
+        final JwtService service = new JwtService(new StandardEnvironment(), properties);
+        services.add(service);
+        return service;
+    }
+
+    private static GrpcJwtProperties signing(String privateKey, String keyId, String algorithm) {
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.getKeys().setSigningKey(KEYS + privateKey);
+        properties.getKeys().setSigningKeyId(keyId);
+        properties.getKeys().setSigningAlgorithm(algorithm);
+        return properties;
+    }
+
+    private static GrpcJwtProperties jwks() {
+        final GrpcJwtProperties properties = new GrpcJwtProperties();
+        properties.getKeys().setJwks(KEYS + "jwks.json");
+        return properties;
+    }
+}
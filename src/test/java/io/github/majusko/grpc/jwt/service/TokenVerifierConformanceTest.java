@@ -0,0 +1,222 @@
+package io.github.majusko.grpc.jwt.service;
+
+import com.google.common.collect.Lists;
+import io.github.majusko.grpc.jwt.service.dto.VerifiedToken;
+import io.jsonwebtoken.CompressionCodecs;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.stream.Stream;
+
+/**
+ * The same expectations checked against jjwt and the built-in HMAC verifier.
+ */
+public class TokenVerifierConformanceTest {
+
+    private static final SecretKey KEY = Keys.hmacShaKeyFor(bytes(64, 1));
+    private static final SecretKey OTHER_KEY = Keys.hmacShaKeyFor(bytes(64, 2));
+    private static final SecretKey SHORT_KEY = Keys.hmacShaKeyFor(bytes(48, 3));
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    static Stream<Arguments> verifiers() {
+        return Stream.of(
+            Arguments.of("jjwt", jjwt(KEY)),
+            Arguments.of("native", hmac(KEY))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("verifiers")
+    public void testValidTokensOfAllHmacAlgorithms(String name, TokenVerifier verifier) {
+        for(SignatureAlgorithm algorithm : Arrays.asList(
+            SignatureAlgorithm.HS256, SignatureAlgorithm.HS384, SignatureAlgorithm.HS512)) {
+            final Date expiration = new Date((System.currentTimeMillis() + HOUR_MILLIS) / 1000 * 1000);
+            final String token = token(KEY, algorithm).setExpiration(expiration).setId("token-1").compact();
+
+            final VerifiedToken verified = verifier.verify(token);
+
+            Assertions.assertEquals(token, verified.getToken());
+            Assertions.assertEquals("user-1", verified.getSubject());
+            Assertions.assertEquals("token-1", verified.getTokenId());
+            Assertions.assertEquals(Lists.newArrayList("admin", "reader"), verified.getRoles());
+            Assertions.assertEquals(Lists.newArrayList("test"), verified.getEnvironments());
+            Assertions.assertEquals(expiration.getTime(), verified.getExpiration());
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("verifiers")
+    public void testTokenWithoutOptionalClaims(String name, TokenVerifier verifier) {
+        final String token = Jwts.builder().setSubject("user-2").signWith(KEY, SignatureAlgorithm.HS256).compact();
+
+        final VerifiedToken verified = verifier.verify(token);
+
+        Assertions.assertEquals("user-2", verified.getSubject());
+        Assertions.assertNull(verified.getTokenId());
+        Assertions.assertNull(verified.getRoles());
+        Assertions.assertNull(verified.getEnvironments());
+        Assertions.assertEquals(0, verified.getExpiration());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("verifiers")
+    public void testUnusualTokensAreVerifiedByFallback(String name, TokenVerifier verifier) {
+        final String compressed = token(KEY, SignatureAlgorithm.HS256)
+            .compressWith(CompressionCodecs.DEFLATE).compact();
+        final String numericRoles = Jwts.builder().setSubject("user-3").claim(JwtService.JWT_ROLES, 7)
+            .signWith(KEY, SignatureAlgorithm.HS256).compact();
+
+        Assertions.assertEquals("user-1", verifier.verify(compressed).getSubject());
+        Assertions.assertThrows(JwtException.class, () -> verifier.verify(numericRoles));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("verifiers")
+    public void testExpiredAndPrematureTokens(String name, TokenVerifier verifier) {
+        final String expired = token(KEY, SignatureAlgorithm.HS256)
+            .setExpiration(new Date(System.currentTimeMillis() - HOUR_MILLIS)).compact();
+        final String premature = token(KEY, SignatureAlgorithm.HS256)
+            .setNotBefore(new Date(System.currentTimeMillis() + HOUR_MILLIS)).compact();
+
+        Assertions.assertThrows(ExpiredJwtException.class, () -> verifier.verify(expired));
+        Assertions.assertThrows(PrematureJwtException.class, () -> verifier.verify(premature));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("verifiers")
+    public void testForgedTokens(String name, TokenVerifier verifier) {
+        final String token = token(KEY, SignatureAlgorithm.HS256).compact();
+        final String[] parts = token.split("\\.");
+        final String otherPayload = token(OTHER_KEY, SignatureAlgorithm.HS256).setSubject("admin").compact()
+            .split("\\.")[1];
+        final char last = parts[2].charAt(0) == 'A' ? 'B' : 'A';
+
+        Assertions.assertThrows(SignatureException.class,
+            () -> verifier.verify(token(OTHER_KEY, SignatureAlgorithm.HS256).compact()));
+        Assertions.assertThrows(SignatureException.class,
+            () -> verifier.verify(parts[0] + "." + otherPayload + "." + parts[2]));
+        Assertions.assertThrows(SignatureException.class,
+            () -> verifier.verify(parts[0] + "." + parts[1] + "." + last + parts[2].substring(1)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("verifiers")
+    public void testUnsignedAndForeignTokens(String name, TokenVerifier verifier) {
+        final String payload = token(KEY, SignatureAlgorithm.HS256).compact().split("\\.")[1];
+        final String signature = token(KEY, SignatureAlgorithm.HS256).compact().split("\\.")[2];
+
+        Assertions.assertThrows(UnsupportedJwtException.class,
+            () -> verifier.verify(encode("{\"alg\":\"none\"}") + "." + payload + "." + signature));
+        Assertions.assertThrows(UnsupportedJwtException.class,
+            () -> verifier.verify(encode("{\"alg\":\"RS256\"}") + "." + payload + "." + signature));
+        Assertions.assertThrows(UnsupportedJwtException.class,
+            () -> verifier.verify(token(KEY, SignatureAlgorithm.HS256).setHeaderParam("kid", "k1").compact()));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("verifiers")
+    public void testMalformedTokens(String name, TokenVerifier verifier) {
+        final String token = token(KEY, SignatureAlgorithm.HS256).compact();
+        final String[] parts = token.split("\\.");
+
+        Assertions.assertThrows(MalformedJwtException.class, () -> verifier.verify(parts[0] + "." + parts[1]));
+        Assertions.assertThrows(MalformedJwtException.class, () -> verifier.verify(token + ".x"));
+        Assertions.assertThrows(MalformedJwtException.class, () -> verifier.verify("not-a-token"));
+        Assertions.assertThrows(MalformedJwtException.class,
+            () -> verifier.verify(encode("[1]") + "." + parts[1] + "." + parts[2]));
+        Assertions.assertThrows(MalformedJwtException.class,
+            () -> verifier.verify(token.substring(0, 2) + "*" + token.substring(3)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("verifiers")
+    public void testAlgorithmsStrongerThanTheKeyAreRejected(String name, TokenVerifier ignored) {
+        final TokenVerifier verifier = "jjwt".equals(name) ? jjwt(SHORT_KEY) : hmac(SHORT_KEY);
+
+        Assertions.assertEquals("user-1", verifier.verify(token(SHORT_KEY, SignatureAlgorithm.HS384).compact())
+            .getSubject());
+
+        final String header = encode("{\"alg\":\"HS512\"}");
+        final String[] parts = token(KEY, SignatureAlgorithm.HS512).compact().split("\\.");
+
+        Assertions.assertThrows(JwtException.class, () -> verifier.verify(header + "." + parts[1] + "." + parts[2]));
+    }
+
+    private static JwtBuilder token(SecretKey key, SignatureAlgorithm algorithm) {
+        return Jwts.builder()
+            .setSubject("user-1")
+            .claim(JwtService.JWT_ROLES, Lists.newArrayList("admin", "reader"))
+            .claim(JwtService.TOKEN_ENV, Lists.newArrayList("test"))
+            .claim("custom", Lists.newArrayList(1, 2))
+            .signWith(key, algorithm);
+    }
+
+    static Stream<Arguments> verifiersWithKeyId() {
+        final KeyTable keyTable = new KeyTable(Collections.singletonMap("k1", KEY), KEY);
+
+        return Stream.of(
+            Arguments.of("jjwt", jjwt(keyTable)),
+            Arguments.of("native", new HmacTokenVerifier(KEY, () -> keyTable, 8192, new CoarseClock(), jjwt(keyTable)))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("verifiersWithKeyId")
+    public void testKeyIdOfTheHmacKey(String name, TokenVerifier verifier) {
+        final String token = token(KEY, SignatureAlgorithm.HS256).setHeaderParam("kid", "k1").compact();
+
+        Assertions.assertEquals("user-1", verifier.verify(token).getSubject());
+        Assertions.assertEquals("user-1", verifier.verify(token(KEY, SignatureAlgorithm.HS256).compact()).getSubject());
+        Assertions.assertThrows(UnsupportedJwtException.class,
+            () -> verifier.verify(token(KEY, SignatureAlgorithm.HS256).setHeaderParam("kid", "k2").compact()));
+    }
+
+    private static TokenVerifier jjwt(SecretKey key) {
+        return jjwt(new KeyTable(Collections.emptyMap(), key));
+    }
+
+    private static TokenVerifier jjwt(KeyTable keyTable) {
+        return new JjwtTokenVerifier(
+            new TokenPrecheck(8192, true),
+            Jwts.parserBuilder().setSigningKeyResolver(new KeyTableResolver(() -> keyTable)).build()
+        );
+    }
+
+    private static TokenVerifier hmac(SecretKey key) {
+        final KeyTable keyTable = new KeyTable(Collections.emptyMap(), key);
+
+        return new HmacTokenVerifier(key, () -> keyTable, 8192, new CoarseClock(), jjwt(keyTable));
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        final byte[] bytes = new byte[length];
+
+        for(int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+
+        return bytes;
+    }
+}